@@ -1,13 +1,12 @@
 import arg.Arg;
-import frontend.Visitor;
-import frontend.lexer.Lexer;
-import frontend.lexer.TokenArray;
-import frontend.syntaxChecker.Ast;
-import frontend.syntaxChecker.Parser;
-import manager.Manager;
-import midend.*;
-import mir.Function;
-import mir.Module;
+import manager.CompilationContext;
+import manager.CompileDaemon;
+import manager.HeapBenchmark;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 
 // Press Shift twice to open the Search Everywhere dialog and type `show whitespaces`,
@@ -16,75 +15,66 @@ public class Compiler {
 
     public static void main(String[] args) {
 
-
-        String[] tmp = {"-o", "llvm_ir.txt", "testfile.txt", "-O1"};
-        Arg arg = Arg.parse(tmp);
-        try {
-            // lex
-            //System.err.println("Lexer here");
-            Manager.BufferReader.init(arg.srcFileName);
-            TokenArray tokenArray = new TokenArray();
-            Visitor visitor = new Visitor();
-            tokenArray.setManager(visitor.getManager());
-            Lexer.setManager(visitor.getManager());
-            Lexer.init(tokenArray);
-            Lexer.run();
-            //System.err.println("Lexer work well, now it is parser");
-            // parse
-            //System.err.println("Parser here");
-            Parser parser = new Parser(tokenArray);
-            //System.err.println("Parser work well, now it is visitor");
-
-            // visit
-            //System.err.println("Visitor here");
-
-            parser.setManager(visitor.getManager());
-            Ast ast = parser.parseAst();
-            visitor.visitAst(ast);
-            //visitor.getManager().outputLLVM(arg.outPath);
-            //System.err.println("Visitor work well, now it is midend");
-
-            // midend
-            //System.err.println("Midend here");
-            Module module = visitor.getManager().getModule();
-            if (arg.opt) {
-
-                for (Function function : module.getFuncSet()) {
-                    if (function.isExternal()) {
-                        continue;
-                    }
-                    function.buildControlFlowGraph();
-                }
-                FunctionInline.run(module);
-
-                //dead code delete
-                for (Function function : module.getFuncSet()) {
-                    if (function.isExternal()) {
-                        continue;
-                    }
-                    function.buildControlFlowGraph();
-                }
-                DeadCodeDelete.run(module);
-
-                //mem2reg
-                for (Function function : module.getFuncSet()) {
-                    if (function.getBlocks().getSize() == 0) {
-                        continue;
-                    }
-                    function.buildControlFlowGraph();
-//                    function.checkCFG();
-                    function.buildDominanceGraph();
-                    function.runMem2Reg();
-                }
+        if (args.length > 0 && args[0].equals("--daemon")) {
+            try {
+                CompileDaemon.run(args);
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.exit(1);
             }
-
-            visitor.getManager().outputLLVM(arg.outPath);
-            visitor.getManager().outputError();
-
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--heap-bench")) {
+            try {
+                HeapBenchmark.run(args);
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+            return;
+        }
+        // 不带参数时沿用评测环境约定的输入输出文件
+        String[] tmp = args.length > 0 ? args : new String[]{"-o", "llvm_ir.txt", "testfile.txt", "-O1"};
+        ArrayList<Arg> units = Arg.parseAll(tmp);
+        if (units.size() > 1) {
+            System.exit(compileAll(units));
+        }
+        try {
+            new CompilationContext(units.get(0)).compile();
         } catch (Exception e) {
             e.printStackTrace();
             System.exit(e.getClass().getSimpleName().length());
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * 多个编译单元在线程池上并行编译，每个单元持有独立的 CompilationContext
+     * @return 全部成功时为 0，否则为 1
+     */
+    private static int compileAll(ArrayList<Arg> units) {
+        int threads = Math.min(units.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = CompilationContext.newWorkerPool(threads);
+        ArrayList<Future<?>> futures = new ArrayList<>();
+        for (Arg unit : units) {
+            futures.add(pool.submit(() -> {
+                new CompilationContext(unit).compile();
+                return null;
+            }));
+        }
+        int failed = 0;
+        for (int i = 0; i < units.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException e) {
+                failed++;
+                System.err.println(units.get(i).srcFileName + ": " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed++;
+            }
+        }
+        pool.shutdown();
+        return failed == 0 ? 0 : 1;
+    }
+
+}
@@ -1,37 +1,71 @@
 package arg;
 
+import midend.LoopUnroll;
+
 import java.io.*;
+import java.util.ArrayList;
 
 public class Arg {
     public final String srcFileName;
-    public final FileInputStream srcStream;
     public final String outPath;
+    public final String errPath;
     public boolean opt;
+    // 部分展开的份数，不大于 1 时只做完全展开
+    public int unrollFactor = LoopUnroll.DEFAULT_FACTOR;
+    // 输出各 pass 的耗时与指令条数变化
+    public boolean timePasses = false;
+    // 并行运行函数级 pass 的线程数，1 为串行
+    public int passThreads = Runtime.getRuntime().availableProcessors();
 
-    private Arg(String src, String outPath, boolean opt) throws FileNotFoundException {
+    public Arg(String src, String outPath, String errPath, boolean opt) throws FileNotFoundException {
+        if (!new File(src).isFile()) {
+            throw new FileNotFoundException(src);
+        }
         this.srcFileName = src;
-        this.srcStream = new FileInputStream(srcFileName);
         this.outPath = outPath;
+        this.errPath = errPath;
         this.opt = opt;
     }
 
     public static Arg parse(String[] args) {
-        String src = "", out = "";
-        boolean opt = false;
-        for (int i = 0;i < args.length;i ++) {
-            if (args[i].equals("-o")) {
-                out = args[i + 1];
-                src = args[i + 2];
-            }
+        ArrayList<Arg> units = parseAll(args);
+        return units.get(units.size() - 1);
+    }
 
-            if (args[i].equals("-O1")) {
-                opt = true;
+    /**
+     * 一次调用可以给出多组 "-o out src"，每组对应一个编译单元
+     * 只有一个单元时错误输出到 error.txt，多个单元时输出到各自的 out.error.txt
+     */
+    public static ArrayList<Arg> parseAll(String[] args) {
+        ArrayList<String> outs = new ArrayList<>();
+        ArrayList<String> srcs = new ArrayList<>();
+        for (int i = 0;i < args.length;i ++) {
+            if (args[i].equals("-o") && i + 2 < args.length) {
+                outs.add(args[i + 1]);
+                srcs.add(args[i + 2]);
             }
         }
+        if (srcs.isEmpty()) {
+            printHelp();
+            throw new IllegalArgumentException("no source file given");
+        }
 
+        ArrayList<Arg> units = new ArrayList<>();
         try {
-            Arg arg = new Arg(src, out, opt);
-            return arg;
+            for (int i = 0; i < srcs.size(); i++) {
+                String errPath = srcs.size() == 1 ? "error.txt" : outs.get(i) + ".error.txt";
+                Arg unit = new Arg(srcs.get(i), outs.get(i), errPath, false);
+                // 选项对所有单元生效，-o 组与不认识的参数（-S、-emit-llvm 等）跳过
+                for (int j = 0; j < args.length; j++) {
+                    if (args[j].equals("-o") && j + 2 < args.length) {
+                        j += 2;
+                    } else {
+                        j = Math.max(j, unit.parseOption(args, j));
+                    }
+                }
+                units.add(unit);
+            }
+            return units;
         } catch (FileNotFoundException e) {
             printHelp();
             throw new RuntimeException(e);
@@ -39,8 +73,38 @@ public class Arg {
 
     }
 
+    /**
+     * 解析 args[i] 处的一个编译选项并写入本单元，返回该选项最后一个参数的下标，不是编译选项时返回 -1
+     * 命令行与常驻编译服务的请求共用这里的解析，新增选项只需加在这里
+     */
+    public int parseOption(String[] args, int i) {
+        switch (args[i]) {
+            case "-O1" -> opt = true;
+            case "--time-passes" -> timePasses = true;
+            case "--unroll-factor" -> unrollFactor = Integer.parseInt(optionValue(args, i++));
+            case "--pass-threads" -> passThreads = Math.max(1, Integer.parseInt(optionValue(args, i++)));
+            default -> {
+                return -1;
+            }
+        }
+        return i;
+    }
+
+    private static String optionValue(String[] args, int i) {
+        if (i + 1 >= args.length) {
+            throw new IllegalArgumentException(args[i] + " expects a value");
+        }
+        return args[i + 1];
+    }
+
     public static void printHelp() {
         System.err.println("Usage: compiler {(-S|-emit-llvm) -o filename} filename -On [options...]");
+        System.err.println("       compiler -o out1 src1 -o out2 src2 ... -On   (compile units in parallel)");
+        System.err.println("       compiler --daemon [-j workers] [--socket path]   (request per line: <id> <src> <out> [-e errPath] [options...])");
+        System.err.println("       compiler --heap-bench [-O1] [-n runs] [--synthetic funcs] src...   (IR heap footprint)");
         System.err.println("optimize level: 0, 1 (default), 2");
+        System.err.println("       --unroll-factor n   partial unroll factor of counted loops (default 4, <= 1 disables)");
+        System.err.println("       --time-passes       report time and instruction count change of every pass to stderr");
+        System.err.println("       --pass-threads n    threads running function passes in parallel (default: cores, 1 = serial)");
     }
 }
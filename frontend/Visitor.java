@@ -17,14 +17,12 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Stack;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class Visitor {
     private SymTable globalSymTable = new SymTable();
-    public ArrayList<String> globalStr = new ArrayList<>();
     private ArrayList<GlobalValue> globalValues = new ArrayList<GlobalValue>();
-    private final Manager manager = new Manager(globalSymTable, globalStr, globalValues);
+    private final Manager manager = new Manager(globalSymTable, globalValues);
+    private final IRContext context = manager.getModule().getContext();
     //初始时符号表为全局符号表
     private SymTable currentSymTable = globalSymTable;
     private BasicBlock currentBB = null;
@@ -111,7 +109,7 @@ public class Visitor {
             dims.add(calculator.evalConsInt(constExp));
         }
         for (int i = dims.size() - 1; i >= 0; i--) {
-            defType = new Type.ArrayType(dims.get(i), defType);
+            defType = Type.ArrayType.get(context, dims.get(i), defType);
         }
         //初始化, 如果未初始化，直接初始化成0
         InitValue initValue = null;
@@ -130,11 +128,11 @@ public class Visitor {
             }
         } else {
             if (defType.isInt32Ty()) {
-                initValue = new InitValue.ValueInit(new Constant.ConstantInt(0), mir.Type.BasicType.I32_TYPE);
+                initValue = new InitValue.ValueInit(Constant.ConstantInt.get(context, 0), mir.Type.BasicType.I32_TYPE);
             } else if (defType.isFloatTy()) {
-                initValue = new InitValue.ValueInit(new Constant.ConstantFloat(0), mir.Type.BasicType.F32_TYPE);
+                initValue = new InitValue.ValueInit(Constant.ConstantFloat.get(context, 0), mir.Type.BasicType.F32_TYPE);
             } else if (defType.isArrayTy()) {
-                initValue = new InitValue.ZeroArrayInit(defType);
+                initValue = new InitValue.ZeroArrayInit(context, defType);
             }
         }
 
@@ -146,7 +144,7 @@ public class Visitor {
         Value address;
         if (isGlobal) {
             //全局变量不需要上述指令，直接插入符号表
-            address = new GlobalValue(defType, ident, initValue);
+            address = new GlobalValue(context, defType, ident, initValue);
         } else {
             assert currentBB != null;
             assert currentEntry != null;
@@ -177,9 +175,9 @@ public class Visitor {
                         nZeros.entrySet()) {
                     ArrayList<Value> offsets = new ArrayList<>();
                     for (int i = 0; i < ((Type.ArrayType) defType).getDims().size(); i++) {
-                        offsets.add(new Constant.ConstantInt(0));
+                        offsets.add(Constant.ConstantInt.get(context, 0));
                     }
-                    offsets.add(new Constant.ConstantInt(entry.getKey()));
+                    offsets.add(Constant.ConstantInt.get(context, entry.getKey()));
                     Value p = new Instruction.GetElementPtr(currentBB, address, eleType, offsets);
                     new Instruction.Store(currentBB, castType(entry.getValue(), eleType), p);
                 }
@@ -188,7 +186,7 @@ public class Visitor {
         //插入符号表
         Symbol symbol = new Symbol(ident, defType, initValue, isConstant, address);
         if (isGlobal) {
-            globalValues.add(new GlobalValue(defType, ident, initValue));
+            globalValues.add(new GlobalValue(context, defType, ident, initValue));
         }
         currentSymTable.addSymbol(symbol);
     }
@@ -201,14 +199,14 @@ public class Visitor {
         int size = arrayType.getFlattenSize() * 4;
         Value ptr = address;
         if (!((Type.PointerType) address.getType()).getInnerType().isInt32Ty()) {
-            ptr = new Instruction.BitCast(currentBB, ptr, new Type.PointerType(mir.Type.BasicType.I32_TYPE));
+            ptr = new Instruction.BitCast(currentBB, ptr, Type.PointerType.get(context, mir.Type.BasicType.I32_TYPE));
         }
         ArrayList<Value> params = new ArrayList<>();
         params.add(ptr);
-        params.add(new Constant.ConstantInt(0));
-        params.add(new Constant.ConstantInt(size));
-        new Instruction.Call(currentBB, Manager.ExternFunc.MEMSET, params);
-        manager.addFunction(Manager.ExternFunc.MEMSET);
+        params.add(Constant.ConstantInt.get(context, 0));
+        params.add(Constant.ConstantInt.get(context, size));
+        new Instruction.Call(currentBB, manager.externFunc.MEMSET, params);
+        manager.addFunction(manager.externFunc.MEMSET);
     }
 
 
@@ -231,14 +229,14 @@ public class Visitor {
             else if (to.isInt32Ty()) {
                 return new Instruction.FPtosi(currentBB, from);
             } else if (to.isInt1Ty()) {
-                return new Instruction.Fcmp(currentBB, Instruction.Fcmp.CondCode.NE, from, new Constant.ConstantFloat(0));
+                return new Instruction.Fcmp(currentBB, Instruction.Fcmp.CondCode.NE, from, Constant.ConstantFloat.get(context, 0));
             }
         } else if (type.isInt32Ty()) {
             if (to.isInt32Ty()) return from;
             else if (to.isFloatTy()) {
                 return new Instruction.SItofp(currentBB, from);
             } else if (to.isInt1Ty()) {
-                return new Instruction.Icmp(currentBB, Instruction.Icmp.CondCode.NE, from, new Constant.ConstantInt(0));
+                return new Instruction.Icmp(currentBB, Instruction.Icmp.CondCode.NE, from, Constant.ConstantInt.get(context, 0));
             }
         } else if (type.isInt1Ty()) {
             if (to.isInt1Ty()) return from;
@@ -257,29 +255,29 @@ public class Visitor {
         if (type.isFloatTy()) {
             if (to.isFloatTy()) return from;
             else if (to.isInt32Ty()) {
-                return new Constant.ConstantInt((int) ((float) from.getConstValue()));
+                return Constant.ConstantInt.get(context, (int) ((float) from.getConstValue()));
             } else if (to.isInt1Ty()) {
                 if ((float) from.getConstValue() == 0)
-                    return new Constant.ConstantBool(0);
+                    return Constant.ConstantBool.get(0);
                 else
-                    return new Constant.ConstantBool(1);
+                    return Constant.ConstantBool.get(1);
             }
         } else if (type.isInt32Ty()) {
             if (to.isInt32Ty()) return from;
             else if (to.isFloatTy()) {
-                return new Constant.ConstantFloat((float) ((int) from.getConstValue()));
+                return Constant.ConstantFloat.get(context, (float) ((int) from.getConstValue()));
             } else if (to.isInt1Ty()) {
                 if ((int) from.getConstValue() == 0)
-                    return new Constant.ConstantBool(0);
+                    return Constant.ConstantBool.get(0);
                 else
-                    return new Constant.ConstantBool(1);
+                    return Constant.ConstantBool.get(1);
             }
         } else if (type.isInt1Ty()) {
             if (to.isInt1Ty()) return from;
             else if (to.isFloatTy()) {
-                return new Constant.ConstantFloat((float) ((int) from.getConstValue()));
+                return Constant.ConstantFloat.get(context, (float) ((int) from.getConstValue()));
             } else if (to.isInt32Ty()) {
-                return new Constant.ConstantInt((int) (from.getConstValue()));
+                return Constant.ConstantInt.get(context, (int) (from.getConstValue()));
             }
         }
         throw new SemanticError("Unsupport cast type");
@@ -299,7 +297,7 @@ public class Visitor {
         }
 
         if (initVals.size() == 1 && !initVals.get(0).hasInitVal()) {
-            return new InitValue.ZeroArrayInit(type);
+            return new InitValue.ZeroArrayInit(context, type);
         }
 
         InitValue.ArrayInit arrayInit = new InitValue.ArrayInit(type);
@@ -311,7 +309,7 @@ public class Visitor {
             }
             if (!initVal.hasInitVal()) {
                 assert ((Type.ArrayType) type).getEleType() instanceof Type.ArrayType;
-                arrayInit.addElement(new InitValue.ZeroArrayInit(((Type.ArrayType) type).getEleType()));
+                arrayInit.addElement(new InitValue.ZeroArrayInit(context, ((Type.ArrayType) type).getEleType()));
                 continue;
             }
             if (initVal.getExp() == null) {
@@ -345,9 +343,9 @@ public class Visitor {
 
         while (arrayInit.getSize() < ((Type.ArrayType) type).getSize()) {
             if (((Type.ArrayType) type).getEleType() instanceof Type.ArrayType) {
-                arrayInit.addElement(new InitValue.ZeroArrayInit(((Type.ArrayType) type).getEleType()));
+                arrayInit.addElement(new InitValue.ZeroArrayInit(context, ((Type.ArrayType) type).getEleType()));
             } else {
-                arrayInit.addElement(new InitValue.ValueInit(castConstantType(new Constant.ConstantInt(0), ((Type.ArrayType) type).getBasicEleType()),
+                arrayInit.addElement(new InitValue.ValueInit(castConstantType(Constant.ConstantInt.get(context, 0), ((Type.ArrayType) type).getBasicEleType()),
                         ((Type.ArrayType) type).getBasicEleType()));
             }
         }
@@ -365,16 +363,16 @@ public class Visitor {
         Object val = calculator.evalConstExp(exp);
         if (type.isInt32Ty()) {
             if (val instanceof Integer) {
-                return new InitValue.ValueInit(new Constant.ConstantInt((int) val), mir.Type.BasicType.I32_TYPE);
+                return new InitValue.ValueInit(Constant.ConstantInt.get(context, (int) val), mir.Type.BasicType.I32_TYPE);
             } else {
-                return new InitValue.ValueInit(new Constant.ConstantInt((int) ((float) val)), mir.Type.BasicType.I32_TYPE);
+                return new InitValue.ValueInit(Constant.ConstantInt.get(context, (int) ((float) val)), mir.Type.BasicType.I32_TYPE);
             }
         } else {
             assert type.isFloatTy();
             if (val instanceof Integer) {
-                return new InitValue.ValueInit(new Constant.ConstantFloat((float) ((int) val)), mir.Type.BasicType.F32_TYPE);
+                return new InitValue.ValueInit(Constant.ConstantFloat.get(context, (float) ((int) val)), mir.Type.BasicType.F32_TYPE);
             } else {
-                return new InitValue.ValueInit(new Constant.ConstantFloat((float) val), mir.Type.BasicType.F32_TYPE);
+                return new InitValue.ValueInit(Constant.ConstantFloat.get(context, (float) val), mir.Type.BasicType.F32_TYPE);
             }
         }
     }
@@ -416,7 +414,7 @@ public class Visitor {
             }
             val = visitMulExpSuffix(val, e);
             if (val instanceof Constant && ((Constant) val).isZero()) {
-                return new Constant.ConstantInt(0);
+                return Constant.ConstantInt.get(context, 0);
             }
         } while (e.hasNext());
         return val;
@@ -432,7 +430,7 @@ public class Visitor {
                 Value perfix;
                 if (val.getType() == mir.Type.BasicType.F32_TYPE || addExpPerfix.getType() == mir.Type.BasicType.F32_TYPE) {
                     if (val instanceof Constant && addExpPerfix instanceof Constant) {
-                        perfix = new Constant.ConstantFloat((float) castConstantType((Constant) val, mir.Type.BasicType.F32_TYPE).getConstValue()
+                        perfix = Constant.ConstantFloat.get(context, (float) castConstantType((Constant) val, mir.Type.BasicType.F32_TYPE).getConstValue()
                                 + (float) castConstantType((Constant) addExpPerfix, mir.Type.BasicType.F32_TYPE).getConstValue());
                     } else {
                         perfix = new Instruction.BinaryOperation.FAdd(currentBB, mir.Type.BasicType.F32_TYPE, castType(addExpPerfix, mir.Type.BasicType.F32_TYPE), castType(val, mir.Type.BasicType.F32_TYPE));
@@ -441,7 +439,7 @@ public class Visitor {
                     return perfix;
                 }
                 if (val instanceof Constant && addExpPerfix instanceof Constant) {
-                    perfix = new Constant.ConstantInt((int) castConstantType((Constant) val, mir.Type.BasicType.I32_TYPE).getConstValue()
+                    perfix = Constant.ConstantInt.get(context, (int) castConstantType((Constant) val, mir.Type.BasicType.I32_TYPE).getConstValue()
                             + (int) castConstantType((Constant) addExpPerfix, mir.Type.BasicType.I32_TYPE).getConstValue());
                 } else {
                     perfix = new Instruction.BinaryOperation.Add(currentBB, mir.Type.BasicType.I32_TYPE, castType(addExpPerfix, mir.Type.BasicType.I32_TYPE), castType(val, mir.Type.BasicType.I32_TYPE));
@@ -454,7 +452,7 @@ public class Visitor {
                 Value perfix;
                 if (val.getType() == mir.Type.BasicType.F32_TYPE || addExpPerfix.getType() == mir.Type.BasicType.F32_TYPE) {
                     if (val instanceof Constant && addExpPerfix instanceof Constant) {
-                        perfix = new Constant.ConstantFloat((float) castConstantType((Constant) addExpPerfix, mir.Type.BasicType.F32_TYPE).getConstValue()
+                        perfix = Constant.ConstantFloat.get(context, (float) castConstantType((Constant) addExpPerfix, mir.Type.BasicType.F32_TYPE).getConstValue()
                                 - (float) castConstantType((Constant) val, mir.Type.BasicType.F32_TYPE).getConstValue());
                     } else {
                         perfix = new Instruction.BinaryOperation.FSub(currentBB, mir.Type.BasicType.F32_TYPE, castType(addExpPerfix, mir.Type.BasicType.F32_TYPE), castType(val, mir.Type.BasicType.F32_TYPE));
@@ -463,7 +461,7 @@ public class Visitor {
                     return perfix;
                 }
                 if (val instanceof Constant && addExpPerfix instanceof Constant) {
-                    perfix = new Constant.ConstantInt((int) castConstantType((Constant) addExpPerfix, mir.Type.BasicType.I32_TYPE).getConstValue()
+                    perfix = Constant.ConstantInt.get(context, (int) castConstantType((Constant) addExpPerfix, mir.Type.BasicType.I32_TYPE).getConstValue()
                             - (int) castConstantType((Constant) val, mir.Type.BasicType.I32_TYPE).getConstValue());
                 } else {
                     perfix = new Instruction.BinaryOperation.Sub(currentBB, mir.Type.BasicType.I32_TYPE, castType(addExpPerfix, mir.Type.BasicType.I32_TYPE), castType(val, mir.Type.BasicType.I32_TYPE));
@@ -485,15 +483,15 @@ public class Visitor {
                 Value perfix;
                 if (val instanceof Constant && ((Constant) val).isZero()) {
                     assert val.getType() instanceof Type.BasicType;
-                    return castConstantType(new Constant.ConstantInt(0), (Type.BasicType) val.getType());
+                    return castConstantType(Constant.ConstantInt.get(context, 0), (Type.BasicType) val.getType());
                 }
                 if (mulExpPerfix instanceof Constant && ((Constant) mulExpPerfix).isZero()) {
                     assert mulExpPerfix.getType() instanceof Type.BasicType;
-                    return castConstantType(new Constant.ConstantInt(0), (Type.BasicType) mulExpPerfix.getType());
+                    return castConstantType(Constant.ConstantInt.get(context, 0), (Type.BasicType) mulExpPerfix.getType());
                 }
                 if (val.getType() == mir.Type.BasicType.F32_TYPE || mulExpPerfix.getType() == mir.Type.BasicType.F32_TYPE) {
                     if (val instanceof Constant && mulExpPerfix instanceof Constant) {
-                        perfix = new Constant.ConstantFloat((float) castConstantType((Constant) val, mir.Type.BasicType.F32_TYPE).getConstValue()
+                        perfix = Constant.ConstantFloat.get(context, (float) castConstantType((Constant) val, mir.Type.BasicType.F32_TYPE).getConstValue()
                                 * (float) castConstantType((Constant) mulExpPerfix, mir.Type.BasicType.F32_TYPE).getConstValue());
                     } else {
                         perfix = new Instruction.BinaryOperation.FMul(currentBB, mir.Type.BasicType.F32_TYPE, castType(mulExpPerfix, mir.Type.BasicType.F32_TYPE), castType(val, mir.Type.BasicType.F32_TYPE));
@@ -501,7 +499,7 @@ public class Visitor {
                     return perfix;
                 }
                 if (val instanceof Constant && mulExpPerfix instanceof Constant) {
-                    perfix = new Constant.ConstantInt((int) castConstantType((Constant) val, mir.Type.BasicType.I32_TYPE).getConstValue()
+                    perfix = Constant.ConstantInt.get(context, (int) castConstantType((Constant) val, mir.Type.BasicType.I32_TYPE).getConstValue()
                             * (int) castConstantType((Constant) mulExpPerfix, mir.Type.BasicType.I32_TYPE).getConstValue());
                 } else {
                     perfix = new Instruction.BinaryOperation.Mul(currentBB, mir.Type.BasicType.I32_TYPE, castType(mulExpPerfix, mir.Type.BasicType.I32_TYPE), castType(val, mir.Type.BasicType.I32_TYPE));
@@ -513,7 +511,7 @@ public class Visitor {
                 Value perfix;
                 if (val.getType() == mir.Type.BasicType.F32_TYPE || mulExpPerfix.getType() == mir.Type.BasicType.F32_TYPE) {
                     if (val instanceof Constant && mulExpPerfix instanceof Constant) {
-                        perfix = new Constant.ConstantFloat((float) castConstantType((Constant) mulExpPerfix, mir.Type.BasicType.F32_TYPE).getConstValue()
+                        perfix = Constant.ConstantFloat.get(context, (float) castConstantType((Constant) mulExpPerfix, mir.Type.BasicType.F32_TYPE).getConstValue()
                                 / (float) castConstantType((Constant) val, mir.Type.BasicType.F32_TYPE).getConstValue());
                     } else {
                         perfix = new Instruction.BinaryOperation.FDiv(currentBB, mir.Type.BasicType.F32_TYPE, castType(mulExpPerfix, mir.Type.BasicType.F32_TYPE), castType(val, mir.Type.BasicType.F32_TYPE));
@@ -521,7 +519,7 @@ public class Visitor {
                     return perfix;
                 }
                 if (val instanceof Constant && mulExpPerfix instanceof Constant) {
-                    perfix = new Constant.ConstantInt((int) castConstantType((Constant) mulExpPerfix, mir.Type.BasicType.I32_TYPE).getConstValue()
+                    perfix = Constant.ConstantInt.get(context, (int) castConstantType((Constant) mulExpPerfix, mir.Type.BasicType.I32_TYPE).getConstValue()
                             / (int) castConstantType((Constant) val, mir.Type.BasicType.I32_TYPE).getConstValue());
                 } else {
                     perfix = new Instruction.BinaryOperation.Div(currentBB, mir.Type.BasicType.I32_TYPE, castType(mulExpPerfix, mir.Type.BasicType.I32_TYPE), castType(val, mir.Type.BasicType.I32_TYPE));
@@ -533,7 +531,7 @@ public class Visitor {
                 Value perfix;
                 if (val.getType() == mir.Type.BasicType.F32_TYPE || mulExpPerfix.getType() == mir.Type.BasicType.F32_TYPE) {
                     if (val instanceof Constant && mulExpPerfix instanceof Constant) {
-                        perfix = new Constant.ConstantFloat((float) castConstantType((Constant) mulExpPerfix, mir.Type.BasicType.F32_TYPE).getConstValue()
+                        perfix = Constant.ConstantFloat.get(context, (float) castConstantType((Constant) mulExpPerfix, mir.Type.BasicType.F32_TYPE).getConstValue()
                                 % (float) castConstantType((Constant) val, mir.Type.BasicType.F32_TYPE).getConstValue());
                     } else {
                         perfix = new Instruction.BinaryOperation.FRem(currentBB, mir.Type.BasicType.F32_TYPE, castType(mulExpPerfix, mir.Type.BasicType.F32_TYPE), castType(val, mir.Type.BasicType.F32_TYPE));
@@ -541,7 +539,7 @@ public class Visitor {
                     return perfix;
                 }
                 if (val instanceof Constant && mulExpPerfix instanceof Constant) {
-                    perfix = new Constant.ConstantInt((int) castConstantType((Constant) mulExpPerfix, mir.Type.BasicType.I32_TYPE).getConstValue()
+                    perfix = Constant.ConstantInt.get(context, (int) castConstantType((Constant) mulExpPerfix, mir.Type.BasicType.I32_TYPE).getConstValue()
                             % (int) castConstantType((Constant) val, mir.Type.BasicType.I32_TYPE).getConstValue());
                 } else {
                     perfix = new Instruction.BinaryOperation.Rem(currentBB, mir.Type.BasicType.I32_TYPE, castType(mulExpPerfix, mir.Type.BasicType.I32_TYPE), castType(val, mir.Type.BasicType.I32_TYPE));
@@ -564,42 +562,42 @@ public class Visitor {
             } else if (exp.getUnaryOp().type == Token.Type.SUB) {
                 if (ret instanceof Constant) {
                     if (ret.getType() == mir.Type.BasicType.F32_TYPE) {
-                        return new Constant.ConstantFloat(-(float) ((Constant) ret).getConstValue());
+                        return Constant.ConstantFloat.get(context, -(float) ((Constant) ret).getConstValue());
                     } else if (ret.getType() == mir.Type.BasicType.I32_TYPE) {
-                        return new Constant.ConstantInt(-(int) ((Constant) ret).getConstValue());
+                        return Constant.ConstantInt.get(context, -(int) ((Constant) ret).getConstValue());
                     } else if (ret.getType() == mir.Type.BasicType.I1_TYPE) {
-                        return new Constant.ConstantInt(-(int) ((Constant) ret).getConstValue());
+                        return Constant.ConstantInt.get(context, -(int) ((Constant) ret).getConstValue());
                     } else {
                         throw new SemanticError("Bad Operand of Unary Exp");
                     }
                 }
                 if (ret.getType() == mir.Type.BasicType.F32_TYPE) {
-                    return new Instruction.BinaryOperation.FSub(currentBB, mir.Type.BasicType.F32_TYPE, new Constant.ConstantFloat(0), ret);
+                    return new Instruction.BinaryOperation.FSub(currentBB, mir.Type.BasicType.F32_TYPE, Constant.ConstantFloat.get(context, 0), ret);
                 } else if (ret.getType() == mir.Type.BasicType.I32_TYPE) {
-                    return new Instruction.BinaryOperation.Sub(currentBB, mir.Type.BasicType.I32_TYPE, new Constant.ConstantInt(0), ret);
+                    return new Instruction.BinaryOperation.Sub(currentBB, mir.Type.BasicType.I32_TYPE, Constant.ConstantInt.get(context, 0), ret);
                 } else if (ret.getType() == mir.Type.BasicType.I1_TYPE) {
-                    return new Instruction.BinaryOperation.Sub(currentBB, mir.Type.BasicType.I1_TYPE, new Constant.ConstantInt(0), castType(ret, mir.Type.BasicType.I32_TYPE));
+                    return new Instruction.BinaryOperation.Sub(currentBB, mir.Type.BasicType.I1_TYPE, Constant.ConstantInt.get(context, 0), castType(ret, mir.Type.BasicType.I32_TYPE));
                 } else {
                     throw new SemanticError("Bad Operand of Unary Exp");
                 }
             } else if (exp.getUnaryOp().type == Token.Type.NOT) {
                 if (ret instanceof Constant) {
                     if (ret.getType() == mir.Type.BasicType.F32_TYPE) {
-                        return new Constant.ConstantBool((float) ((Constant) ret).getConstValue() == 0 ? 1 : 0);
+                        return Constant.ConstantBool.get((float) ((Constant) ret).getConstValue() == 0 ? 1 : 0);
                     } else if (ret.getType() == mir.Type.BasicType.I32_TYPE) {
-                        return new Constant.ConstantBool((int) ((Constant) ret).getConstValue() == 0 ? 1 : 0);
+                        return Constant.ConstantBool.get((int) ((Constant) ret).getConstValue() == 0 ? 1 : 0);
                     } else if (ret.getType() == mir.Type.BasicType.I1_TYPE) {
-                        return new Constant.ConstantBool((int) ((Constant) ret).getConstValue() == 0 ? 1 : 0);
+                        return Constant.ConstantBool.get((int) ((Constant) ret).getConstValue() == 0 ? 1 : 0);
                     } else {
                         throw new SemanticError("Bad Operand of Unary Exp");
                     }
                 }
                 if (ret.getType() == mir.Type.BasicType.F32_TYPE) {
-                    return new Instruction.Fcmp(currentBB, Instruction.Fcmp.CondCode.EQ, ret, new Constant.ConstantFloat(0));
+                    return new Instruction.Fcmp(currentBB, Instruction.Fcmp.CondCode.EQ, ret, Constant.ConstantFloat.get(context, 0));
                 } else if (ret.getType() == mir.Type.BasicType.I32_TYPE) {
-                    return new Instruction.Icmp(currentBB, Instruction.Icmp.CondCode.EQ, ret, new Constant.ConstantInt(0));
+                    return new Instruction.Icmp(currentBB, Instruction.Icmp.CondCode.EQ, ret, Constant.ConstantInt.get(context, 0));
                 } else if (ret.getType() == mir.Type.BasicType.I1_TYPE) {
-                    return new Instruction.Icmp(currentBB, Instruction.Icmp.CondCode.EQ, castType(ret, mir.Type.BasicType.I32_TYPE), new Constant.ConstantInt(0));
+                    return new Instruction.Icmp(currentBB, Instruction.Icmp.CondCode.EQ, castType(ret, mir.Type.BasicType.I32_TYPE), Constant.ConstantInt.get(context, 0));
                 } else {
                     throw new SemanticError("Bad Operand of Unary Exp");
                 }
@@ -612,9 +610,13 @@ public class Visitor {
     }
 
     private Value visitFunctionCall(Ast.Ident ident, Ast.FuncRParams funcRParams, Token str) throws SemanticError {
+        if (str != null) {
+            assert ident.identifier.content.equals(manager.externFunc.PRINTF.getName());
+            return visitPrintf(ident, funcRParams, str);
+        }
         Function function = manager.getFunctions().get(ident.identifier.content);
         if (function == null) {
-            function = Manager.ExternFunc.externFunctions.get(ident.identifier.content);
+            function = manager.externFunc.externFunctions.get(ident.identifier.content);
             if (function == null) {
                 // System.err.println("Undefined Function: " + ident.identifier.content);
                 setUndef(ident);
@@ -624,30 +626,6 @@ public class Visitor {
         }
         ArrayList<Value> rParams = new ArrayList<>();
 
-        if (str != null) {
-            assert ident.identifier.content.equals(Manager.ExternFunc.PRINTF.getName());
-            for (int i = 0; i < funcRParams.getParams().size(); i++) {
-                rParams.add(visitExp(funcRParams.getParams().get(i)));
-            }
-            globalStr.add(str.content);
-            // 识别str 中 %d 的个数
-            Pattern pattern = Pattern.compile("%d");
-            Matcher matcher = pattern.matcher(str.content);
-
-            int count = 0;
-            while (matcher.find()) {
-                count++;
-            }
-            // 检查个数
-            if(count != funcRParams.getParams().size()) {
-                manager.addNumberedError(new NumberedError(manager.astRecorder.get(ident), 'l'));
-                throw new SemanticError("Wrong number of parameters: " + ident.identifier.content);
-            }
-
-            return new Instruction.Call(currentBB, function, rParams, globalStr.size());
-        }
-
-
         if (function.getArgumentsTP().size() != funcRParams.getParams().size()) {
             manager.addNumberedError(new NumberedError(manager.astRecorder.get(ident), 'd'));
             throw new SemanticError("Wrong number of parameters: " + ident.identifier.content);
@@ -670,6 +648,53 @@ public class Visitor {
         return new Instruction.Call(currentBB, function, rParams);
     }
 
+    /**
+     * printf 直接展开为 putstr / putint 调用：
+     * 格式串按 %d 切分，每个非空片段对应一个全局字符串常量，经 GEP 取得 i8* 后调用 putstr
+     */
+    private Value visitPrintf(Ast.Ident ident, Ast.FuncRParams funcRParams, Token str) throws SemanticError {
+        ArrayList<Value> rParams = new ArrayList<>();
+        for (int i = 0; i < funcRParams.getParams().size(); i++) {
+            rParams.add(castType(visitExp(funcRParams.getParams().get(i)), mir.Type.BasicType.I32_TYPE));
+        }
+        // 去掉头尾的双引号后按 %d 切分
+        String format = str.content.substring(1, str.content.length() - 1);
+        ArrayList<String> fragments = new ArrayList<>();
+        int begin = 0;
+        for (int idx = format.indexOf("%d"); idx != -1; idx = format.indexOf("%d", begin)) {
+            fragments.add(format.substring(begin, idx));
+            begin = idx + 2;
+        }
+        fragments.add(format.substring(begin));
+        // 检查 %d 个数
+        if (fragments.size() - 1 != rParams.size()) {
+            manager.addNumberedError(new NumberedError(manager.astRecorder.get(ident), 'l'));
+            throw new SemanticError("Wrong number of parameters: " + ident.identifier.content);
+        }
+
+        Value ret = null;
+        for (int i = 0; i < fragments.size(); i++) {
+            if (!fragments.get(i).isEmpty()) {
+                manager.addFunction(manager.externFunc.PUTSTR);
+                GlobalValue strConst = manager.getModule().getString(fragments.get(i));
+                ArrayList<Value> offsets = new ArrayList<>();
+                offsets.add(Constant.ConstantInt.get(context, 0));
+                offsets.add(Constant.ConstantInt.get(context, 0));
+                Value ptr = new Instruction.GetElementPtr(currentBB, strConst, mir.Type.BasicType.I8_TYPE, offsets);
+                ArrayList<Value> putstrParams = new ArrayList<>();
+                putstrParams.add(ptr);
+                ret = new Instruction.Call(currentBB, manager.externFunc.PUTSTR, putstrParams);
+            }
+            if (i < rParams.size()) {
+                manager.addFunction(manager.externFunc.PUTINT);
+                ArrayList<Value> putintParams = new ArrayList<>();
+                putintParams.add(rParams.get(i));
+                ret = new Instruction.Call(currentBB, manager.externFunc.PUTINT, putintParams);
+            }
+        }
+        return ret;
+    }
+
     private Value visitPrimaryExp(Ast.PrimaryExp exp) throws SemanticError {
         if (exp.isExp()) {
             return visitExp(exp.getExp());
@@ -711,7 +736,7 @@ public class Visitor {
         //对于数组类型
         Value pointer = address;
         ArrayList<Value> offsets = new ArrayList<>();
-        offsets.add(new Constant.ConstantInt(0));
+        offsets.add(Constant.ConstantInt.get(context, 0));
         boolean hasOffSet = false;
         for (Ast.AddExp exp :
                 lval.getExps()) {
@@ -754,8 +779,8 @@ public class Visitor {
         } else if (contentType instanceof Type.ArrayType) {
             //返回数组的首地址
             ArrayList<Value> zeros = new ArrayList<>();
-            zeros.add(new Constant.ConstantInt(0));
-            zeros.add(new Constant.ConstantInt(0));
+            zeros.add(Constant.ConstantInt.get(context, 0));
+            zeros.add(Constant.ConstantInt.get(context, 0));
             return new Instruction.GetElementPtr(currentBB, pointer, ((Type.ArrayType) contentType).getEleType(), zeros);
         } else {
             throw new AssertionError("Wrong Type of visitLval ret");
@@ -766,16 +791,16 @@ public class Visitor {
     private ArrayList<Value> flatOffsets(ArrayList<Value> offsets, Value pointer, Type eleTp) {
         ArrayList<Value> newOffsets = new ArrayList<>();
         for (int i = 0; i < offsets.size() - 1; i++) {
-            newOffsets.add(new Constant.ConstantInt(0));
+            newOffsets.add(Constant.ConstantInt.get(context, 0));
         }
         assert pointer.getType() instanceof Type.PointerType;
         Type contentTp = ((Type.PointerType) pointer.getType()).getInnerType();
-        Value newOffset = new Constant.ConstantInt(0);
+        Value newOffset = Constant.ConstantInt.get(context, 0);
         for (Value offset :
                 offsets) {
             if (contentTp == eleTp) {
                 if (newOffset instanceof Constant && offset instanceof Constant) {
-                    newOffset = new Constant.ConstantInt(((int) ((Constant) newOffset).getConstValue() + (int) ((Constant) offset).getConstValue()));
+                    newOffset = Constant.ConstantInt.get(context, ((int) ((Constant) newOffset).getConstValue() + (int) ((Constant) offset).getConstValue()));
                 } else {
                     newOffset = new Instruction.BinaryOperation.Add(currentBB, mir.Type.BasicType.I32_TYPE, newOffset, offset);
                 }
@@ -784,19 +809,19 @@ public class Visitor {
                 Value value;
                 if (offset instanceof Constant) {
                     if (eleTp instanceof Type.ArrayType)
-                        value = new Constant.ConstantInt((int) ((Constant) offset).getConstValue() * ((Type.ArrayType) contentTp).getFlattenSize() /
+                        value = Constant.ConstantInt.get(context, (int) ((Constant) offset).getConstValue() * ((Type.ArrayType) contentTp).getFlattenSize() /
                                 ((Type.ArrayType) eleTp).getFlattenSize());
                     else
-                        value = new Constant.ConstantInt((int) ((Constant) offset).getConstValue() * ((Type.ArrayType) contentTp).getFlattenSize());
+                        value = Constant.ConstantInt.get(context, (int) ((Constant) offset).getConstValue() * ((Type.ArrayType) contentTp).getFlattenSize());
                 } else {
                     if (eleTp instanceof Type.ArrayType)
                         value = new Instruction.BinaryOperation.Mul(currentBB, mir.Type.BasicType.I32_TYPE, offset,
-                                new Constant.ConstantInt(((Type.ArrayType) contentTp).getFlattenSize() / ((Type.ArrayType) eleTp).getFlattenSize()));
+                                Constant.ConstantInt.get(context, ((Type.ArrayType) contentTp).getFlattenSize() / ((Type.ArrayType) eleTp).getFlattenSize()));
                     else
-                        value = new Instruction.BinaryOperation.Mul(currentBB, mir.Type.BasicType.I32_TYPE, offset, new Constant.ConstantInt(((Type.ArrayType) contentTp).getFlattenSize()));
+                        value = new Instruction.BinaryOperation.Mul(currentBB, mir.Type.BasicType.I32_TYPE, offset, Constant.ConstantInt.get(context, ((Type.ArrayType) contentTp).getFlattenSize()));
                 }
                 if (value instanceof Constant && newOffset instanceof Constant) {
-                    newOffset = new Constant.ConstantInt(((int) ((Constant) newOffset).getConstValue() + (int) ((Constant) value).getConstValue()));
+                    newOffset = Constant.ConstantInt.get(context, ((int) ((Constant) newOffset).getConstValue() + (int) ((Constant) value).getConstValue()));
                 } else {
                     newOffset = new Instruction.BinaryOperation.Add(currentBB, mir.Type.BasicType.I32_TYPE, newOffset, value);
                 }
@@ -812,24 +837,24 @@ public class Visitor {
         if (number.type == Token.Type.DEC_FLOAT || number.type == Token.Type.HEX_FLOAT) {
             if (number.type == Token.Type.HEX_FLOAT) {
                 if (number.content.contains("0x") || number.content.contains("0X")) {
-                    return new Constant.ConstantFloat(Float.intBitsToFloat(new BigInteger(number.content.substring(2).toUpperCase(), 16).intValue()));
+                    return Constant.ConstantFloat.get(context, Float.intBitsToFloat(new BigInteger(number.content.substring(2).toUpperCase(), 16).intValue()));
                 } else {
-                    return new Constant.ConstantFloat(Float.intBitsToFloat(new BigInteger(number.content.toUpperCase(), 16).intValue()));
+                    return Constant.ConstantFloat.get(context, Float.intBitsToFloat(new BigInteger(number.content.toUpperCase(), 16).intValue()));
                 }
             }
-            return new Constant.ConstantFloat(Float.parseFloat(number.content));
+            return Constant.ConstantFloat.get(context, Float.parseFloat(number.content));
         } else if (number.type == Token.Type.DEC_INT || number.type == Token.Type.HEX_INT || number.type == Token.Type.OCT_INT) {
             if (number.type == Token.Type.HEX_INT) {
                 if (number.content.contains("0x") || number.content.contains("0X")) {
-                    return new Constant.ConstantInt(Integer.parseInt(number.content.substring(2).toUpperCase(), 16));
+                    return Constant.ConstantInt.get(context, Integer.parseInt(number.content.substring(2).toUpperCase(), 16));
                 } else {
-                    return new Constant.ConstantInt(Integer.parseInt(number.content.toUpperCase(), 16));
+                    return Constant.ConstantInt.get(context, Integer.parseInt(number.content.toUpperCase(), 16));
                 }
             }
             if (number.type == Token.Type.OCT_INT) {
-                return new Constant.ConstantInt(Integer.parseInt(number.content, 8));
+                return Constant.ConstantInt.get(context, Integer.parseInt(number.content, 8));
             }
-            return new Constant.ConstantInt(Integer.parseInt(number.content));
+            return Constant.ConstantInt.get(context, Integer.parseInt(number.content));
         } else {
             throw new SemanticError("NAN: " + number.content);
         }
@@ -871,7 +896,7 @@ public class Visitor {
             dims.add(calculator.evalConsInt(addExp));
         }
         for (int i = dims.size() - 1; i >= 0; i--) {
-            defType = new Type.ArrayType(dims.get(i), defType);
+            defType = Type.ArrayType.get(context, dims.get(i), defType);
         }
         //初始化
         InitValue initValue;
@@ -891,11 +916,11 @@ public class Visitor {
             }
         } else {
             if (defType.isInt32Ty()) {
-                initValue = new InitValue.ValueInit(new Constant.ConstantInt(0), mir.Type.BasicType.I32_TYPE);
+                initValue = new InitValue.ValueInit(Constant.ConstantInt.get(context, 0), mir.Type.BasicType.I32_TYPE);
             } else if (defType.isFloatTy()) {
-                initValue = new InitValue.ValueInit(new Constant.ConstantFloat(0), mir.Type.BasicType.F32_TYPE);
+                initValue = new InitValue.ValueInit(Constant.ConstantFloat.get(context, 0), mir.Type.BasicType.F32_TYPE);
             } else if (defType.isArrayTy()) {
-                initValue = new InitValue.ZeroArrayInit(defType);
+                initValue = new InitValue.ZeroArrayInit(context, defType);
             } else {
                 throw new SemanticError("Wrong define type");
             }
@@ -931,7 +956,7 @@ public class Visitor {
             argumentTPs.add(parseFuncFParam(funcFParam));
         }
 
-        Function thisFunc = new Function(funcType, ident.identifier.content, argumentTPs);
+        Function thisFunc = new Function(context, funcType, ident.identifier.content, argumentTPs);
         currentFunc = thisFunc;
         currentBB = new BasicBlock(getBBName(), thisFunc);
         currentEntry = currentBB;
@@ -964,8 +989,8 @@ public class Visitor {
 
             switch (funcTypeToken.type) {
                 case VOID -> new Instruction.Return(currentBB);
-                case FLOAT -> new Instruction.Return(currentBB, new Constant.ConstantFloat(0));
-                case INT -> new Instruction.Return(currentBB, new Constant.ConstantInt(0));
+                case FLOAT -> new Instruction.Return(currentBB, Constant.ConstantFloat.get(context, 0));
+                case INT -> new Instruction.Return(currentBB, Constant.ConstantInt.get(context, 0));
                 default -> throw new SemanticError("Bad FuncType");
             }
             if(!funcType.isVoidTy()) {
@@ -1108,14 +1133,14 @@ public class Visitor {
     private Value visitLOrExp(Ast.LOrExp lOrExp, BasicBlock thenBlock, BasicBlock followBlock) throws SemanticError {
         Iterator<Ast.LAndExp> iter = lOrExp.getlAndExps().iterator();
         Ast.LAndExp lAndExp = iter.next();
-        Constant.ConstantBool tmp = new Constant.ConstantBool(0);
+        Constant.ConstantBool tmp = Constant.ConstantBool.get(0);
         for (; iter.hasNext(); lAndExp = iter.next()) {
             BasicBlock nextCond = new BasicBlock(getBBName(), currentFunc);
             Value cond = visitLAndExp(lAndExp, nextCond);
             assert cond.getType().isInt1Ty();
             if (cond instanceof Constant.ConstantBool) {
                 if (!((Constant.ConstantBool) cond).isZero() || !tmp.isZero()) {
-                    tmp = new Constant.ConstantBool(1);
+                    tmp = Constant.ConstantBool.get(1);
                 }
             }
             new Instruction.Branch(currentBB, cond, thenBlock, nextCond);
@@ -1130,14 +1155,14 @@ public class Visitor {
     private Value visitLAndExp(Ast.LAndExp lAndExp, BasicBlock followBlock) throws SemanticError {
         Iterator<Ast.EqExp> iter = lAndExp.getEqExps().iterator();
         Ast.EqExp eqExp = iter.next();
-        Constant.ConstantBool tmp = new Constant.ConstantBool(1);
+        Constant.ConstantBool tmp = Constant.ConstantBool.get(1);
         for (; iter.hasNext(); eqExp = iter.next()) {
             BasicBlock nextCond = new BasicBlock(getBBName(), currentFunc);
             Value cond = visitEqExp(eqExp);
             assert cond.getType().isInt1Ty();
             if (cond instanceof Constant.ConstantBool) {
                 if (((Constant.ConstantBool) cond).isZero() || tmp.isZero()) {
-                    tmp = new Constant.ConstantBool(0);
+                    tmp = Constant.ConstantBool.get(0);
                 }
             }
             new Instruction.Branch(currentBB, cond, nextCond, followBlock);
@@ -1169,10 +1194,10 @@ public class Visitor {
                     if (last instanceof Constant && val instanceof Constant) {
                         last = switch (tokenIterator.next().type) {
                             case EQ ->
-                                    new Constant.ConstantBool((float) castConstantType((Constant) last, mir.Type.BasicType.F32_TYPE).getConstValue()
+                                    Constant.ConstantBool.get((float) castConstantType((Constant) last, mir.Type.BasicType.F32_TYPE).getConstValue()
                                             == (float) castConstantType((Constant) val, mir.Type.BasicType.F32_TYPE).getConstValue() ? 1 : 0);
                             case NE ->
-                                    new Constant.ConstantBool((float) castConstantType((Constant) last, mir.Type.BasicType.F32_TYPE).getConstValue()
+                                    Constant.ConstantBool.get((float) castConstantType((Constant) last, mir.Type.BasicType.F32_TYPE).getConstValue()
                                             != (float) castConstantType((Constant) val, mir.Type.BasicType.F32_TYPE).getConstValue() ? 1 : 0);
                             default -> throw new SemanticError("Bad EqOp");
                         };
@@ -1188,10 +1213,10 @@ public class Visitor {
                     if (last instanceof Constant && val instanceof Constant) {
                         last = switch (tokenIterator.next().type) {
                             case EQ ->
-                                    new Constant.ConstantBool((int) castConstantType((Constant) last, mir.Type.BasicType.I32_TYPE).getConstValue()
+                                    Constant.ConstantBool.get((int) castConstantType((Constant) last, mir.Type.BasicType.I32_TYPE).getConstValue()
                                             == (int) castConstantType((Constant) val, mir.Type.BasicType.I32_TYPE).getConstValue() ? 1 : 0);
                             case NE ->
-                                    new Constant.ConstantBool((int) castConstantType((Constant) last, mir.Type.BasicType.I32_TYPE).getConstValue()
+                                    Constant.ConstantBool.get((int) castConstantType((Constant) last, mir.Type.BasicType.I32_TYPE).getConstValue()
                                             != (int) castConstantType((Constant) val, mir.Type.BasicType.I32_TYPE).getConstValue() ? 1 : 0);
                             default -> throw new SemanticError("Bad EqOp");
                         };
@@ -1230,16 +1255,16 @@ public class Visitor {
                     if (last instanceof Constant && val instanceof Constant) {
                         last = switch (relOpIterator.next().type) {
                             case LT ->
-                                    new Constant.ConstantBool((float) castConstantType((Constant) last, mir.Type.BasicType.F32_TYPE).getConstValue()
+                                    Constant.ConstantBool.get((float) castConstantType((Constant) last, mir.Type.BasicType.F32_TYPE).getConstValue()
                                             < (float) castConstantType((Constant) val, mir.Type.BasicType.F32_TYPE).getConstValue() ? 1 : 0);
                             case LE ->
-                                    new Constant.ConstantBool((float) castConstantType((Constant) last, mir.Type.BasicType.F32_TYPE).getConstValue()
+                                    Constant.ConstantBool.get((float) castConstantType((Constant) last, mir.Type.BasicType.F32_TYPE).getConstValue()
                                             <= (float) castConstantType((Constant) val, mir.Type.BasicType.F32_TYPE).getConstValue() ? 1 : 0);
                             case GT ->
-                                    new Constant.ConstantBool((float) castConstantType((Constant) last, mir.Type.BasicType.F32_TYPE).getConstValue()
+                                    Constant.ConstantBool.get((float) castConstantType((Constant) last, mir.Type.BasicType.F32_TYPE).getConstValue()
                                             > (float) castConstantType((Constant) val, mir.Type.BasicType.F32_TYPE).getConstValue() ? 1 : 0);
                             case GE ->
-                                    new Constant.ConstantBool((float) castConstantType((Constant) last, mir.Type.BasicType.F32_TYPE).getConstValue()
+                                    Constant.ConstantBool.get((float) castConstantType((Constant) last, mir.Type.BasicType.F32_TYPE).getConstValue()
                                             >= (float) castConstantType((Constant) val, mir.Type.BasicType.F32_TYPE).getConstValue() ? 1 : 0);
                             default -> throw new SemanticError("Bad RelOp");
                         };
@@ -1257,16 +1282,16 @@ public class Visitor {
                     if (last instanceof Constant && val instanceof Constant) {
                         last = switch (relOpIterator.next().type) {
                             case LT ->
-                                    new Constant.ConstantBool((int) castConstantType((Constant) last, mir.Type.BasicType.I32_TYPE).getConstValue()
+                                    Constant.ConstantBool.get((int) castConstantType((Constant) last, mir.Type.BasicType.I32_TYPE).getConstValue()
                                             < (int) castConstantType((Constant) val, mir.Type.BasicType.I32_TYPE).getConstValue() ? 1 : 0);
                             case LE ->
-                                    new Constant.ConstantBool((int) castConstantType((Constant) last, mir.Type.BasicType.I32_TYPE).getConstValue()
+                                    Constant.ConstantBool.get((int) castConstantType((Constant) last, mir.Type.BasicType.I32_TYPE).getConstValue()
                                             <= (int) castConstantType((Constant) val, mir.Type.BasicType.I32_TYPE).getConstValue() ? 1 : 0);
                             case GT ->
-                                    new Constant.ConstantBool((int) castConstantType((Constant) last, mir.Type.BasicType.I32_TYPE).getConstValue()
+                                    Constant.ConstantBool.get((int) castConstantType((Constant) last, mir.Type.BasicType.I32_TYPE).getConstValue()
                                             > (int) castConstantType((Constant) val, mir.Type.BasicType.I32_TYPE).getConstValue() ? 1 : 0);
                             case GE ->
-                                    new Constant.ConstantBool((int) castConstantType((Constant) last, mir.Type.BasicType.I32_TYPE).getConstValue()
+                                    Constant.ConstantBool.get((int) castConstantType((Constant) last, mir.Type.BasicType.I32_TYPE).getConstValue()
                                             >= (int) castConstantType((Constant) val, mir.Type.BasicType.I32_TYPE).getConstValue() ? 1 : 0);
                             default -> throw new SemanticError("Bad RelOp");
                         };
@@ -1448,7 +1473,7 @@ public class Visitor {
                 dims.add(new Value(mir.Type.VoidType.VOID_TYPE));
             } else {
                 Calculator calculator = new Calculator(currentSymTable);
-                dims.add(new Constant.ConstantInt(calculator.evalConsInt(varSuffix.getExp())));
+                dims.add(Constant.ConstantInt.get(context, calculator.evalConsInt(varSuffix.getExp())));
             }
         }
 
@@ -1461,14 +1486,14 @@ public class Visitor {
                 if (size < 0) {
                     throw new SemanticError("Negative array dimension: " + size);
                 }
-                retType = new Type.ArrayType(size, retType);
+                retType = Type.ArrayType.get(context, size, retType);
             }
         }
         if (dims.isEmpty()) {
             return retType;
         }
 
-        return new Type.PointerType(retType);
+        return Type.PointerType.get(context, retType);
     }
 
     private String getBBName() {
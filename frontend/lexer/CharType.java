@@ -1,43 +1,64 @@
 package frontend.lexer;
 
+/**
+ * 预计算的字符分类表，词法分析只做一次查表，不再调用 Character.isXxx
+ * 只处理 ASCII，其余字符一律归为 OTHER
+ */
 public class CharType {
+    public static final byte OTHER = 0;
+    public static final byte BLANK = 1;
+    public static final byte DIGIT = 2;
+    public static final byte LETTER = 3;
+    public static final byte UNDERSCORE = 4;
 
-    public static boolean isdigit(char c) {
-        return Character.isDigit(c);
-    }
+    private static final byte[] TABLE = new byte[128];
 
-    public  static boolean isUpper(char c) {
-        return Character.isUpperCase(c);
+    static {
+        TABLE[' '] = BLANK;
+        TABLE['\t'] = BLANK;
+        TABLE['\r'] = BLANK;
+        TABLE['\n'] = BLANK;
+        for (char c = '0'; c <= '9'; c++) {
+            TABLE[c] = DIGIT;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            TABLE[c] = LETTER;
+            TABLE[c - 'a' + 'A'] = LETTER;
+        }
+        TABLE['_'] = UNDERSCORE;
     }
 
-    public  static boolean isLower(char c) {
-        return Character.isLowerCase(c);
+    public static byte classOf(char c) {
+        return c < 128 ? TABLE[c] : OTHER;
     }
 
-    public static  boolean isLetter(char c) {
-        return Character.isLetter(c);
+    public static boolean isdigit(char c) {
+        return classOf(c) == DIGIT;
     }
 
-    public static  boolean isIdent(char c) {
-        return isdigit(c) || isLetter(c) || (c == '_');
+    public static boolean isUpper(char c) {
+        return c >= 'A' && c <= 'Z';
     }
 
-    public  static boolean isNumber(char c) {
-        return isdigit(c) || (c == '.') || isLetter(c);
+    public static boolean isLower(char c) {
+        return c >= 'a' && c <= 'z';
     }
 
-    public  static  boolean isSpecialNum(String str) {
-        String hexFloat ="(0(x|X)[0-9A-Fa-f]*\\.[0-9A-Fa-f]*((p|P|e|E)(\\+|\\-)?[0-9A-Fa-f]*)?)|" +
-                "(0(x|X)[0-9A-Fa-f]*[\\.]?[0-9A-Fa-f]*(p|P|e|E)((\\+|\\-)?[0-9A-Fa-f]*)?)";
-        String hexInt = "0(x|X)[0-9A-Fa-f]+";
+    public static boolean isLetter(char c) {
+        return classOf(c) == LETTER;
+    }
 
-        String sciNumber = "^[+-]?\\d*\\.?\\d+[Ee][+-]?$";
+    public static boolean isIdentStart(char c) {
+        byte type = classOf(c);
+        return type == LETTER || type == UNDERSCORE;
+    }
 
-        return str.matches(hexFloat) || str.matches(hexInt) || str.matches(sciNumber);
+    public static boolean isIdent(char c) {
+        return classOf(c) >= DIGIT;
     }
 
-    public  static boolean isBlank(char c) {
-        return c == ' ' || c == '\r' || c == '\n' || c == '\t';
+    public static boolean isBlank(char c) {
+        return classOf(c) == BLANK;
     }
 
 }
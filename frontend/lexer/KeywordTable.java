@@ -0,0 +1,56 @@
+package frontend.lexer;
+
+/**
+ * 保留字的完美哈希表
+ * hash = (首字符 * 5 + 尾字符 + 长度) & 15，对当前 11 个保留字无冲突，
+ * 查询时只算一次哈希再逐字符比较一次，不构造 String
+ */
+public class KeywordTable {
+    private static final int SIZE = 16;
+    private static final char[][] words = new char[SIZE][];
+    private static final Token.Type[] types = new Token.Type[SIZE];
+
+    static {
+        for (Token.Type type : Token.Type.values()) {
+            if (!type.isReserved()) {
+                continue;
+            }
+            char[] word = type.getContent().toCharArray();
+            int slot = hash(word, 0, word.length);
+            if (words[slot] != null) {
+                // 新增保留字后需要重新挑选哈希参数
+                throw new IllegalStateException("keyword hash collision: " + type + " vs " + types[slot]);
+            }
+            words[slot] = word;
+            types[slot] = type;
+        }
+    }
+
+    private static int hash(char[] buf, int start, int end) {
+        return (buf[start] * 5 + buf[end - 1] + (end - start)) & (SIZE - 1);
+    }
+
+    /**
+     * @return buf[start, end) 对应的保留字类型，不是保留字时返回 null
+     */
+    public static Token.Type lookup(char[] buf, int start, int end) {
+        int slot = hash(buf, start, end);
+        char[] word = words[slot];
+        if (word == null || word.length != end - start) {
+            return null;
+        }
+        for (int i = 0; i < word.length; i++) {
+            if (word[i] != buf[start + i]) {
+                return null;
+            }
+        }
+        return types[slot];
+    }
+
+    public static Token.Type lookup(String string) {
+        if (string.isEmpty()) {
+            return null;
+        }
+        return lookup(string.toCharArray(), 0, string.length());
+    }
+}
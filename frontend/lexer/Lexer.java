@@ -8,19 +8,24 @@ import java.io.IOException;
 
 
 public class Lexer {
-    private static Manager manager;
-    private static char ch;
-    private static StringBuilder token;
-    private static TokenArray tokenArray;
+    private Manager manager;
+    private SourceBuffer source;
+    private char ch;
+    // 当前 token 首字符在源码中的偏移与位置
+    private int tokenStart;
+    private int tokenLine;
+    private int tokenColumn;
+    private TokenArray tokenArray;
 
-    public static void init(TokenArray tokenArray) {
-        Lexer.tokenArray = tokenArray;
+    public Lexer(SourceBuffer source, TokenArray tokenArray) {
+        this.source = source;
+        this.tokenArray = tokenArray;
         // 首次读进
         moveForward();
     }
 
-    public static void setManager(Manager manager) {
-        Lexer.manager = manager;
+    public void setManager(Manager manager) {
+        this.manager = manager;
     }
 
 
@@ -59,90 +64,100 @@ public class Lexer {
 //        return -1;
 //    }
 
-    private static boolean isDigit() {
-        return Character.isDigit(ch);
+    private boolean isDigit() {
+        return CharType.isdigit(ch);
     }
 
-    private static boolean isLetter() {
-        return Character.isLetter(ch);
+    private boolean isBlank() {
+        return CharType.isBlank(ch);
     }
 
-    private static boolean isIdent() {
-        return isDigit() || isLetter() || (ch == '_');
+    private boolean reachEOF() throws IOException {
+        return ch == SourceBuffer.EOF;
     }
 
-    private static boolean isBlank() {
-        return ch == ' ' || ch == '\r' || ch == '\n' || ch == '\t';
-    }
-
-    private static boolean reachEOF() throws IOException {
-        return ch == (char) -1;
+    /**
+     * 以当前字符 ch 作为新 token 的首字符
+     */
+    private void clearToken() {
+        tokenStart = source.getPos() - 1;
+        tokenLine = source.getLine();
+        tokenColumn = source.getColumn();
     }
 
-    private static void clearToken() {
-        token = new StringBuilder();
+    /**
+     * token 内容直接取自源码区间 [tokenStart, 游标)
+     */
+    private Token makeToken(Token.Type type) {
+        return new Token(type, source.text(tokenStart, source.getPos()), tokenLine, tokenColumn);
     }
 
-    private static void catToken() {
-        token.append(ch);
+    /**
+     * 内容固定的 token（界符、保留字）复用常量字符串，不再逐字符拼接
+     */
+    private Token fixedToken(Token.Type type, String content) {
+        return new Token(type, content, tokenLine, tokenColumn);
     }
 
     /**
      * get next char from src
      * skip blank
      */
-    private static void getChar() {
-        ch = (char) Manager.BufferReader.getChar();
+    private void getChar() {
+        ch = source.next();
     }
 
-    private static void moveForward() {
+    private void moveForward() {
         do {
-            ch = (char) Manager.BufferReader.getChar();
+            ch = source.next();
         } while (isBlank());
     }
 
-    private static char peekChar() {
-        return Manager.BufferReader.peekChar();
+    private char peekChar() {
+        return source.peek();
     }
 
-    private static void retract() throws IOException {
-        Manager.BufferReader.retract();
+    private void retract() throws IOException {
+        source.retract();
     }
 
     /**
      * 开始读入时，ch光标在该次读入的首位置
+     * 由 NumberDFA 做最长匹配，结束时游标停在字面量之后
      * @return Token
      */
-    private static Token getSymbol_digit() throws IOException, SyntaxError {
-
-        if (!isDigit()) {
-            throw new SyntaxError("Invalid character: " + ch);
-        }
-        Token tmp;
-
-        while (isDigit()) {
-            catToken();
+    private Token getSymbol_digit() throws IOException, SyntaxError {
+        // 回退到首字符，交给 DFA 从头扫描
+        retract();
+        Token.Type type = NumberDFA.scan(source);
+        if (type == null) {
             getChar();
-        }
-
-        if (token.toString().matches(Token.Type.HEX_INT.getContent())) {
-            tmp = new Token(Token.Type.HEX_INT, token.toString());
-        } else if (token.toString().matches(Token.Type.OCT_INT.getContent())) {
-            tmp = new Token(Token.Type.OCT_INT, token.toString());
-        } else if (token.toString().matches(Token.Type.DEC_INT.getContent())) {
-            tmp = new Token(Token.Type.DEC_INT, token.toString());
-        } else {
             throw new SyntaxError("Invalid character: " + ch);
         }
+        return makeToken(type);
+    }
 
-        retract();
-        return tmp;
+    /**
+     * 检查格式字符串 (src[from, to)，不含两侧引号) 是否合法：
+     * 只允许 32、33、40-126 号字符，'%' 只能以 "%d" 出现
+     */
+    private boolean isFormatString(int from, int to) {
+        char[] buf = source.getBuffer();
+        for (int i = from; i < to; i++) {
+            char c = buf[i];
+            if (c == '%' && i + 1 < to && buf[i + 1] == 'd') {
+                i++;
+            } else if (!(c == 32 || c == 33 || (c >= 40 && c <= 126))) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    public static Token getSymbol() throws IOException, SyntaxError {
+    public Token getSymbol() throws IOException, SyntaxError {
 
         if (reachEOF()) {
-            return new Token(Token.Type.EOF, "EOF");
+            return new Token(Token.Type.EOF, "EOF", source.getLine(), source.getColumn());
         }
         /* 开始读入时，ch光标在该次读入的首位置
          * 读入结束时，ch光标在该次读入的末位置
@@ -153,17 +168,16 @@ public class Lexer {
         Token retSymbol = null;
         switch (ch) {
             case '"':
-                catToken();
                 getChar();
                 while (ch != '"') {
-                    catToken();
+                    if (reachEOF()) {
+                        throw new SyntaxError("Unterminated string at line " + tokenLine);
+                    }
                     getChar();
                 }
-                catToken();
                 // 检查匹配
-
-                retSymbol = new Token(Token.Type.STR, token.toString());
-                if(!Token.Type.STR.getPattern().matcher(token.toString()).matches()) {
+                retSymbol = makeToken(Token.Type.STR);
+                if (!isFormatString(tokenStart + 1, source.getPos() - 1)) {
                     //
                     NumberedError err = new NumberedError(retSymbol.line, 'a');
 //                    err.println(err);
@@ -172,79 +186,64 @@ public class Lexer {
                 break;
 
             case ';':
-                catToken();
-                retSymbol = new Token(Token.Type.SEMI, token.toString());
+                retSymbol = fixedToken(Token.Type.SEMI, ";");
                 break;
             case ',':
-                catToken();
-                retSymbol = new Token(Token.Type.COMMA, token.toString());
+                retSymbol = fixedToken(Token.Type.COMMA, ",");
                 break;
             case '(':
-                catToken();
-                retSymbol = new Token(Token.Type.L_PAREN, token.toString());
+                retSymbol = fixedToken(Token.Type.L_PAREN, "(");
                 break;
             case ')':
-                catToken();
-                retSymbol = new Token(Token.Type.R_PAREN, token.toString());
+                retSymbol = fixedToken(Token.Type.R_PAREN, ")");
                 break;
             case '[':
-                catToken();
-                retSymbol = new Token(Token.Type.L_BRACK, token.toString());
+                retSymbol = fixedToken(Token.Type.L_BRACK, "[");
                 break;
             case ']':
-                catToken();
-                retSymbol = new Token(Token.Type.R_BRACK, token.toString());
+                retSymbol = fixedToken(Token.Type.R_BRACK, "]");
                 break;
             case '{':
-                catToken();
-                retSymbol = new Token(Token.Type.L_BRACE, token.toString());
+                retSymbol = fixedToken(Token.Type.L_BRACE, "{");
                 break;
             case '}':
-                catToken();
-                retSymbol = new Token(Token.Type.R_BRACE, token.toString());
+                retSymbol = fixedToken(Token.Type.R_BRACE, "}");
                 break;
             case '|':
-                catToken();
                 if (peekChar() == '|') {
                     getChar();
-                    catToken();
-                    retSymbol = new Token(Token.Type.LOR, token.toString());
+                    retSymbol = fixedToken(Token.Type.LOR, "||");
                 } else {
                     throw new SyntaxError("Invalid character: " + ch);
                 }
                 break;
             case '&':
-                catToken();
                 if (peekChar() == '&') {
                     getChar();
-                    catToken();
-                    retSymbol = new Token(Token.Type.LAND, token.toString());
+                    retSymbol = fixedToken(Token.Type.LAND, "&&");
                 } else {
                     throw new SyntaxError("Invalid character: " + ch);
                 }
                 break;
             case '+':
-                catToken();
-                retSymbol = new Token(Token.Type.ADD, token.toString());
+                retSymbol = fixedToken(Token.Type.ADD, "+");
                 break;
             case '-':
-                catToken();
-                retSymbol = new Token(Token.Type.SUB, token.toString());
+                retSymbol = fixedToken(Token.Type.SUB, "-");
                 break;
             case '*':
-                catToken();
-                retSymbol = new Token(Token.Type.MUL, token.toString());
+                retSymbol = fixedToken(Token.Type.MUL, "*");
                 break;
             case '/':
                 if (peekChar() == '*') {
                     // 处理多行注释
                     getChar();
                     getChar();
-                    while (true) {
+                    while (!reachEOF()) {
                         if (ch == '*') {
                             getChar();
                             if (ch == '/') {
-                                getChar();
+                                // ch 停在注释末尾的 '/'，由后续的步进越过
                                 break;
                             }
                         } else {
@@ -256,82 +255,67 @@ public class Lexer {
                     // 处理单行注释
                     getChar();
                     getChar();
-                    while (ch != '\n') {
+                    while (ch != '\n' && !reachEOF()) {
                         getChar();
                     }
                     recursive = true;
                 } else {
                     // 作为 DIV 处理
-                    catToken();
-                    retSymbol = new Token(Token.Type.DIV, token.toString());
+                    retSymbol = fixedToken(Token.Type.DIV, "/");
                 }
                 // 不做token 处理，标记递归调用
                 break;
             case '%':
-                catToken();
-                retSymbol = new Token(Token.Type.MOD, token.toString());
+                retSymbol = fixedToken(Token.Type.MOD, "%");
                 break;
             case '=':
-                catToken();
                 if (peekChar() == '=') {
                     getChar();
-                    catToken();
-                    retSymbol = new Token(Token.Type.EQ, token.toString());
+                    retSymbol = fixedToken(Token.Type.EQ, "==");
                 } else {
-                    retSymbol = new Token(Token.Type.ASSIGN, token.toString());
+                    retSymbol = fixedToken(Token.Type.ASSIGN, "=");
                 }
                 break;
             case '!':
-                catToken();
                 if (peekChar() == '=') {
                     getChar();
-                    catToken();
-                    retSymbol = new Token(Token.Type.NE, token.toString());
+                    retSymbol = fixedToken(Token.Type.NE, "!=");
                 } else {
-                    retSymbol = new Token(Token.Type.NOT, token.toString());
+                    retSymbol = fixedToken(Token.Type.NOT, "!");
                 }
                 break;
             case '>':
-                catToken();
                 if (peekChar() == '=') {
                     getChar();
-                    catToken();
-                    retSymbol = new Token(Token.Type.GE, token.toString());
+                    retSymbol = fixedToken(Token.Type.GE, ">=");
                 } else {
-                    retSymbol = new Token(Token.Type.GT, token.toString());
+                    retSymbol = fixedToken(Token.Type.GT, ">");
                 }
                 break;
             case '<':
-                catToken();
                 if (peekChar() == '=') {
                     getChar();
-                    catToken();
-                    retSymbol = new Token(Token.Type.LE, token.toString());
+                    retSymbol = fixedToken(Token.Type.LE, "<=");
                 } else {
-                    retSymbol = new Token(Token.Type.LT, token.toString());
+                    retSymbol = fixedToken(Token.Type.LT, "<");
                 }
                 break;
             default:
                 // 处理保留字和标识符
-                if (isLetter() || ch == '_') {
-                    catToken();
-                    getChar();
-                    while (isIdent()) {
-                        // todo: 检查ident 终结符
-                        catToken();
+                if (CharType.isIdentStart(ch)) {
+                    while (CharType.isIdent(peekChar())) {
                         getChar();
                     }
-                    retract();
-                    if (Token.isReservedWord(token.toString())) {
-                        retSymbol = new Token(Token.Type.valueOf(token.toString().toUpperCase()), token.toString());
+                    Token.Type keyword = KeywordTable.lookup(source.getBuffer(), tokenStart, source.getPos());
+                    if (keyword != null) {
+                        retSymbol = fixedToken(keyword, keyword.getContent());
                     } else {
-                        retSymbol = new Token(Token.Type.IDENTIFIER, token.toString());
+                        retSymbol = makeToken(Token.Type.IDENTIFIER);
                     }
                     break;
                 }
-                // 处理整型
-                if (isDigit()) {
-                    // whole-number part
+                // 处理整型与浮点
+                if (NumberDFA.canStart(ch, peekChar())) {
                     retSymbol = getSymbol_digit();
                     break;
                 }
@@ -349,7 +333,7 @@ public class Lexer {
         return retSymbol;
     }
 
-    public static void run() throws SyntaxError, IOException {
+    public void run() throws SyntaxError, IOException {
         Token curToken;
         do{
             curToken = getSymbol();
@@ -0,0 +1,145 @@
+package frontend.lexer;
+
+import frontend.semantic.SymTable;
+import manager.Manager;
+
+import java.util.ArrayList;
+
+/**
+ * 词法分析的性能对比，直接运行 main
+ * 1. 整体扫描：在大体量、标识符密集的合成源码上跑完整的 lexer.run
+ * 2. 分类热点：同一批词素上对比旧实现（逐个 Type 编译 Pattern / String.matches）
+ *    与 KeywordTable / NumberDFA 的查表实现
+ * 每组先预热，再取多轮测量的最小值
+ */
+public class LexerBenchmark {
+    private static final int WARMUP = 5;
+    private static final int ROUNDS = 10;
+
+    private static String generateSource(int functions) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("int global_counter = 0x1F;\n");
+        for (int i = 0; i < functions; i++) {
+            sb.append("int helper_function_").append(i).append("(int value_a, int value_b) {\n");
+            sb.append("    int local_index = 0, local_sum = 017;\n");
+            sb.append("    const int local_limit = ").append(i % 97 + 3).append(";\n");
+            sb.append("    // accumulate\n");
+            sb.append("    while (local_index < local_limit) {\n");
+            sb.append("        if (local_index % 2 == 0 && value_a >= value_b) {\n");
+            sb.append("            local_sum = local_sum + value_a * local_index - global_counter;\n");
+            sb.append("        } else {\n");
+            sb.append("            local_sum = local_sum - value_b / (local_index + 1);\n");
+            sb.append("        }\n");
+            sb.append("        local_index = local_index + 1;\n");
+            sb.append("    }\n");
+            sb.append("    /* done */\n");
+            sb.append("    return local_sum;\n");
+            sb.append("}\n");
+        }
+        sb.append("int main() {\n    printf(\"%d\\n\", helper_function_0(1, 2));\n    return 0;\n}\n");
+        return sb.toString();
+    }
+
+    // region 旧实现的分类逻辑，仅作对照
+    private static boolean regexIsReservedWord(String string) {
+        for (Token.Type type : Token.Type.values()) {
+            if (type.getPattern().matcher(string).matches()) {
+                return type.isReserved();
+            }
+        }
+        return false;
+    }
+
+    private static Token.Type regexClassifyNumber(String string) {
+        if (string.matches(Token.Type.HEX_INT.getContent())) {
+            return Token.Type.HEX_INT;
+        } else if (string.matches(Token.Type.OCT_INT.getContent())) {
+            return Token.Type.OCT_INT;
+        } else if (string.matches(Token.Type.DEC_INT.getContent())) {
+            return Token.Type.DEC_INT;
+        }
+        return null;
+    }
+    // endregion
+
+    private static long timeLexer(char[] src) throws Exception {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < WARMUP + ROUNDS; round++) {
+            TokenArray tokenArray = new TokenArray();
+            Manager manager = new Manager(new SymTable(), new ArrayList<>());
+            long begin = System.nanoTime();
+            Lexer lexer = new Lexer(new SourceBuffer(src, src.length), tokenArray);
+            lexer.setManager(manager);
+            lexer.run();
+            long cost = System.nanoTime() - begin;
+            if (round >= WARMUP) {
+                best = Math.min(best, cost);
+            }
+        }
+        return best;
+    }
+
+    private static long timeClassify(ArrayList<Token> tokens, boolean regex) {
+        long best = Long.MAX_VALUE;
+        int hits = 0;
+        for (int round = 0; round < WARMUP + ROUNDS; round++) {
+            long begin = System.nanoTime();
+            for (Token token : tokens) {
+                String content = token.content;
+                if (token.type == Token.Type.IDENTIFIER || token.type.isReserved()) {
+                    boolean reserved = regex ? regexIsReservedWord(content) : KeywordTable.lookup(content) != null;
+                    hits += reserved ? 1 : 0;
+                } else {
+                    Token.Type type;
+                    if (regex) {
+                        type = regexClassifyNumber(content);
+                    } else {
+                        char[] chars = content.toCharArray();
+                        type = NumberDFA.scan(new SourceBuffer(chars, chars.length));
+                    }
+                    hits += type != null ? 1 : 0;
+                }
+            }
+            long cost = System.nanoTime() - begin;
+            if (round >= WARMUP) {
+                best = Math.min(best, cost);
+            }
+        }
+        // 防止循环被整体消除
+        if (hits == 42) {
+            System.out.println();
+        }
+        return best;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        char[] src = generateSource(functions).toCharArray();
+
+        TokenArray tokenArray = new TokenArray();
+        Lexer lexer = new Lexer(new SourceBuffer(src, src.length), tokenArray);
+        lexer.setManager(new Manager(new SymTable(), new ArrayList<>()));
+        lexer.run();
+        ArrayList<Token> words = new ArrayList<>();
+        for (Token token : tokenArray.tokens) {
+            switch (token.type) {
+                case IDENTIFIER, INT, CONST, WHILE, IF, ELSE, RETURN, DEC_INT, OCT_INT, HEX_INT -> words.add(token);
+                default -> {
+                }
+            }
+        }
+
+        long lexCost = timeLexer(src);
+        System.out.printf("input: %d chars, %d tokens%n", src.length, tokenArray.getSize());
+        System.out.printf("Lexer.run            : %8.2f ms  (%6.1f ns/token)%n",
+                lexCost / 1e6, (double) lexCost / tokenArray.getSize());
+
+        long regexCost = timeClassify(words, true);
+        long tableCost = timeClassify(words, false);
+        System.out.printf("classify (regex)     : %8.2f ms  (%6.1f ns/word)%n",
+                regexCost / 1e6, (double) regexCost / words.size());
+        System.out.printf("classify (table/DFA) : %8.2f ms  (%6.1f ns/word)%n",
+                tableCost / 1e6, (double) tableCost / words.size());
+        System.out.printf("speedup              : %8.1fx%n", (double) regexCost / tableCost);
+    }
+}
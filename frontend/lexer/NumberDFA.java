@@ -0,0 +1,163 @@
+package frontend.lexer;
+
+import java.util.Arrays;
+
+/**
+ * 数字字面量的表驱动 DFA，按最长匹配识别
+ * DEC_INT / OCT_INT / HEX_INT / DEC_FLOAT / HEX_FLOAT
+ */
+public class NumberDFA {
+    // 输入字符类
+    private static final int C_ZERO = 0;
+    private static final int C_OCT = 1;      // 1-7
+    private static final int C_DEC = 2;      // 8-9
+    private static final int C_HEX = 3;      // a-d f A-D F
+    private static final int C_E = 4;        // e E, 既是十进制指数也是十六进制数字
+    private static final int C_X = 5;        // x X
+    private static final int C_DOT = 6;
+    private static final int C_P = 7;        // p P
+    private static final int C_SIGN = 8;     // + -
+    private static final int C_OTHER = 9;
+    private static final int CLASSES = 10;
+
+    // 状态
+    private static final int ERR = -1;
+    private static final int START = 0;
+    private static final int ZERO = 1;
+    private static final int OCT = 2;
+    private static final int DEC = 3;
+    private static final int ZERO_DEC = 4;       // 0 开头且出现 8/9，只能继续成为浮点数
+    private static final int HEX_PREFIX = 5;
+    private static final int HEX = 6;
+    private static final int DOT_START = 7;
+    private static final int DEC_FRAC = 8;
+    private static final int DEC_EXP = 9;
+    private static final int DEC_EXP_SIGN = 10;
+    private static final int DEC_EXP_NUM = 11;
+    private static final int HEX_DOT_PREFIX = 12;
+    private static final int HEX_FRAC = 13;
+    private static final int HEX_EXP = 14;
+    private static final int HEX_EXP_SIGN = 15;
+    private static final int HEX_EXP_NUM = 16;
+    private static final int STATES = 17;
+
+    private static final byte[] charClass = new byte[128];
+    private static final int[][] trans = new int[STATES][CLASSES];
+    // 接受状态对应的 token 类型，非接受状态为 null
+    private static final Token.Type[] accept = new Token.Type[STATES];
+
+    static {
+        Arrays.fill(charClass, (byte) C_OTHER);
+        charClass['0'] = C_ZERO;
+        for (char c = '1'; c <= '7'; c++) {
+            charClass[c] = C_OCT;
+        }
+        charClass['8'] = C_DEC;
+        charClass['9'] = C_DEC;
+        for (char c : "abcdfABCDF".toCharArray()) {
+            charClass[c] = C_HEX;
+        }
+        charClass['e'] = C_E;
+        charClass['E'] = C_E;
+        charClass['x'] = C_X;
+        charClass['X'] = C_X;
+        charClass['.'] = C_DOT;
+        charClass['p'] = C_P;
+        charClass['P'] = C_P;
+        charClass['+'] = C_SIGN;
+        charClass['-'] = C_SIGN;
+
+        for (int[] row : trans) {
+            Arrays.fill(row, ERR);
+        }
+        int[] decDigits = {C_ZERO, C_OCT, C_DEC};
+        int[] hexDigits = {C_ZERO, C_OCT, C_DEC, C_HEX, C_E};
+
+        trans[START][C_ZERO] = ZERO;
+        trans[START][C_OCT] = DEC;
+        trans[START][C_DEC] = DEC;
+        trans[START][C_DOT] = DOT_START;
+
+        trans[ZERO][C_ZERO] = OCT;
+        trans[ZERO][C_OCT] = OCT;
+        trans[ZERO][C_DEC] = ZERO_DEC;
+        trans[ZERO][C_X] = HEX_PREFIX;
+        trans[OCT][C_ZERO] = OCT;
+        trans[OCT][C_OCT] = OCT;
+        trans[OCT][C_DEC] = ZERO_DEC;
+        set(ZERO_DEC, decDigits, ZERO_DEC);
+        set(DEC, decDigits, DEC);
+        // 十进制整数部分之后的小数点与指数
+        for (int state : new int[]{ZERO, OCT, ZERO_DEC, DEC}) {
+            trans[state][C_DOT] = DEC_FRAC;
+            trans[state][C_E] = DEC_EXP;
+        }
+        set(DOT_START, decDigits, DEC_FRAC);
+        set(DEC_FRAC, decDigits, DEC_FRAC);
+        trans[DEC_FRAC][C_E] = DEC_EXP;
+        trans[DEC_EXP][C_SIGN] = DEC_EXP_SIGN;
+        set(DEC_EXP, decDigits, DEC_EXP_NUM);
+        set(DEC_EXP_SIGN, decDigits, DEC_EXP_NUM);
+        set(DEC_EXP_NUM, decDigits, DEC_EXP_NUM);
+
+        set(HEX_PREFIX, hexDigits, HEX);
+        trans[HEX_PREFIX][C_DOT] = HEX_DOT_PREFIX;
+        set(HEX, hexDigits, HEX);
+        trans[HEX][C_DOT] = HEX_FRAC;
+        trans[HEX][C_P] = HEX_EXP;
+        set(HEX_DOT_PREFIX, hexDigits, HEX_FRAC);
+        set(HEX_FRAC, hexDigits, HEX_FRAC);
+        trans[HEX_FRAC][C_P] = HEX_EXP;
+        trans[HEX_EXP][C_SIGN] = HEX_EXP_SIGN;
+        set(HEX_EXP, decDigits, HEX_EXP_NUM);
+        set(HEX_EXP_SIGN, decDigits, HEX_EXP_NUM);
+        set(HEX_EXP_NUM, decDigits, HEX_EXP_NUM);
+
+        accept[ZERO] = Token.Type.DEC_INT;
+        accept[DEC] = Token.Type.DEC_INT;
+        accept[OCT] = Token.Type.OCT_INT;
+        accept[HEX] = Token.Type.HEX_INT;
+        accept[DEC_FRAC] = Token.Type.DEC_FLOAT;
+        accept[DEC_EXP_NUM] = Token.Type.DEC_FLOAT;
+        accept[HEX_FRAC] = Token.Type.HEX_FLOAT;
+        accept[HEX_EXP_NUM] = Token.Type.HEX_FLOAT;
+    }
+
+    private static void set(int state, int[] classes, int target) {
+        for (int c : classes) {
+            trans[state][c] = target;
+        }
+    }
+
+    private static int classOf(char c) {
+        return c < 128 ? charClass[c] : C_OTHER;
+    }
+
+    public static boolean canStart(char first, char second) {
+        int state = trans[START][classOf(first)];
+        return state != ERR && (accept[state] != null || trans[state][classOf(second)] != ERR);
+    }
+
+    /**
+     * 从 src 当前游标处做最长匹配，匹配成功时游标停在字面量之后
+     *
+     * @return 字面量类型，不构成数字时返回 null 且游标不动
+     */
+    public static Token.Type scan(SourceBuffer src) {
+        int state = START;
+        int lastAcceptLen = 0;
+        Token.Type lastAccept = null;
+        for (int k = 0; ; k++) {
+            state = trans[state][classOf(src.peek(k))];
+            if (state == ERR) {
+                break;
+            }
+            if (accept[state] != null) {
+                lastAccept = accept[state];
+                lastAcceptLen = k + 1;
+            }
+        }
+        src.advance(lastAcceptLen);
+        return lastAccept;
+    }
+}
@@ -0,0 +1,129 @@
+package frontend.lexer;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 词法分析的输入层：
+ * 源文件只映射、解码一次，整体放入 char[]，之后的读取只移动游标，
+ * peek / lookahead 均为 O(1)，行号列号由游标偏移维护
+ */
+public class SourceBuffer {
+    public static final char EOF = (char) -1;
+
+    private final char[] buf;
+    private final int length;
+    // 下一个待读字符的位置，读到末尾之后仍会继续后移，保证 retract 对称
+    private int pos = 0;
+    // 当前行号，以及当前行首字符在 buf 中的偏移
+    private int line = 1;
+    private int lineStart = 0;
+
+    public SourceBuffer(String src) {
+        try (FileChannel channel = FileChannel.open(Path.of(src), StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CharBuffer chars = StandardCharsets.UTF_8.decode(mapped);
+            this.buf = chars.array();
+            this.length = chars.limit();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public SourceBuffer(char[] buf, int length) {
+        this.buf = buf;
+        this.length = length;
+    }
+
+    /**
+     * 读入一个字符并后移游标
+     */
+    public char next() {
+        if (pos >= length) {
+            pos++;
+            return EOF;
+        }
+        char c = buf[pos++];
+        if (c == '\n') {
+            line++;
+            lineStart = pos;
+        }
+        return c;
+    }
+
+    /**
+     * 连续读入 n 个字符
+     */
+    public void advance(int n) {
+        for (int i = 0; i < n; i++) {
+            next();
+        }
+    }
+
+    /**
+     * 查看下一个待读字符，不移动游标
+     */
+    public char peek() {
+        return pos < length ? buf[pos] : EOF;
+    }
+
+    /**
+     * 向前查看第 k 个待读字符，peek(0) 等价于 peek()
+     */
+    public char peek(int k) {
+        int idx = pos + k;
+        return idx < length ? buf[idx] : EOF;
+    }
+
+    /**
+     * 退回最近读入的一个字符，若退回的是换行则同步回退行号
+     */
+    public void retract() {
+        if (pos == 0) {
+            return;
+        }
+        pos--;
+        if (pos < length && buf[pos] == '\n') {
+            line--;
+            lineStart = pos;
+            while (lineStart > 0 && buf[lineStart - 1] != '\n') {
+                lineStart--;
+            }
+        }
+    }
+
+    /**
+     * 源码区间 [start, end) 的文本
+     */
+    public String text(int start, int end) {
+        return new String(buf, start, Math.min(end, length) - start);
+    }
+
+    public char[] getBuffer() {
+        return buf;
+    }
+
+    public boolean reachEOF() {
+        return pos >= length;
+    }
+
+    public int getPos() {
+        return pos;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * 最近读入字符的列号，从 1 开始
+     */
+    public int getColumn() {
+        return pos - lineStart;
+    }
+}
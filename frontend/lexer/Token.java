@@ -1,29 +1,28 @@
 package frontend.lexer;
 
 
-import manager.Manager;
-
 import java.util.regex.Pattern;
 
 public class Token {
     public Type type;
     public String content;
     public int line;
+    public int column;
 
     public Token(Type type, String content) {
-        // 功能用token
+        // 功能用token，不对应源码位置
+        this(type, content, 0, 0);
+    }
+
+    public Token(Type type, String content, int line, int column) {
         this.type = type;
         this.content = content;
-        this.line = Manager.BufferReader.line;
+        this.line = line;
+        this.column = column;
     }
 
     public static boolean isReservedWord(String string) {
-        for (Type type : Type.values()) {
-            if (type.getPattern().matcher(string).matches()) {
-                return type.reserved;
-            }
-        }
-        return false;
+        return KeywordTable.lookup(string) != null;
     }
 
     public enum Type {
@@ -92,6 +91,10 @@ public class Token {
             return content;
         }
 
+        public boolean isReserved() {
+            return reserved;
+        }
+
         public Pattern getPattern() {
             return Pattern.compile("^(" + content + ")" + (reserved ? "(?!\\w)" : ""));
         }
@@ -1,6 +1,7 @@
 package frontend.semantic;
 
 import mir.Constant;
+import mir.IRContext;
 import mir.Type;
 import mir.Value;
 import utils.SyncLinkedList;
@@ -80,19 +81,21 @@ public abstract class InitValue {
 
     public static class ZeroArrayInit extends ArrayInit {
         public ArrayList<InitValue> arrayValues;
+        private final IRContext context;
         public int solve(Type ele)
         {
             if(ele instanceof Type.ArrayType)
                 return ((Type.ArrayType) ele).getSize()*solve(((Type.ArrayType) ele).getEleType());
             else return 1;
         }
-        public ZeroArrayInit(Type type) {
+        public ZeroArrayInit(IRContext context, Type type) {
             super(type);
+            this.context = context;
             arrayValues = new ArrayList<>();
 //            int size = solve(type);
 //            for (int i = 0;i < size;i++)
 //            {
-//                arrayValues.add(new ValueInit(new Constant.ConstantInt(0),Type.BasicType.I32_TYPE));
+//                arrayValues.add(new ValueInit(Constant.ConstantInt.get(0),Type.BasicType.I32_TYPE));
 //            }
         }
 
@@ -104,9 +107,9 @@ public abstract class InitValue {
             Type.BasicType basicType = ((Type.ArrayType) type).getBasicEleType();
             Flatten flatten = new Flatten();
             if (basicType.isInt32Ty()) {
-                flatten.addLast(new Flatten.Slice(new Constant.ConstantInt(0), size));
+                flatten.addLast(new Flatten.Slice(Constant.ConstantInt.get(context, 0), size));
             } else {
-                flatten.addLast(new Flatten.Slice(new Constant.ConstantFloat(0), size));
+                flatten.addLast(new Flatten.Slice(Constant.ConstantFloat.get(context, 0), size));
             }
             return flatten;
         }
@@ -167,6 +170,41 @@ public abstract class InitValue {
         }
     }
 
+    /**
+     * 字符串常量，content 为源码中的原始文本（不含引号），仅支持 \n 转义
+     */
+    public static class StrInit extends InitValue {
+        private final String content;
+
+        public StrInit(IRContext context, String content) {
+            super(Type.ArrayType.get(context, byteLength(content), Type.BasicType.I8_TYPE));
+            this.content = content;
+        }
+
+        // 每个 \n 占一个字节，末尾补 \0
+        private static int byteLength(String content) {
+            int length = content.length() + 1;
+            for (int idx = content.indexOf("\\n"); idx != -1; idx = content.indexOf("\\n", idx + 2)) {
+                length--;
+            }
+            return length;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        @Override
+        public Flatten flatten() {
+            throw new RuntimeException("Err: String constant cannot be flattened");
+        }
+
+        @Override
+        public String toString() {
+            return getType().toString() + " c\"" + content.replace("\\n", "\\0A") + "\\00\"";
+        }
+    }
+
 
 
 
@@ -0,0 +1,158 @@
+package manager;
+
+import arg.Arg;
+import frontend.Visitor;
+import frontend.lexer.Lexer;
+import frontend.lexer.SourceBuffer;
+import frontend.lexer.TokenArray;
+import frontend.syntaxChecker.Ast;
+import frontend.syntaxChecker.Parser;
+import midend.DeadCodeDelete;
+import midend.DeadStoreElimination;
+import midend.FunctionInline;
+import midend.GCM;
+import midend.GVN;
+import midend.InstCombine;
+import midend.LoadElimination;
+import midend.LoopStrengthReduce;
+import midend.LoopUnroll;
+import midend.PassManager;
+import midend.SCCP;
+import midend.SROA;
+import midend.TailRecursionElimination;
+import mir.Module;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static midend.PassManager.ALL;
+import static midend.PassManager.Analysis.CFG;
+import static midend.PassManager.Analysis.DOMINANCE;
+import static midend.PassManager.Analysis.LOOPS;
+import static midend.PassManager.NONE;
+
+/**
+ * 一个编译单元（一个源文件）的全部编译状态
+ * 词法、语法、语义、中端各阶段的对象都由它创建并只在本次编译内使用，
+ * 不依赖任何全局可变的静态变量，因此多个 CompilationContext 可以在同一 JVM 的不同线程中并行编译
+ */
+public class CompilationContext {
+    // 递归下降的 Parser / Visitor 对深层嵌套的源码需要较大的线程栈
+    private static final long WORKER_STACK_SIZE = 64L << 20;
+
+    private final Arg arg;
+    private final Visitor visitor = new Visitor();
+
+    /**
+     * 并行编译用的线程池，工作线程使用较大的栈，且不阻止 JVM 退出
+     */
+    public static ExecutorService newWorkerPool(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(null, runnable, "compile-worker-" + count.getAndIncrement(), WORKER_STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompilationContext(Arg arg) {
+        this.arg = arg;
+    }
+
+    public Arg getArg() {
+        return arg;
+    }
+
+    public Manager getManager() {
+        return visitor.getManager();
+    }
+
+    public Module getModule() {
+        return getManager().getModule();
+    }
+
+    public void compile() throws Exception {
+        // lex
+        SourceBuffer source = new SourceBuffer(arg.srcFileName);
+        TokenArray tokenArray = new TokenArray();
+        tokenArray.setManager(getManager());
+        Lexer lexer = new Lexer(source, tokenArray);
+        lexer.setManager(getManager());
+        lexer.run();
+
+        // parse
+        Parser parser = new Parser(tokenArray);
+        parser.setManager(getManager());
+        Ast ast = parser.parseAst();
+
+        // visit
+        visitor.visitAst(ast);
+
+        // midend
+        if (arg.opt) {
+            optimize(getModule());
+        }
+
+        getManager().outputLLVM(arg.outPath);
+        getManager().outputError(arg.errPath);
+    }
+
+    private static ExecutorService passPool;
+
+    /**
+     * 并行运行函数级 pass 的线程池，各编译单元共用，线程数取第一次请求时的值
+     */
+    private static synchronized ExecutorService passPool(int threads) {
+        if (passPool == null) {
+            passPool = newWorkerPool(threads);
+        }
+        return passPool;
+    }
+
+    /**
+     * -O1 流水线，各 pass 声明需要与保持的分析，由 PassManager 按需重建
+     * 函数 pass 每处理一个函数新建一个 pass 对象，以便在不同线程中并行；
+     * 内联、无用函数删除与纯函数标记读写多个函数，作为模块 pass 串行运行
+     */
+    private void optimize(Module module) throws IOException {
+        PassManager pm = new PassManager(arg.timePasses, arg.passThreads > 1 ? passPool(arg.passThreads) : null);
+        pm.addModulePass("function-inline", new FunctionInline()::run, EnumSet.of(CFG), NONE)
+                .addModulePass("dead-code-delete", new DeadCodeDelete()::run, EnumSet.of(CFG), NONE)
+                .addFunctionPass("sroa", function -> new SROA().runOnFunction(function), NONE, ALL)
+                .addFunctionPass("mem2reg", function -> function.runMem2Reg(module), EnumSet.of(DOMINANCE), ALL)
+                .addFunctionPass("tail-recursion-elim", function -> new TailRecursionElimination().runOnFunction(function), NONE, EnumSet.of(CFG))
+                .addModulePass("gvn-purity", new GVN()::markPureFunctions, NONE, ALL)
+                .addFunctionPass("gvn", function -> new GVN().runOnFunction(function), EnumSet.of(DOMINANCE), ALL)
+                .addFunctionPass("load-elim", function -> new LoadElimination().runOnFunction(function), EnumSet.of(DOMINANCE), ALL)
+                .addFunctionPass("dead-store-elim", function -> new DeadStoreElimination().runOnFunction(function), NONE, ALL)
+                .addFunctionPass("sccp", function -> new SCCP().runOnFunction(function), NONE, EnumSet.of(CFG))
+                //instcombine：在循环优化之前化简 Visitor 产生的冗余运算
+                .addFunctionPass("instcombine", function -> new InstCombine().runOnFunction(function), NONE, ALL)
+                .addFunctionPass("gcm", function -> new GCM().runOnFunction(function), EnumSet.of(LOOPS), ALL)
+                .addFunctionPass("loop-strength-reduce", function -> new LoopStrengthReduce().runOnFunction(function), EnumSet.of(LOOPS), ALL)
+                .addFunctionPass("loop-unroll", function -> new LoopUnroll(arg.unrollFactor).runOnFunction(function), EnumSet.of(LOOPS), ALL)
+                //sccp：折叠展开后归纳变量的常量运算，之后地址多为常量偏移，再做一遍访存消除
+                .addFunctionPass("sccp", function -> new SCCP().runOnFunction(function), NONE, EnumSet.of(CFG))
+                .addFunctionPass("load-elim", function -> new LoadElimination().runOnFunction(function), EnumSet.of(DOMINANCE), ALL)
+                .addFunctionPass("dead-store-elim", function -> new DeadStoreElimination().runOnFunction(function), NONE, ALL)
+                //sroa：展开后下标变为常量的小数组，只对拆分了数组的函数重新运行 Mem2Reg
+                .addFunctionPass("sroa+mem2reg", function -> {
+                    if (new SROA().runOnFunction(function)) {
+                        pm.require(function, EnumSet.of(DOMINANCE));
+                        function.runMem2Reg(module);
+                    }
+                }, NONE, ALL)
+                .addFunctionPass("sccp", function -> new SCCP().runOnFunction(function), NONE, EnumSet.of(CFG))
+                .addFunctionPass("instcombine", function -> new InstCombine().runOnFunction(function), NONE, ALL);
+        pm.run(module);
+        if (arg.timePasses) {
+            // 并行编译时各单元的报告整块输出，不互相穿插
+            StringBuilder report = new StringBuilder();
+            pm.printReport(report, arg.srcFileName);
+            System.err.print(report);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package manager;
+
+import arg.Arg;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 常驻编译服务：JVM 与 JIT 在多次编译之间保持预热
+ * <p>
+ * 按行的文本协议，请求与应答各占一行：
+ * <pre>
+ *   请求      &lt;id&gt; &lt;src&gt; &lt;out&gt; [-e &lt;errPath&gt;] [选项...]
+ *   应答      &lt;id&gt; OK &lt;错误个数&gt; &lt;errPath&gt;
+ *             &lt;id&gt; ERR &lt;异常类型&gt; &lt;信息&gt;
+ *   quit      处理完本连接已接收的请求后关闭本连接（stdin 模式下即退出）
+ *   shutdown  同 quit，并停止监听，处理完其余连接已接收的请求后退出
+ * </pre>
+ * 选项与命令行相同（-O1、--unroll-factor n、--time-passes、--pass-threads n），由 Arg.parseOption 解析
+ * 请求在线程池上并行执行，应答按完成顺序写回，用 id 对应请求；路径中不能含空白
+ * 既可以走 stdin/stdout，也可以监听一个 Unix domain socket，每个连接使用同样的协议
+ */
+public class CompileDaemon {
+    private final ExecutorService pool;
+
+    public CompileDaemon(int workers) {
+        this.pool = CompilationContext.newWorkerPool(workers);
+    }
+
+    /**
+     * 处理一行请求，同步返回应答
+     */
+    public String handle(String request) {
+        String[] parts = request.trim().split("\\s+");
+        String id = parts[0];
+        if (parts.length < 3) {
+            return id + " ERR BadRequest expected: <id> <src> <out> [-e <errPath>] [options...]";
+        }
+        String src = parts[1];
+        String out = parts[2];
+        String errPath = out + ".error.txt";
+        ArrayList<String> options = new ArrayList<>();
+        for (int i = 3; i < parts.length; i++) {
+            if (parts[i].equals("-e") && i + 1 < parts.length) {
+                errPath = parts[++i];
+            } else {
+                options.add(parts[i]);
+            }
+        }
+        try {
+            Arg arg = new Arg(src, out, errPath, false);
+            String[] flags = options.toArray(new String[0]);
+            for (int i = 0; i < flags.length; i++) {
+                int last;
+                try {
+                    last = arg.parseOption(flags, i);
+                } catch (IllegalArgumentException e) {
+                    return id + " ERR BadRequest " + e.getMessage();
+                }
+                if (last < 0) {
+                    return id + " ERR BadRequest unknown flag " + flags[i];
+                }
+                i = last;
+            }
+            CompilationContext context = new CompilationContext(arg);
+            context.compile();
+            return id + " OK " + context.getManager().getNumberedErrorCount() + " " + errPath;
+        } catch (Exception | AssertionError | StackOverflowError e) {
+            String message = e.getMessage() == null ? "" : e.getMessage().replace('\n', ' ');
+            return id + " ERR " + e.getClass().getSimpleName() + " " + message;
+        }
+    }
+
+    /**
+     * 从 in 读取请求直到 EOF、quit 或 shutdown，应答写入 out，返回前等待所有已接收的请求完成
+     * 返回是否收到了 shutdown
+     */
+    public boolean serve(InputStream in, OutputStream out) throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        // 尚未应答的请求数，由 writer 的锁保护
+        int[] pending = {0};
+        boolean shutdown = false;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            if (line.trim().equals("quit")) {
+                break;
+            }
+            if (line.trim().equals("shutdown")) {
+                shutdown = true;
+                break;
+            }
+            String request = line;
+            synchronized (writer) {
+                pending[0]++;
+            }
+            try {
+                pool.execute(() -> respond(writer, pending, handle(request)));
+            } catch (RejectedExecutionException e) {
+                // 其他连接已发来 shutdown
+                respond(writer, pending, request.trim().split("\\s+")[0] + " ERR ShuttingDown");
+            }
+        }
+        synchronized (writer) {
+            while (pending[0] > 0) {
+                writer.wait();
+            }
+        }
+        return shutdown;
+    }
+
+    private static void respond(PrintWriter writer, int[] pending, String response) {
+        synchronized (writer) {
+            writer.println(response);
+            writer.flush();
+            pending[0]--;
+            writer.notifyAll();
+        }
+    }
+
+    /**
+     * 监听 Unix domain socket，每个连接由一个线程读取请求
+     * 任一连接发来 shutdown 后关闭监听并返回，已接收的请求由 shutdown() 等待完成
+     */
+    public void serveSocket(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        // 由 shutdown 所在的连接线程关闭，使 accept 抛出 ClosedChannelException
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            server.bind(UnixDomainSocketAddress.of(path));
+            while (true) {
+                SocketChannel channel;
+                try {
+                    channel = server.accept();
+                } catch (ClosedChannelException e) {
+                    // shutdown 关闭了监听
+                    break;
+                }
+                Thread connection = new Thread(() -> {
+                    try (channel) {
+                        if (serve(Channels.newInputStream(channel), Channels.newOutputStream(channel))) {
+                            server.close();
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        System.err.println("daemon: connection closed: " + e.getMessage());
+                    }
+                }, "daemon-connection");
+                connection.setDaemon(true);
+                connection.start();
+            }
+        } finally {
+            server.close();
+            Files.deleteIfExists(path);
+        }
+    }
+
+    public void shutdown() throws InterruptedException {
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * compiler --daemon [-j workers] [--socket path]
+     */
+    public static void run(String[] args) throws IOException, InterruptedException {
+        int workers = Runtime.getRuntime().availableProcessors();
+        Path socket = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-j") && i + 1 < args.length) {
+                workers = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--socket") && i + 1 < args.length) {
+                socket = Path.of(args[++i]);
+            }
+        }
+        CompileDaemon daemon = new CompileDaemon(Math.max(1, workers));
+        if (socket != null) {
+            daemon.serveSocket(socket);
+        } else {
+            daemon.serve(System.in, System.out);
+        }
+        daemon.shutdown();
+    }
+}
@@ -0,0 +1,195 @@
+package manager;
+
+import arg.Arg;
+import mir.BasicBlock;
+import mir.Function;
+import mir.Instruction;
+import mir.Module;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 中间表示的内存占用基准
+ * <pre>
+ *   compiler --heap-bench [-O1] [-n runs] [--synthetic funcs] src...
+ * </pre>
+ * 对每个源文件（以及 --synthetic 生成的含 funcs 个函数的程序）重复编译 runs 次，输出各项的中位数，
+ * 并列出每次的 retained：
+ * 1. retained：编译结束、Module 仍可达时，GC 之后堆占用相对编译前的增量；
+ *    每次测量前确认上一次的 CompilationContext 已被回收，否则基线中混有上一次的 Module
+ * 2. allocated：编译线程累计分配的字节数
+ * 3. insts / operands：最终 IR 的指令条数与操作数个数，用于折算每条指令的开销
+ * 编译在大栈的工作线程中进行，函数级 pass 串行运行，分配量只计编译线程
+ */
+public class HeapBenchmark {
+
+    private static class Result {
+        long retained;
+        long allocated;
+        long nanos;
+        int insts;
+        int operands;
+        // 本次编译的 CompilationContext，下一次测量前必须已被回收
+        WeakReference<CompilationContext> context;
+    }
+
+    public static void run(String[] args) throws Exception {
+        boolean opt = false;
+        int runs = 3;
+        int synthetic = 0;
+        ArrayList<String> srcs = new ArrayList<>();
+        ArrayList<String> names = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "-O1" -> opt = true;
+                case "-n" -> runs = Math.max(1, Integer.parseInt(args[++i]));
+                case "--synthetic" -> synthetic = Integer.parseInt(args[++i]);
+                default -> {
+                    srcs.add(args[i]);
+                    names.add(new File(args[i]).getName());
+                }
+            }
+        }
+        if (synthetic > 0) {
+            File file = File.createTempFile("heap-bench", ".sy");
+            file.deleteOnExit();
+            Files.writeString(file.toPath(), syntheticProgram(synthetic), StandardCharsets.UTF_8);
+            srcs.add(file.getPath());
+            names.add("synthetic-" + synthetic);
+        }
+        if (srcs.isEmpty()) {
+            System.err.println("Usage: compiler --heap-bench [-O1] [-n runs] [--synthetic funcs] src...");
+            return;
+        }
+
+        ExecutorService pool = CompilationContext.newWorkerPool(1);
+        System.out.printf("%-32s %12s %12s %10s %8s %9s %9s  %s%n",
+                "source", "retained(KB)", "alloc(KB)", "time(ms)", "insts", "operands", "B/inst", "runs retained(KB)");
+        for (int k = 0; k < srcs.size(); k++) {
+            String src = srcs.get(k);
+            File out = File.createTempFile("heap-bench", ".ll");
+            out.deleteOnExit();
+            Arg arg = new Arg(src, out.getPath(), out.getPath() + ".error.txt", opt);
+            arg.passThreads = 1;
+            new File(arg.errPath).deleteOnExit();
+            // 第一次编译只用于预热
+            Result previous = pool.submit(() -> measure(arg)).get();
+            long[] retained = new long[runs];
+            long[] allocated = new long[runs];
+            long[] nanos = new long[runs];
+            StringBuilder all = new StringBuilder();
+            Result result = previous;
+            for (int i = 0; i < runs; i++) {
+                awaitCollected(previous.context);
+                result = pool.submit(() -> measure(arg)).get();
+                retained[i] = result.retained;
+                allocated[i] = result.allocated;
+                nanos[i] = result.nanos;
+                all.append(i == 0 ? "" : ",").append(result.retained >> 10);
+                previous = result;
+            }
+            long medianRetained = median(retained);
+            System.out.printf("%-32s %12d %12d %10.1f %8d %9d %9d  %s%n", names.get(k),
+                    medianRetained >> 10, median(allocated) >> 10, median(nanos) / 1e6, result.insts, result.operands,
+                    result.insts == 0 ? 0 : medianRetained / result.insts, all);
+            awaitCollected(previous.context);
+        }
+        pool.shutdown();
+    }
+
+    private static Result measure(Arg arg) throws Exception {
+        Result result = new Result();
+        long before = usedHeap();
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        CompilationContext context = new CompilationContext(arg);
+        context.compile();
+        result.nanos = System.nanoTime() - start;
+        result.allocated = allocatedBytes() - allocated;
+        result.retained = usedHeap() - before;
+        Module module = context.getModule();
+        for (Function function : module.getFuncSet()) {
+            if (function.isExternal() || function.isDeleted()) {
+                continue;
+            }
+            for (BasicBlock block : function.getBlocks()) {
+                for (Instruction inst : block.getInstructions()) {
+                    result.insts++;
+                    result.operands += inst.getNumOperands();
+                }
+            }
+        }
+        // 统计 retained 时 Module 必须仍然可达
+        Reference.reachabilityFence(context);
+        result.context = new WeakReference<>(context);
+        return result;
+    }
+
+    /**
+     * 反复 GC 直到上一次编译的 CompilationContext 被回收，若始终可达说明有引用泄漏，测量没有意义
+     */
+    private static void awaitCollected(WeakReference<CompilationContext> ref) throws InterruptedException {
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        if (ref.get() != null) {
+            throw new IllegalStateException("previous compilation is still reachable, retained would be wrong");
+        }
+    }
+
+    /**
+     * 偶数个时取较小的中间值
+     */
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[(sorted.length - 1) / 2];
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * 含 funcs 个带循环与数组访问的函数，main 依次调用它们
+     */
+    private static String syntheticProgram(int funcs) {
+        StringBuilder sb = new StringBuilder("int g[100];\n");
+        for (int i = 0; i < funcs; i++) {
+            sb.append("int f").append(i).append("(int a[], int n) {\n")
+                    .append("    int s = 0; int i = 0; int t[8];\n")
+                    .append("    while (i < 8) { t[i] = i * ").append(i % 7 + 1).append("; i = i + 1; }\n")
+                    .append("    i = 0;\n")
+                    .append("    while (i < n) {\n")
+                    .append("        s = s + a[i] * ").append(i % 5 + 2).append(" + t[i % 8] / ").append(i % 3 + 1).append(";\n")
+                    .append("        if (s > 100000) { s = s - 99991; }\n")
+                    .append("        g[i % 100] = s; i = i + 1;\n")
+                    .append("    }\n")
+                    .append("    return s + ").append(i).append(";\n")
+                    .append("}\n");
+        }
+        sb.append("int main() {\n    int a[100]; int i = 0; int s = 0;\n")
+                .append("    while (i < 100) { a[i] = i; i = i + 1; }\n");
+        for (int i = 0; i < funcs; i++) {
+            sb.append("    s = (s + f").append(i).append("(a, ").append(i % 90 + 10).append(")) % 100007;\n");
+        }
+        sb.append("    putint(s);\n    return 0;\n}\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,85 @@
+package manager;
+
+import frontend.semantic.Symbol;
+import mir.*;
+import mir.Module;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * LLVM IR 的流式输出：
+ * 逐个函数、逐条指令通过 Instruction.print 直接写入 out，不再先拼出整份 IR 的字符串列表，
+ * 输出期间额外占用的内存只与单条指令的文本长度有关
+ */
+public class IRWriter {
+    private final Module module;
+    private final Appendable out;
+
+    public IRWriter(Module module, Appendable out) {
+        this.module = module;
+        this.out = out;
+    }
+
+    public void write() throws IOException {
+        // 字符串常量
+        for (GlobalValue str : module.getStrings()) {
+            out.append(str.getDescriptor()).append(" = constant ").append(str.initValue.toString()).append('\n');
+        }
+
+        //全局变量
+
+        // 未定义常量表
+        for (Map.Entry<Type, GlobalValue> entry : module.getUndefTable().entrySet()) {
+            out.append(entry.getValue().getDescriptor()).append(" = global ")
+                    .append(entry.getValue().initValue.toString()).append('\n');
+        }
+
+        for (Map.Entry<String, Symbol> globalSymbolEntry :
+                module.getGlobalSymTable().getSymbolMap().entrySet()) {
+            if (globalSymbolEntry.getValue().getAllocInst() == null) {
+                continue;
+            }
+            out.append('@').append(globalSymbolEntry.getKey()).append(" = global ")
+                    .append(globalSymbolEntry.getValue().getInitValue().toString()).append('\n');
+        }
+
+        //函数声明
+        for (Map.Entry<String, Function> functionEntry : module.getFunctions().entrySet()) {
+            Function function = functionEntry.getValue();
+            if (!function.isExternal()) {
+                continue;
+            }
+            out.append("declare ").append(function.getRetType().toString())
+                    .append(" @").append(functionEntry.getKey())
+                    .append('(').append(function.FArgsToString()).append(")\n");
+        }
+
+        //函数定义
+        for (Function function : module.getFuncSet()) {
+            if (function.isDeleted() || function.isExternal()) {
+                continue;
+            }
+            writeFunction(function);
+        }
+    }
+
+    private void writeFunction(Function function) throws IOException {
+        function.numberValues();
+        out.append("define ").append(function.getRetType().toString())
+                .append(" @").append(function.getName())
+                .append('(').append(function.RArgsToString()).append(") {\n");
+        for (BasicBlock block : function.getBlocks()) {
+            if (!block.getInstructions().isEmpty()) {
+                out.append(block.getLabel()).append(":\n");
+                for (Instruction instruction : block.getInstructions()) {
+                    out.append('\t');
+                    instruction.print(out);
+                    out.append('\n');
+                }
+            }
+            out.append("\n\n");
+        }
+        out.append("}\n\n");
+    }
+}
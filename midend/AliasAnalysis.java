@@ -0,0 +1,143 @@
+package midend;
+
+import mir.Constant;
+import mir.Function;
+import mir.GlobalValue;
+import mir.Instruction;
+import mir.Type;
+import mir.Value;
+
+/**
+ * 基本别名分析，地址沿 GEP / BitCast 分解为 根对象 + 字节偏移：
+ * 1. 不同的 Alloc / 全局变量互不别名；指针参数不会指向本函数的 Alloc
+ * 2. 同一根对象上偏移都为常量时，按访问的字节区间是否重叠判断
+ * 3. 其余情况可能别名
+ */
+public class AliasAnalysis {
+
+    /**
+     * 地址的分解结果，offset 不是常量时 known 为 false
+     */
+    public static class Location {
+        public final Value root;
+        public final long offset;
+        public final boolean known;
+
+        private Location(Value root, long offset, boolean known) {
+            this.root = root;
+            this.offset = offset;
+            this.known = known;
+        }
+    }
+
+    public static int sizeOf(Type type) {
+        if (type instanceof Type.ArrayType) {
+            return ((Type.ArrayType) type).getSize() * sizeOf(((Type.ArrayType) type).getEleType());
+        }
+        if (type == Type.BasicType.I1_TYPE || type == Type.BasicType.I8_TYPE) {
+            return 1;
+        }
+        if (type == Type.BasicType.I64_TYPE || type == Type.BasicType.F64_TYPE || type.isPointerTy()) {
+            return 8;
+        }
+        return 4;
+    }
+
+    /**
+     * 地址沿 GEP / BitCast 回溯到的根对象：Alloc、全局变量或指针参数
+     */
+    public static Value rootOf(Value addr) {
+        while (addr instanceof Instruction.GetElementPtr || addr instanceof Instruction.BitCast) {
+            addr = addr instanceof Instruction.BitCast
+                    ? ((Instruction.BitCast) addr).getSrc()
+                    : ((Instruction.GetElementPtr) addr).getBase();
+        }
+        return addr;
+    }
+
+    public static Location locate(Value addr) {
+        long offset = 0;
+        boolean known = true;
+        while (addr instanceof Instruction.GetElementPtr || addr instanceof Instruction.BitCast) {
+            if (addr instanceof Instruction.BitCast) {
+                addr = ((Instruction.BitCast) addr).getSrc();
+                continue;
+            }
+            Instruction.GetElementPtr gep = (Instruction.GetElementPtr) addr;
+            // 第一个下标按基址指向的类型整体偏移，之后逐层进入数组元素
+            Type cur = ((Type.PointerType) gep.getBase().getType()).getInnerType();
+            boolean first = true;
+            for (Value index : gep.getOffsets()) {
+                if (!first) {
+                    if (!(cur instanceof Type.ArrayType)) {
+                        known = false;
+                        break;
+                    }
+                    cur = ((Type.ArrayType) cur).getEleType();
+                }
+                first = false;
+                if (index instanceof Constant.ConstantInt) {
+                    offset += (long) (Integer) ((Constant.ConstantInt) index).getConstValue() * sizeOf(cur);
+                } else {
+                    known = false;
+                }
+            }
+            addr = gep.getBase();
+        }
+        return new Location(addr, offset, known);
+    }
+
+    private static boolean isIdentified(Value root) {
+        return root instanceof Instruction.Alloc || root instanceof GlobalValue;
+    }
+
+    /**
+     * 两个根对象指向的内存是否可能重叠
+     */
+    public static boolean mayAliasRoots(Value a, Value b) {
+        if (a == b) {
+            return true;
+        }
+        if (isIdentified(a) && isIdentified(b)) {
+            return false;
+        }
+        boolean aLocal = a instanceof Instruction.Alloc;
+        boolean bLocal = b instanceof Instruction.Alloc;
+        return !(a instanceof Function.Argument && bLocal) && !(b instanceof Function.Argument && aLocal);
+    }
+
+    private static int accessSize(Value addr) {
+        return sizeOf(((Type.PointerType) addr.getType()).getInnerType());
+    }
+
+    /**
+     * 对地址 a、b 的访问（大小取各自指向的类型）是否可能重叠
+     */
+    public static boolean mayAlias(Value a, Value b) {
+        if (a == b) {
+            return true;
+        }
+        Location la = locate(a);
+        Location lb = locate(b);
+        if (!mayAliasRoots(la.root, lb.root)) {
+            return false;
+        }
+        if (la.root == lb.root && la.known && lb.known) {
+            return la.offset < lb.offset + accessSize(b) && lb.offset < la.offset + accessSize(a);
+        }
+        return true;
+    }
+
+    /**
+     * 地址 a、b 一定相同且访问大小相同
+     */
+    public static boolean mustAlias(Value a, Value b) {
+        if (a == b) {
+            return true;
+        }
+        Location la = locate(a);
+        Location lb = locate(b);
+        return la.root == lb.root && la.known && lb.known && la.offset == lb.offset
+                && accessSize(a) == accessSize(b);
+    }
+}
@@ -6,26 +6,29 @@ import mir.Value;
 import java.util.HashMap;
 import java.util.HashSet;
 
+/**
+ * 一次克隆（函数内联）过程中 原值 -> 克隆值 的映射，由使用方按需创建，不再全局共享
+ */
 public class CloneInfo {
 
-    public static HashMap<Integer, Integer> loopCondCntMap = new HashMap<>();
-    public static HashMap<Value, Value> valueMap = new HashMap<>();
+    public final HashMap<Integer, Integer> loopCondCntMap = new HashMap<>();
+    public final HashMap<Value, Value> valueMap = new HashMap<>();
     //public static HashSet<Loop> loopNeedFix = new HashSet<>();
     //public static HashSet<BasicBlock> bbNeedFix = new HashSet<>();
 
 
 //
-//    public static boolean isReflected(Loop loop) {
+//    public boolean isReflected(Loop loop) {
 //        return loopMap.containsKey(loop);
 //    }
 
 
 
-    public static void addLoopCondCntReflect(Integer src, Integer tag) {
+    public void addLoopCondCntReflect(Integer src, Integer tag) {
         loopCondCntMap.put(src, tag);
     }
 
-    public static Integer getLoopCondCntReflect(Integer cnt) {
+    public Integer getLoopCondCntReflect(Integer cnt) {
         if (loopCondCntMap.containsKey(cnt)) {
             return loopCondCntMap.get(cnt);
         } else {
@@ -33,11 +36,11 @@ public class CloneInfo {
         }
     }
 
-    public static void addValueReflect(Value src, Value tag) {
+    public void addValueReflect(Value src, Value tag) {
         valueMap.put(src, tag);
     }
 
-    public static Value getReflectedValue(Value value) {
+    public Value getReflectedValue(Value value) {
         if (valueMap.containsKey(value)) {
             return valueMap.get(value);
         }
@@ -45,15 +48,15 @@ public class CloneInfo {
     }
 
 
-//    public static void addLoopNeedFix(Loop loop) {
+//    public void addLoopNeedFix(Loop loop) {
 //        loopNeedFix.add(loop);
 //    }
 //
-//    public static void rmBBNeedFix(BasicBlock bb) {
+//    public void rmBBNeedFix(BasicBlock bb) {
 //        bbNeedFix.remove(bb);
 //    }
 
-    public static void clear() {
+    public void clear() {
         loopCondCntMap.clear();
         valueMap.clear();
         //loopNeedFix.clear();
@@ -48,7 +48,7 @@ public class ControlFlowGraph {
             }
             // 如果后续指令存在，删除后续指令
             while(findFirstTerminator.hasNext()) {
-                findFirstTerminator.getNext().remove();
+                ((Instruction) findFirstTerminator.getNext()).delete();
             }
             // 枚举指令
             for (Instruction inst : block.getInstructions()) {
@@ -85,7 +85,7 @@ public class ControlFlowGraph {
     private void removeDeadBlocks() {
         // reset
         vis.clear();
-        if (parentFunction.getBlocks().getSize() == 0) {
+        if (parentFunction.getBlocks().isEmpty()) {
             return;
         }
         depthFirstSearch(parentFunction.getEntry());
@@ -93,6 +93,21 @@ public class ControlFlowGraph {
             if (vis.contains(block)) {
                 continue;
             }
+            // 可达后继中来自该块的 phi 取值一并删除
+            for (BasicBlock sucBlock : block.getSucBlocks()) {
+                if (!vis.contains(sucBlock)) {
+                    continue;
+                }
+                for (Instruction inst : sucBlock.getInstructions()) {
+                    if (!(inst instanceof Instruction.Phi)) {
+                        break;
+                    }
+                    ((Instruction.Phi) inst).removeIncomingBlock(block);
+                }
+            }
+            for (Instruction inst : block.getInstructions()) {
+                inst.delete();
+            }
             block.remove();
         }
     }
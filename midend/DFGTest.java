@@ -3,6 +3,7 @@ package midend;
 import frontend.semantic.SymTable;
 import mir.BasicBlock;
 import mir.Function;
+import mir.IRContext;
 import mir.GlobalValue;
 import mir.Instruction;
 import mir.Module;
@@ -15,8 +16,9 @@ import java.util.ArrayList;
 public class DFGTest {
 
     private static void buildCFG() {
-        Module module = new Module(new SymTable(), new ArrayList<>(), new ArrayList<>());
-        Function func = new Function(Type.FunctionType.FUNC_TYPE, "main");
+        IRContext context = new IRContext();
+        Module module = new Module(context, new SymTable(), new ArrayList<>());
+        Function func = new Function(context, Type.FunctionType.FUNC_TYPE, "main");
         BasicBlock A = new BasicBlock("A", func);
         BasicBlock B = new BasicBlock("B", func);
         BasicBlock C = new BasicBlock("C", func);
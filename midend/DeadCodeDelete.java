@@ -10,20 +10,16 @@ import java.util.HashSet;
 
 public class DeadCodeDelete {
 
-    public static void run(Module module) {
+    public void run(Module module) {
         globalVar = module.getGlobalValues();
         uselessFuncDelete(module);
-        for (Function function :
-                module.getFuncSet()) {
-            function.buildControlFlowGraph();
-        }
 //        printAllInsts(module);
         clean(module);
         br2Jump(module);
         cleanEmptyBlocks(module);
     }
 
-    private static void br2Jump(Module module) {
+    private void br2Jump(Module module) {
         for (Function function :
                 module.getFuncSet()) {
             if (function.isExternal()) {
@@ -42,14 +38,14 @@ public class DeadCodeDelete {
         }
     }
 
-    private final static HashSet<Value> usefulVar = new HashSet<>();
-    private final static HashSet<Function> usefulFunc = new HashSet<>();
-    private final static HashSet<BasicBlock> usefulBB = new HashSet<>();
-    private final static HashSet<Instruction> usefulInst = new HashSet<>();
-    private static ArrayList<GlobalValue> globalVar;
+    private final HashSet<Value> usefulVar = new HashSet<>();
+    private final HashSet<Function> usefulFunc = new HashSet<>();
+    private final HashSet<BasicBlock> usefulBB = new HashSet<>();
+    private final HashSet<Instruction> usefulInst = new HashSet<>();
+    private ArrayList<GlobalValue> globalVar;
 
 
-    private static void cleanEmptyBlocks(Module module) {
+    private void cleanEmptyBlocks(Module module) {
         for (Function function :
                 module.getFuncSet()) {
             if (function.isExternal()) {
@@ -68,7 +64,7 @@ public class DeadCodeDelete {
         }
     }
 
-    private static void uselessFuncDelete(Module module) {
+    private void uselessFuncDelete(Module module) {
         Function main = module.getFunctions().get("main");
 
         usefulFunc.add(main);
@@ -85,7 +81,7 @@ public class DeadCodeDelete {
     }
 
 
-    private static void uselessBBDelete(Function function) {
+    private void uselessBBDelete(Function function) {
         for (BasicBlock block :
                 function.getBlocks()) {
             uselessInstDelete(block);
@@ -95,15 +91,15 @@ public class DeadCodeDelete {
         }
     }
 
-    private static void uselessInstDelete(BasicBlock block) {
+    private void uselessInstDelete(BasicBlock block) {
         for (Instruction inst :
                 block.getInstructions()) {
             if (!usefulInst.contains(inst))
-                inst.remove();
+                inst.delete();
         }
     }
 
-    private static boolean parseUseFulFunction(Module module) {
+    private boolean parseUseFulFunction(Module module) {
         int size = usefulVar.size();
         for (Function function :
                 module.getFuncSet()) {
@@ -118,7 +114,7 @@ public class DeadCodeDelete {
     }
 
 
-    private static boolean hasUseFulBB(Function function) {
+    private boolean hasUseFulBB(Function function) {
         int size = usefulVar.size();
         for (BasicBlock block :
                 function.getBlocks()) {
@@ -129,7 +125,7 @@ public class DeadCodeDelete {
         return size < usefulVar.size();
     }
 
-    private static boolean hasUseFulInst(BasicBlock block) {
+    private boolean hasUseFulInst(BasicBlock block) {
         int size = usefulVar.size();
 
         for (Instruction inst :
@@ -193,7 +189,7 @@ public class DeadCodeDelete {
     }
 
 
-    private static void updateUse(Instruction inst) {
+    private void updateUse(Instruction inst) {
         if (inst.getType() != Type.VoidType.VOID_TYPE) {
             usefulVar.add(inst);
         }
@@ -230,7 +226,7 @@ public class DeadCodeDelete {
         }
     }
 
-    private static void clean(Module module) {
+    private void clean(Module module) {
         for (Function function :
                 module.getFuncSet()) {
 
@@ -271,7 +267,7 @@ public class DeadCodeDelete {
 
             for (BasicBlock block :
                     function.getBlocks()) {
-                if (block.getInstructions().getSize() == 0 || block.isDeleted) {
+                if (block.getInstructions().isEmpty() || block.isDeleted) {
                     continue;
                 }
                 mergeBlock(block);
@@ -292,7 +288,7 @@ public class DeadCodeDelete {
         }
     }
 
-    private static void brToJump(Instruction.Branch br) {
+    private void brToJump(Instruction.Branch br) {
 //        System.out.println("else " + br.getElseBlock().getLabel() + " then " + br.getThenBlock().getLabel());
         if (br.getElseBlock().equals(br.getThenBlock())) {
             // 输出 else then block label
@@ -317,7 +313,7 @@ public class DeadCodeDelete {
 
     }
 
-    private static void changeTarget(Instruction inst) {
+    private void changeTarget(Instruction inst) {
         assert inst instanceof Instruction.Jump || inst instanceof Instruction.Branch;
         if (inst instanceof Instruction.Jump) {
             Instruction nxtFirst = ((Instruction.Jump) inst).getTargetBlock().getFirstInst();
@@ -366,7 +362,23 @@ public class DeadCodeDelete {
     }
 
 
-    private static void mergeBlock(BasicBlock block) {
+    /**
+     * 只做基本块合并：跳转目标只有唯一前驱时并入前驱，phi 随之消去或改写来源块
+     * SSA 上的变换（如 SCCP）改写控制流之后调用
+     */
+    public void mergeBlocks(Function function) {
+        function.buildControlFlowGraph();
+        for (BasicBlock block :
+                function.getBlocks()) {
+            if (block.getInstructions().isEmpty() || block.isDeleted) {
+                continue;
+            }
+            mergeBlock(block);
+        }
+        function.buildControlFlowGraph();
+    }
+
+    private void mergeBlock(BasicBlock block) {
         BasicBlock curBlock = block;
         do {
             Instruction inst = curBlock.getLastInst();
@@ -374,6 +386,12 @@ public class DeadCodeDelete {
                 BasicBlock that = ((Instruction.Jump) inst).getTargetBlock();
                 if (that.getPreBlocks().size() == 1) {
                     inst.remove();
+                    // 唯一前驱，phi 只有一个取值
+                    while (that.getFirstInst() instanceof Instruction.Phi) {
+                        Instruction.Phi phi = (Instruction.Phi) that.getFirstInst();
+                        phi.replaceAllUsesWith(phi.getOptionalValue(0));
+                        phi.delete();
+                    }
                     for (Instruction instruction : that.getInstructions()) {
                         instruction.setParentBlock(curBlock);
                     }
@@ -383,8 +401,18 @@ public class DeadCodeDelete {
                             that.getSucBlocks()) {
                         suc.getPreBlocks().remove(that);
                         suc.getPreBlocks().add(curBlock);
+                        for (Instruction instruction : suc.getInstructions()) {
+                            if (!(instruction instanceof Instruction.Phi)) {
+                                break;
+                            }
+                            ((Instruction.Phi) instruction).replaceIncomingBlock(that, curBlock);
+                        }
                     }
                     curBlock.getSucBlocks().remove(that);
+                    // 继承 that 的后继，curBlock 之后再被并入前驱时据此改写后继中的 phi
+                    for (BasicBlock suc : that.getSucBlocks()) {
+                        curBlock.addSucBlock(suc);
+                    }
                 } else {
                     break;
                 }
@@ -395,7 +423,7 @@ public class DeadCodeDelete {
     }
 
 
-    private static void replaceJump(Instruction.Jump jump) {
+    private void replaceJump(Instruction.Jump jump) {
         BasicBlock that = jump.getTargetBlock();
         if (that.getInstructions().isEmpty()) {
             return;
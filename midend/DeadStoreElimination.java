@@ -0,0 +1,108 @@
+package midend;
+
+import mir.*;
+import mir.Module;
+
+import java.util.ArrayList;
+
+/**
+ * 死存储消除，基于 AliasAnalysis
+ * 1. 块内逆序扫描：Store 之后、任何可能读该地址的指令之前又有 mustAlias 的 Store，则前者是死的；
+ *    Load 使可能别名的待覆盖地址失效，非纯函数的调用使全部失效
+ * 2. 只写不读的局部对象：Alloc 的地址（经 GEP / BitCast）只用于 Store 的地址与 memset，
+ *    则对它的写全部删除，地址计算与 Alloc 一并删除
+ */
+public class DeadStoreElimination {
+
+    public void run(Module module) {
+        for (Function function : module.getFuncSet()) {
+            if (function.isExternal()) {
+                continue;
+            }
+            runOnFunction(function);
+        }
+    }
+
+    public void runOnFunction(Function function) {
+        for (BasicBlock block : function.getBlocks()) {
+            eliminateOverwritten(block);
+        }
+        eliminateWriteOnlyAllocs(function);
+    }
+
+    private void eliminateOverwritten(BasicBlock block) {
+        ArrayList<Value> pending = new ArrayList<>();
+        ArrayList<Instruction> dead = new ArrayList<>();
+        for (Instruction inst = block.getLastInst(); inst != null;
+             inst = inst.getPrev() instanceof Instruction ? (Instruction) inst.getPrev() : null) {
+            if (inst instanceof Instruction.Store) {
+                Value addr = ((Instruction.Store) inst).getAddr();
+                if (pending.stream().anyMatch(later -> AliasAnalysis.mustAlias(later, addr))) {
+                    dead.add(inst);
+                } else {
+                    pending.add(addr);
+                }
+            } else if (inst instanceof Instruction.Load) {
+                Value addr = ((Instruction.Load) inst).getAddr();
+                pending.removeIf(later -> AliasAnalysis.mayAlias(later, addr));
+            } else if (inst instanceof Instruction.Call && !((Instruction.Call) inst).getDestFunction().isGvn()) {
+                pending.clear();
+            }
+        }
+        for (Instruction inst : dead) {
+            inst.delete();
+        }
+    }
+
+    /**
+     * 收集 value（Alloc 或由它派生的地址）的全部写操作与地址计算，出现读或逃逸时返回 false
+     */
+    private boolean collectWrites(Value value, ArrayList<Instruction> writes, ArrayList<Instruction> addrs) {
+        for (Use use : value.getUses()) {
+            Instruction user = (Instruction) use.getUser();
+            if (user instanceof Instruction.Store && ((Instruction.Store) user).getAddr() == value
+                    && ((Instruction.Store) user).getValue() != value) {
+                writes.add(user);
+            } else if (user instanceof Instruction.GetElementPtr && ((Instruction.GetElementPtr) user).getBase() == value
+                    || user instanceof Instruction.BitCast) {
+                addrs.add(user);
+                if (!collectWrites(user, writes, addrs)) {
+                    return false;
+                }
+            } else if (user instanceof Instruction.Call && ((Instruction.Call) user).getDestFunction().getName().equals("memset")
+                    && ((Instruction.Call) user).getDestFunction().isExternal()
+                    && ((Instruction.Call) user).getParams().get(0) == value) {
+                writes.add(user);
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void eliminateWriteOnlyAllocs(Function function) {
+        ArrayList<Instruction.Alloc> allocs = new ArrayList<>();
+        for (BasicBlock block : function.getBlocks()) {
+            for (Instruction inst : block.getInstructions()) {
+                if (inst instanceof Instruction.Alloc) {
+                    allocs.add((Instruction.Alloc) inst);
+                }
+            }
+        }
+        for (Instruction.Alloc alloc : allocs) {
+            ArrayList<Instruction> writes = new ArrayList<>();
+            ArrayList<Instruction> addrs = new ArrayList<>();
+            if (!collectWrites(alloc, writes, addrs)) {
+                continue;
+            }
+            for (Instruction inst : writes) {
+                inst.delete();
+            }
+            // 使用者在后，逆序删除
+            for (int i = addrs.size() - 1; i >= 0; i--) {
+                addrs.get(i).delete();
+            }
+            alloc.delete();
+        }
+    }
+}
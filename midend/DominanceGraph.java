@@ -3,14 +3,28 @@ package midend;
 import mir.BasicBlock;
 import mir.Function;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 
+/**
+ * 支配关系分析，Cooper-Harvey-Kennedy 迭代算法：
+ * 1. 从入口出发为可达块编逆后序号，之后只在整数编号上计算
+ * 2. 按逆后序迭代 idom(b) = 已处理前驱在支配树上的最近公共祖先，直至不动点
+ * 3. 支配边界：对每条边 p -> b，从 p 沿 idom 上溯到 idom(b) 为止，途经块的支配边界加入 b
+ * 4. 在支配树上 DFS 得到进入 / 离开序号与深度，dominates 查询为 O(1)
+ */
 public class DominanceGraph {
     private final Function parentFunction;
     private BasicBlock entry;
-    private final HashSet<BasicBlock> vis = new HashSet<>();
+    // 逆后序排列的可达块，下标即块的编号
     private final ArrayList<BasicBlock> blocks = new ArrayList<>();
+    // 按编号存放的前驱与直接支配者，入口的 idom 为自身
+    private int[][] preds;
+    private int[] idom;
 
     public DominanceGraph(Function parentFunction) {
         this.parentFunction = parentFunction;
@@ -18,14 +32,16 @@ public class DominanceGraph {
 
     public void build() {
         this.entry = parentFunction.getEntry();
-        buildDominatorSet();
+        clear();
+        makeReversePostorderTraversal();
         buildImmDominateTree();
         buildDominanceFrontier();
+        numberDomTree();
         //printDomInfo();
     }
 
     private void printDomInfo() {
-        printDominators();
+        printReversePostorderTraversal();
         printIdom();
         printDomTree();
         printDominanceFrontier();
@@ -72,141 +88,178 @@ public class DominanceGraph {
         System.out.println();
     }
 
-    private void search(BasicBlock cur) {
-        vis.add(cur);
-        for (BasicBlock preBlock : cur.getPreBlocks()) {
-            if (!vis.contains(preBlock)) {
-                search(preBlock);
-            }
+    private void clear() {
+        blocks.clear();
+        for (BasicBlock block : parentFunction.getBlocks()) {
+            block.setIdom(null);
+            block.getDomFrontiers().clear();
+            block.getDomTreeChildren().clear();
+            block.setDomNumbers(0, -1, -1);
         }
-        // ensure that each block's preBlocks have been inserted
-        blocks.add(cur);
     }
 
+    /**
+     * 非递归 DFS 求后序，再反转为逆后序
+     */
     private void makeReversePostorderTraversal() {
-        vis.clear();
-        for (BasicBlock block : parentFunction.getBlocks()) {
-            if (!vis.contains(block)) {
-                search(block);
+        HashMap<BasicBlock, Integer> visited = new HashMap<>();
+        ArrayDeque<BasicBlock> stack = new ArrayDeque<>();
+        ArrayDeque<Iterator<BasicBlock>> iters = new ArrayDeque<>();
+        visited.put(entry, 0);
+        stack.push(entry);
+        iters.push(entry.getSucBlocks().iterator());
+        while (!stack.isEmpty()) {
+            Iterator<BasicBlock> iter = iters.peek();
+            if (iter.hasNext()) {
+                BasicBlock suc = iter.next();
+                if (visited.putIfAbsent(suc, 0) == null) {
+                    stack.push(suc);
+                    iters.push(suc.getSucBlocks().iterator());
+                }
+            } else {
+                blocks.add(stack.pop());
+                iters.pop();
             }
         }
-    }
+        Collections.reverse(blocks);
 
-    private void printDominators() {
-        for (BasicBlock block : blocks) {
-            System.out.print(block.getLabel() + " : ");
-            for (BasicBlock dom : block.getDomSet()) {
-                System.out.print(dom.getLabel() + " ");
-            }
-            System.out.println();
+        HashMap<BasicBlock, Integer> index = new HashMap<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            index.put(blocks.get(i), i);
+        }
+        preds = new int[blocks.size()][];
+        for (int i = 0; i < blocks.size(); i++) {
+            // 不可达的前驱不参与计算
+            preds[i] = blocks.get(i).getPreBlocks().stream()
+                    .filter(index::containsKey).mapToInt(index::get).toArray();
         }
     }
 
-    private void buildDominatorSet() {
-        // 计算逆后序
-        makeReversePostorderTraversal();
-        // printReversePostorderTraversal();
-        // 初始化节点的支配集合
-        for (BasicBlock block : blocks) {
-            // System.out.println("init " + block.getLabel());
-            block.getDomSet().clear();
-            if (block.equals(entry)) {
-                block.getDomSet().add(entry);
-            } else {
-                block.getDomSet().addAll(blocks);
+    /**
+     * 编号越小越靠近入口，两个指针沿 idom 上溯直到相遇
+     */
+    private int intersect(int a, int b) {
+        while (a != b) {
+            while (a > b) {
+                a = idom[a];
+            }
+            while (b > a) {
+                b = idom[b];
             }
         }
-        // 边界检测
+        return a;
+    }
+
+    private void buildImmDominateTree() {
+        int n = blocks.size();
+        idom = new int[n];
+        Arrays.fill(idom, -1);
+        idom[0] = 0;
         boolean changed;
         do {
             changed = false;
-            // 逆后序遍历
-            for (BasicBlock block : blocks) {
-                // 跳过入口
-                if (block.equals(entry)) {
-                    continue;
-                }
-                HashSet<BasicBlock> dom = block.getDomSet();
-                HashSet<BasicBlock> new_dom = new HashSet<>(blocks);
-                // 取支配交集
-                for (BasicBlock preBlock : block.getPreBlocks()) {
-                    HashSet<BasicBlock> preDom = preBlock.getDomSet();
-                    new_dom.retainAll(preDom);
+            // 逆后序遍历，跳过入口
+            for (int b = 1; b < n; b++) {
+                int newIdom = -1;
+                for (int p : preds[b]) {
+                    if (idom[p] == -1) {
+                        continue;
+                    }
+                    newIdom = newIdom == -1 ? p : intersect(p, newIdom);
                 }
-                // 加入自身
-                new_dom.add(block);
-                // 更新并 标记修改
-                if (!dom.equals(new_dom)) {
-                    block.setDomSet(new_dom);
+                if (idom[b] != newIdom) {
+                    idom[b] = newIdom;
                     changed = true;
                 }
             }
         } while (changed);
-    }
 
+        for (int b = 1; b < n; b++) {
+            BasicBlock dom = blocks.get(idom[b]);
+            blocks.get(b).setIdom(dom);
+            dom.getDomTreeChildren().add(blocks.get(b));
+        }
+    }
 
-    private boolean dominates(BasicBlock x, BasicBlock y) {
-        return y.getDomSet().contains(x);
+    private void buildDominanceFrontier() {
+        // 枚举控制图的边 p -> b
+        for (int b = 0; b < blocks.size(); b++) {
+            BasicBlock block = blocks.get(b);
+            // 入口没有直接支配者，上溯到根为止
+            int stop = b == 0 ? -1 : idom[b];
+            for (int p : preds[b]) {
+                int runner = p;
+                while (runner != stop) {
+                    blocks.get(runner).getDomFrontiers().add(block);
+                    runner = runner == 0 ? -1 : idom[runner];
+                }
+            }
+        }
     }
 
-    // check whether x strictly dominates y
-    private boolean strictlyDominates(BasicBlock x, BasicBlock y) {
-        return dominates(x, y) && !x.equals(y);
+    /**
+     * 支配树上非递归 DFS，记录深度与进入 / 离开序号
+     */
+    private void numberDomTree() {
+        int clock = 0;
+        ArrayDeque<BasicBlock> stack = new ArrayDeque<>();
+        ArrayDeque<Iterator<BasicBlock>> iters = new ArrayDeque<>();
+        HashMap<BasicBlock, Integer> domIn = new HashMap<>();
+        stack.push(entry);
+        iters.push(entry.getDomTreeChildren().iterator());
+        domIn.put(entry, clock++);
+        while (!stack.isEmpty()) {
+            Iterator<BasicBlock> iter = iters.peek();
+            if (iter.hasNext()) {
+                BasicBlock child = iter.next();
+                domIn.put(child, clock++);
+                stack.push(child);
+                iters.push(child.getDomTreeChildren().iterator());
+            } else {
+                BasicBlock block = stack.pop();
+                iters.pop();
+                block.setDomNumbers(stack.size(), domIn.get(block), clock++);
+            }
+        }
     }
 
-    // 直接支配
-    private boolean immDominates(BasicBlock x, BasicBlock y) {
-        // 严格支配 y
-        if (!strictlyDominates(x, y)) {
+    /**
+     * x 是否支配 y，不可达块不被任何块支配
+     */
+    public boolean dominates(BasicBlock x, BasicBlock y) {
+        if (x.getDomIn() < 0 || y.getDomIn() < 0) {
             return false;
         }
+        return x.getDomIn() <= y.getDomIn() && y.getDomOut() <= x.getDomOut();
+    }
 
-        for (BasicBlock strictDom : y.getDomSet()) {
-            // 跳过自身
-            if (strictDom.equals(y)) {
-                continue;
-            }
-            // 不允许严格支配其他支配块
-            if (strictlyDominates(x, strictDom)) {
-                return false;
-            }
-        }
-        // 唯一的距离最近的支配块
-        return true;
+    // check whether x strictly dominates y
+    public boolean strictlyDominates(BasicBlock x, BasicBlock y) {
+        return x != y && dominates(x, y);
     }
 
-    private void buildImmDominateTree() {
-        for (BasicBlock block : blocks) {
-            if (block.equals(entry)) {
-                continue;
-            }
-            for (BasicBlock dom : block.getDomSet()) {
-                if (immDominates(dom, block)) {
-                    block.setIdom(dom);
-                    break;
-                }
-            }
+    /**
+     * 支配树上 x 与 y 的最近公共祖先
+     */
+    public BasicBlock commonDominator(BasicBlock x, BasicBlock y) {
+        while (x.getDomDepth() > y.getDomDepth()) {
+            x = x.getIdom();
         }
-        for (BasicBlock block : blocks) {
-            BasicBlock idom = block.getIdom();
-            if (idom != null) {
-                idom.getDomTreeChildren().add(block);
-            }
+        while (y.getDomDepth() > x.getDomDepth()) {
+            y = y.getIdom();
+        }
+        while (x != y) {
+            x = x.getIdom();
+            y = y.getIdom();
         }
+        return x;
     }
 
-    private void buildDominanceFrontier() {
-        // 枚举控制图的边
-        for (BasicBlock a : blocks) {
-            for (BasicBlock b : a.getSucBlocks()) {
-                BasicBlock x = a;
-                while (x != null && !strictlyDominates(x, b)) {
-                    x.getDomFrontiers().add(b);
-
-                    x = x.getIdom();
-                }
-            }
-        }
+    /**
+     * 逆后序排列的可达块
+     */
+    public ArrayList<BasicBlock> getReversePostorder() {
+        return blocks;
     }
 
 }
@@ -2,216 +2,270 @@ package midend;
 
 import mir.*;
 import mir.Module;
-import utils.SyncLinkedList;
 
 import java.util.*;
 
+/**
+ * 基于调用图与代价模型的函数内联，在 Mem2Reg 之前运行
+ * 1. 建调用图（只含自定义函数），Tarjan 求强连通分量，按被调者在前的顺序（自底向上）逐个处理函数，
+ *    处理某函数时它调用的函数已经完成内联，代价按内联后的大小计算
+ * 2. 调用点按循环深度从深到浅考虑：
+ *    - 只剩一个调用点的非递归函数总是内联（内联后原函数删除，代码不增长）
+ *    - 否则代价 = 被调者指令数 - 常量实参与调用开销的收益，不超过随循环深度增大的阈值时内联
+ *    - 每个调用者的增长量不超过预算
+ * 3. 同一分量内的（递归）调用只在被调者足够小时展开有限次，克隆体中的递归调用保持为调用；
+ *    递归函数不内联到分量外的调用者
+ * 内联进来的 Alloc 移到调用者入口块，避免循环中的调用每轮都分配栈空间
+ */
 public class FunctionInline {
-
-    //TODO: 不能递归
-    //TODO: 寻找函数调用链
-    //TODO: 递归的内联
-
-
-    //fixme:考虑库函数如何维持正确性
-    //      因为建立反向图的时候,只考虑了自定义的函数
-
-    //TODO:如果存在调用:
-    // A -> A
-    // B -> A
-    // C -> B
-    // 在当前判断中 A B C 入度均为1,无法内联
-    // 但是,其实可以把B内联到C里,
-    // 所以可以内联的条件可以加强为:对于一个函数,如果入度为0/入度不为0,但是所有的入边对应的函数,均只存在自调用
-
-    private static Collection<Function> functions;
-
-    private static Module module;
-    private static ArrayList<Function> funcCanInline = new ArrayList<>();
-
-    //A调用B则存在B->A
-    private static HashMap<Function, HashSet<Function>> reserveMap = new HashMap<>();
-    //记录反图的入度
-    private static HashMap<Function, Integer> inNum = new HashMap<>();
-    //A调用B则存在A->B
-    private static HashMap<Function, HashSet<Function>> Map = new HashMap<>();
-    private static Queue<Function> queue = new LinkedList<>();
-
-
-    public static void run(Module module) {
-        FunctionInline.module = module;
-        functions = module.getFuncSet();
-        GetFuncCanInline();
-        for (Function function : funcCanInline) {
-            inlineFunc(function);
-            module.removeFunction(function);
-//            functions.remove(function);
-            //function.setDeleted();
-//            for (BasicBlock bb = function.getFirstBlock(); bb.getNext() != null; bb = (BasicBlock) bb.getNext()) {
-//                for (Instruction instr = bb.getFirstInst(); instr.getNext() != null; instr = (Instruction) instr.getNext()) {
-//                    instr.remove();
-//                }
-//            }
-//            function.setDeleted();
-        }
-        //System.err.println("fun_inline_end");
-    }
-
-    private static void GetFuncCanInline() {
-        makeReserveMap();
-        topologySort();
-    }
-
-    //f1调用f2 添加一条f2到f1的边
-    private static void makeReserveMap() {
-        for (Function function : functions) {
-            Map.put(function, new HashSet<>());
+    private static final int INLINE_THRESHOLD = 80;
+    private static final int LOOP_DEPTH_BONUS = 40;
+    private static final int MAX_BONUS_DEPTH = 3;
+    private static final int CONST_ARG_BONUS = 10;
+    private static final int CALL_OVERHEAD = 5;
+    // 调用者的增长预算：max(MIN_GROWTH, 原大小 * GROWTH_FACTOR)
+    private static final int MIN_GROWTH = 1000;
+    private static final int GROWTH_FACTOR = 2;
+    // 递归函数每个调用者最多展开的次数与被调者的大小上限
+    private static final int RECURSIVE_UNROLL_LIMIT = 2;
+    private static final int RECURSIVE_SIZE_LIMIT = 60;
+
+    // A调用B则存在A->B，按插入顺序遍历，内联顺序不受对象哈希值影响，保证多线程编译时输出稳定
+    private final LinkedHashMap<Function, LinkedHashSet<Function>> callGraph = new LinkedHashMap<>();
+    private final HashMap<Function, Integer> sccIndex = new HashMap<>();
+    // 自底向上的处理顺序
+    private final ArrayList<Function> bottomUp = new ArrayList<>();
+    // 新建块的编号，保证标签唯一
+    private int inlineCount = 0;
+
+    // Tarjan
+    private final HashMap<Function, Integer> dfn = new HashMap<>();
+    private final HashMap<Function, Integer> low = new HashMap<>();
+    private final ArrayDeque<Function> stack = new ArrayDeque<>();
+    private final HashSet<Function> onStack = new HashSet<>();
+    private int dfsCount = 0;
+    private int sccCount = 0;
+
+    public void run(Module module) {
+        buildCallGraph(module);
+        for (Function function : callGraph.keySet()) {
+            if (!dfn.containsKey(function)) {
+                tarjan(function);
+            }
+        }
+        for (Function function : bottomUp) {
+            inlineCallsIn(function);
         }
-        for (Function function : functions) {
-            reserveMap.put(function, new HashSet<>());
-            if (!inNum.containsKey(function)) {
-                inNum.put(function, 0);
+        // 调用点已全部内联的函数
+        for (Function function : bottomUp) {
+            if (function.getUses().isEmpty() && !function.getName().equals("main")) {
+                module.removeFunction(function);
             }
+        }
+    }
 
-            for (Use use :
-                    function.getUses()) {
+    private void buildCallGraph(Module module) {
+        for (Function function : module.getFuncSet()) {
+            if (!function.isExternal()) {
+                callGraph.put(function, new LinkedHashSet<>());
+            }
+        }
+        for (Function function : callGraph.keySet()) {
+            for (Use use : function.getUses()) {
                 assert use.getUser() instanceof Instruction.Call;
-                Function userFunc = ((Instruction.Call) use.getUser()).getParentBlock().getParentFunction();
-                Map.get(userFunc).add(function);
-                if (!inNum.containsKey(userFunc)) {
-                    inNum.put(userFunc, 0);
-                }
-                if (reserveMap.get(function).add(userFunc)) {
-                    inNum.put(userFunc, inNum.get(userFunc) + 1);
-                }
+                Function caller = ((Instruction.Call) use.getUser()).getParentBlock().getParentFunction();
+                callGraph.get(caller).add(function);
             }
         }
     }
 
-
-    private static void topologySort() {
-        for (Function function : inNum.keySet()) {
-            if (inNum.get(function) == 0 && !function.getName().equals("main") && !function.isExternal()) {
-                queue.add(function);
+    /**
+     * 分量按逆拓扑序产生，即被调者所在的分量先完成
+     */
+    private void tarjan(Function function) {
+        dfn.put(function, dfsCount);
+        low.put(function, dfsCount);
+        dfsCount++;
+        stack.push(function);
+        onStack.add(function);
+        for (Function callee : callGraph.get(function)) {
+            if (!dfn.containsKey(callee)) {
+                tarjan(callee);
+                low.put(function, java.lang.Math.min(low.get(function), low.get(callee)));
+            } else if (onStack.contains(callee)) {
+                low.put(function, java.lang.Math.min(low.get(function), dfn.get(callee)));
             }
         }
-        while (!queue.isEmpty()) {
-            Function pos = queue.peek();
-            funcCanInline.add(pos);
-            for (Function next : reserveMap.get(pos)) {
-                inNum.put(next, inNum.get(next) - 1);
-                if (inNum.get(next) == 0 && !next.getName().equals("main") && !next.isExternal()) {
-                    queue.add(next);
-                }
-            }
-            queue.poll();
+        if (low.get(function).equals(dfn.get(function))) {
+            Function member;
+            do {
+                member = stack.pop();
+                onStack.remove(member);
+                sccIndex.put(member, sccCount);
+                bottomUp.add(member);
+            } while (member != function);
+            sccCount++;
         }
     }
 
-
-    private static void inlineFunc(Function function) {
-        ArrayList<Instruction.Call> callers = new ArrayList<>();
-        ArrayList<BasicBlock> targets = new ArrayList<>();
-        for (Use use : function.getUses()) {
-            assert use.getUser() instanceof Instruction.Call;
-            callers.add((Instruction.Call) use.getUser());
-            targets.add(((Instruction.Call) use.getUser()).getParentBlock());
+    private boolean isRecursive(Function function) {
+        if (callGraph.get(function).contains(function)) {
+            return true;
         }
-        int idx = 0;
-        for (Instruction.Call call :
-                callers) {
-            transCallToFunc(function, call, idx, callers);
-            idx++;
+        for (Function callee : callGraph.get(function)) {
+            if (sccIndex.get(callee).equals(sccIndex.get(function))) {
+                return true;
+            }
         }
+        return false;
     }
 
-    private static void transCallToFunc(Function function, Instruction.Call call, int idx, ArrayList<Instruction.Call> callers) {
-        CloneInfo.clear();
-        Function inFunction = ((Instruction.Call) CloneInfo.getReflectedValue(call)).getParentBlock().getParentFunction();
-        BasicBlock beforeCallBB = call.getParentBlock();
-
-        BasicBlock nxtBlock = null;
+    private static int sizeOf(Function function) {
+        int size = 0;
+        for (BasicBlock block : function.getBlocks()) {
+            size += block.getInstructions().getSize();
+        }
+        return size;
+    }
 
+    private static int callSiteCount(Function function) {
+        return function.getUses().size();
+    }
 
-        Instruction inst = null;
-        for (Instruction tmp :
-                beforeCallBB.getInstructions()) {
-            if (tmp == call) {
-                inst = tmp;
-                break;
+    private int cost(Instruction.Call call, Function callee) {
+        int cost = sizeOf(callee) - CALL_OVERHEAD * (call.getParams().size() + 1);
+        for (Value param : call.getParams()) {
+            if (param instanceof Constant) {
+                cost -= CONST_ARG_BONUS;
             }
         }
-        assert inst != null;
+        return cost;
+    }
 
+    private void inlineCallsIn(Function caller) {
+        caller.buildControlFlowGraph();
+        caller.buildDominanceGraph();
+        caller.buildLoopInfo();
+        ArrayList<Instruction.Call> calls = new ArrayList<>();
+        HashMap<Instruction.Call, Integer> depths = new HashMap<>();
+        for (BasicBlock block : caller.getBlocks()) {
+            for (Instruction inst : block.getInstructions()) {
+                if (inst instanceof Instruction.Call && callGraph.containsKey(((Instruction.Call) inst).getDestFunction())) {
+                    calls.add((Instruction.Call) inst);
+                    depths.put((Instruction.Call) inst, block.getLoopDepth());
+                }
+            }
+        }
+        caller.invalidateLoopInfo();
+        // 热的调用点优先占用预算
+        calls.sort(Comparator.comparingInt(call -> -depths.get(call)));
+
+        int budget = java.lang.Math.max(MIN_GROWTH, sizeOf(caller) * GROWTH_FACTOR);
+        int recursiveInlined = 0;
+        for (Instruction.Call call : calls) {
+            Function callee = call.getDestFunction();
+            int size = sizeOf(callee);
+            boolean recursive = sccIndex.get(callee).equals(sccIndex.get(caller));
+            if (recursive) {
+                // 尾递归之后由 TailRecursionElimination 变为循环
+                if (recursiveInlined >= RECURSIVE_UNROLL_LIMIT || size > RECURSIVE_SIZE_LIMIT
+                        || TailRecursionElimination.isTailCall(call)) {
+                    continue;
+                }
+            } else if (isRecursive(callee)) {
+                // 递归函数只在自身分量内展开，内联到外部调用者只是剥掉一层
+                continue;
+            } else if (callSiteCount(callee) != 1) {
+                int threshold = INLINE_THRESHOLD + LOOP_DEPTH_BONUS * java.lang.Math.min(depths.get(call), MAX_BONUS_DEPTH);
+                if (cost(call, callee) > threshold) {
+                    continue;
+                }
+            }
+            if (size > budget) {
+                continue;
+            }
+            budget -= size;
+            if (recursive) {
+                recursiveInlined++;
+            }
+            inlineCall(call);
+        }
+    }
 
-        BasicBlock retBB = new BasicBlock(function.getName() + "_ret_" + idx, inFunction);
+    /**
+     * 在调用处拆开调用者的块：调用前的部分跳到被调者的克隆入口，克隆的返回块跳到调用后的部分
+     * 返回值经由调用者入口处新建的 Alloc 传递，由 Mem2Reg 提升
+     */
+    private void inlineCall(Instruction.Call call) {
+        Function callee = call.getDestFunction();
+        BasicBlock beforeCallBB = call.getParentBlock();
+        Function caller = beforeCallBB.getParentFunction();
+        int idx = inlineCount++;
+        CloneInfo cloneInfo = new CloneInfo();
+        // 插入被调函数的基本块，调用方原有的循环信息失效
+        caller.invalidateLoopInfo();
+
+        ArrayList<BasicBlock> calleeBlocks = new ArrayList<>();
+        for (BasicBlock block : callee.getBlocks()) {
+            calleeBlocks.add(block);
+        }
 
+        // 返回块与返回值的 Alloc 在克隆完成后才放进调用者，内联到自身时不会被一并克隆
+        BasicBlock retBB = new BasicBlock(callee.getName() + "_ret_" + idx, caller);
+        retBB.remove();
         Instruction.Alloc alloc = null;
-        if (!(function.getRetType() instanceof Type.VoidType)) {
-            alloc = new Instruction.Alloc(inFunction.getFirstBlock(), function.getRetType());
-            alloc.remove();
-            inFunction.getFirstBlock().getInstructions().addFirst(alloc);
+        if (!(callee.getRetType() instanceof Type.VoidType)) {
+            alloc = new Instruction.Alloc(retBB, callee.getRetType());
         }
+        Instruction.Load load = callee.inlineToFunc(caller, retBB, call, alloc, idx, cloneInfo);
+        caller.appendBlock(retBB);
 
-        Instruction.Load load = function.inlineToFunc(inFunction, retBB, call, alloc, idx);
-
-        BasicBlock afterCallBB = new BasicBlock(inFunction.getName() + "_after_call_" + function.getName() + "_" + idx, inFunction);
-        LinkedList<Instruction> instrs = new LinkedList<>();
-        SyncLinkedList.SyncLinkNode instr = inst.getNext();
-        while (instr instanceof Instruction) {
-            instrs.add((Instruction) instr);
-            instr = instr.getNext();
+        // 返回值与克隆出的 Alloc 移到入口块
+        BasicBlock entry = caller.getFirstBlock();
+        if (alloc != null) {
+            alloc.remove();
+            entry.addInstFirst(alloc);
+            alloc.setParentBlock(entry);
         }
-
-        for (Instruction instr1 : instrs) {
-            Instruction newInst = instr1.cloneToBBAndAddInfo(afterCallBB);
-            newInst.fix();
-            if (instr1 instanceof Instruction.Call && callers.contains(instr1)) {
-                callers.set(callers.indexOf(instr1), (Instruction.Call) newInst);
-            } else if (instr1 instanceof Instruction.Call) {
-                instr1.remove();
-                instr1.setParentBlock(afterCallBB);
-                afterCallBB.getInstructions().insertBefore(instr1, newInst);
-                newInst.remove();
-                CloneInfo.addValueReflect(instr1, instr1);
-
+        for (BasicBlock block : calleeBlocks) {
+            BasicBlock cloned = (BasicBlock) cloneInfo.getReflectedValue(block);
+            ArrayList<Instruction> allocs = new ArrayList<>();
+            for (Instruction inst : cloned.getInstructions()) {
+                if (inst instanceof Instruction.Alloc) {
+                    allocs.add(inst);
+                }
             }
-            ArrayList<Use> toFix = new ArrayList<>(instr1.getUses());
-            for (Use use :
-                    toFix) {
-                ((Instruction) use.getUser()).fix();
+            for (Instruction inst : allocs) {
+                inst.remove();
+                entry.addInstFirst(inst);
+                inst.setParentBlock(entry);
             }
         }
 
-
-        Instruction jumpToCallBB = new Instruction.Jump(beforeCallBB, (BasicBlock) CloneInfo.getReflectedValue(function.getFirstBlock()));
-        jumpToCallBB.remove();
-        beforeCallBB.getInstructions().insertBefore(jumpToCallBB, inst);
-        Instruction jumpToAfterCallBB = new Instruction.Jump(retBB, afterCallBB);
-        if (load != null) {
-            load.remove();
-            retBB.getInstructions().insertBefore(load, jumpToAfterCallBB);
+        // 调用之后的指令移到新块，后继 phi 的来源随之改变
+        BasicBlock afterCallBB = new BasicBlock(caller.getName() + "_after_call_" + callee.getName() + "_" + idx, caller);
+        while (call.hasNext()) {
+            Instruction inst = (Instruction) call.getNext();
+            inst.remove();
+            afterCallBB.addInstLast(inst);
+            inst.setParentBlock(afterCallBB);
         }
-
-
-        if (load != null) {
-            ArrayList<Use> toFix = new ArrayList<>(inst.getUses());
-            for (Use use :
-                    toFix) {
-                use.getUser().replaceUseOfWith(use.get(), load);
+        for (Value operand : afterCallBB.getLastInst().getOperands()) {
+            if (!(operand instanceof BasicBlock)) {
+                continue;
+            }
+            for (Instruction inst : ((BasicBlock) operand).getInstructions()) {
+                if (!(inst instanceof Instruction.Phi)) {
+                    break;
+                }
+                ((Instruction.Phi) inst).replaceIncomingBlock(beforeCallBB, afterCallBB);
             }
         }
-
-        assert inst.getParentBlock().equals(beforeCallBB);
-
-
-        while (inst.hasNext()) {
-            inst.getNext().remove();
+        new Instruction.Jump(retBB, afterCallBB);
+        new Instruction.Jump(beforeCallBB, (BasicBlock) cloneInfo.getReflectedValue(callee.getFirstBlock()));
+        if (load != null) {
+            call.replaceAllUsesWith(load);
         }
-        //beforeCallBB.getInstructions().setEnd(inst);
-        inst.remove();
-
+        call.delete();
     }
-
-
 }
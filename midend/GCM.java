@@ -0,0 +1,269 @@
+package midend;
+
+import mir.*;
+import mir.Module;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * 全局代码移动（Click GCM）与循环不变 Load 外提，需要控制流图、支配树与 LoopInfo
+ * 1. schedule early：按逆后序处理，非固定指令最早可放在操作数所在块中支配树最深的一个
+ * 2. schedule late：逆序处理，最晚位置为所有使用所在块在支配树上的最近公共祖先（phi 的使用算在来源块），
+ *    沿 idom 从最晚块上溯到最早块，选循环深度最浅的块，同深度取最靠后的
+ * 3. 逐个循环（内层先）把地址不变、循环内没有可能别名的写、且每轮都会执行的 Load 移到 preheader，
+ *    之后再做一遍 GCM，使依赖这些 Load 的计算一并外提；
+ *    循环可能一轮也不执行（while 循环未旋转，循环体由循环头的条件保护），
+ *    因此 Load 所在块还须支配所有出口块（即进入循环就一定执行），或地址是数组内的常量下标
+ * phi、终结指令、访存、调用、Alloc 与除数可能为 0 的整数除法 / 取模固定不动
+ */
+public class GCM {
+    private Function function;
+    private DominanceGraph dg;
+    private final HashMap<Instruction, BasicBlock> early = new HashMap<>();
+
+    public void run(Module module) {
+        for (Function function : module.getFuncSet()) {
+            if (function.isExternal()) {
+                continue;
+            }
+            runOnFunction(function);
+        }
+    }
+
+    public void runOnFunction(Function function) {
+        this.function = function;
+        this.dg = function.getDominanceGraph();
+        scheduleAll();
+        if (hoistInvariantLoads()) {
+            scheduleAll();
+        }
+    }
+
+    private boolean isPinned(Instruction inst) {
+        switch (inst.getInstType()) {
+            case PHI, RETURN, BRANCH, JUMP, STORE, LOAD, CALL, ALLOC -> {
+                return true;
+            }
+            case DIV, REM -> {
+                Value divisor = inst.getOperand(1);
+                return !(divisor instanceof Constant.ConstantInt) || ((Constant.ConstantInt) divisor).isZero();
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+
+    private void scheduleAll() {
+        early.clear();
+        ArrayList<Instruction> movable = new ArrayList<>();
+        for (BasicBlock block : dg.getReversePostorder()) {
+            for (Instruction inst : block.getInstructions()) {
+                if (!isPinned(inst)) {
+                    movable.add(inst);
+                }
+            }
+        }
+        // 逆后序保证操作数先于使用者处理（phi 固定，不参与）
+        for (Instruction inst : movable) {
+            scheduleEarly(inst);
+        }
+        for (int i = movable.size() - 1; i >= 0; i--) {
+            scheduleLate(movable.get(i));
+        }
+        early.clear();
+    }
+
+    private BasicBlock blockOf(Value value) {
+        if (value instanceof Instruction) {
+            Instruction inst = (Instruction) value;
+            return early.getOrDefault(inst, inst.getParentBlock());
+        }
+        // 常量、参数、全局变量在入口即可用
+        return function.getEntry();
+    }
+
+    private void scheduleEarly(Instruction inst) {
+        BasicBlock best = function.getEntry();
+        for (Value operand : inst.getOperands()) {
+            BasicBlock block = blockOf(operand);
+            if (block.getDomDepth() > best.getDomDepth()) {
+                best = block;
+            }
+        }
+        early.put(inst, best);
+    }
+
+    private void scheduleLate(Instruction inst) {
+        BasicBlock lca = null;
+        for (Use use : inst.getUses()) {
+            Instruction user = (Instruction) use.getUser();
+            BasicBlock useBlock = user.getParentBlock();
+            if (user instanceof Instruction.Phi) {
+                // phi 的使用发生在对应来源块的末尾
+                Instruction.Phi phi = (Instruction.Phi) user;
+                for (int i = 0; i < phi.getNumOperands(); i++) {
+                    if (phi.getOptionalValue(i) == inst) {
+                        lca = lca == null ? phi.getIncomingBlock(i) : dg.commonDominator(lca, phi.getIncomingBlock(i));
+                    }
+                }
+                continue;
+            }
+            lca = lca == null ? useBlock : dg.commonDominator(lca, useBlock);
+        }
+        if (lca == null) {
+            // 无使用者，留在原处
+            return;
+        }
+        BasicBlock earliest = early.get(inst);
+        BasicBlock best = lca;
+        for (BasicBlock cur = lca; cur != earliest; ) {
+            cur = cur.getIdom();
+            if (cur.getLoopDepth() < best.getLoopDepth()) {
+                best = cur;
+            }
+        }
+        if (best != inst.getParentBlock()) {
+            moveTo(inst, best);
+        }
+    }
+
+    /**
+     * 放到 block 中第一个使用者之前，没有使用者时放在终结指令之前
+     */
+    private void moveTo(Instruction inst, BasicBlock block) {
+        HashSet<Instruction> users = new HashSet<>();
+        for (Use use : inst.getUses()) {
+            if (!(use.getUser() instanceof Instruction.Phi)) {
+                users.add((Instruction) use.getUser());
+            }
+        }
+        Instruction pos = block.getLastInst();
+        for (Instruction cur : block.getInstructions()) {
+            if (users.contains(cur)) {
+                pos = cur;
+                break;
+            }
+        }
+        inst.remove();
+        block.getInstructions().insertBefore(inst, pos);
+        inst.setParentBlock(block);
+    }
+
+    /**
+     * 循环中可能被写的根对象，返回 null 表示可能写任意内存
+     */
+    private HashSet<Value> clobberedRoots(Loop loop) {
+        HashSet<Value> roots = new HashSet<>();
+        for (BasicBlock block : loop.getBlocks()) {
+            for (Instruction inst : block.getInstructions()) {
+                if (inst instanceof Instruction.Store) {
+                    roots.add(AliasAnalysis.rootOf(((Instruction.Store) inst).getAddr()));
+                } else if (inst instanceof Instruction.Call) {
+                    Function dest = ((Instruction.Call) inst).getDestFunction();
+                    if (dest.isGvn()) {
+                        continue;
+                    }
+                    if (!dest.isExternal()) {
+                        return null;
+                    }
+                    // 库函数只会写指针参数指向的内存
+                    for (Value param : ((Instruction.Call) inst).getParams()) {
+                        if (param.getType().isPointerTy()) {
+                            roots.add(AliasAnalysis.rootOf(param));
+                        }
+                    }
+                }
+            }
+        }
+        return roots;
+    }
+
+    private boolean hoistInvariantLoads() {
+        boolean changed = false;
+        for (Loop loop : function.getLoopInfo().getLoops()) {
+            BasicBlock preheader = loop.getPreheader();
+            BasicBlock latch = loop.getLatch();
+            if (preheader == null || latch == null) {
+                continue;
+            }
+            HashSet<Value> clobbered = clobberedRoots(loop);
+            if (clobbered == null) {
+                continue;
+            }
+            ArrayList<Instruction.Load> candidates = new ArrayList<>();
+            ArrayList<BasicBlock> exiting = loop.getExitingBlocks();
+            for (BasicBlock block : loop.getBlocks()) {
+                // 只外提每轮都会执行的 Load
+                if (!dg.dominates(block, latch)) {
+                    continue;
+                }
+                // 离开循环前不一定执行的块（如循环体）中的 Load 可能依赖循环条件保证下标合法
+                boolean guarded = !exiting.stream().allMatch(exit -> dg.dominates(block, exit));
+                for (Instruction inst : block.getInstructions()) {
+                    if (inst instanceof Instruction.Load
+                            && (!guarded || inBounds(((Instruction.Load) inst).getAddr()))) {
+                        candidates.add((Instruction.Load) inst);
+                    }
+                }
+            }
+            for (Instruction.Load load : candidates) {
+                Value addr = load.getAddr();
+                if (addr instanceof Instruction && loop.contains(((Instruction) addr).getParentBlock())) {
+                    continue;
+                }
+                Value root = AliasAnalysis.rootOf(addr);
+                boolean aliased = false;
+                for (Value clobber : clobbered) {
+                    if (AliasAnalysis.mayAliasRoots(root, clobber)) {
+                        aliased = true;
+                        break;
+                    }
+                }
+                if (aliased) {
+                    continue;
+                }
+                load.remove();
+                preheader.getInstructions().insertBefore(load, preheader.getLastInst());
+                load.setParentBlock(preheader);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 地址是否一定落在 Alloc 或全局变量之内：每层 GEP 的首个下标为 0，其余下标为数组范围内的常量
+     */
+    private static boolean inBounds(Value addr) {
+        if (addr instanceof Instruction.Alloc || addr instanceof GlobalValue) {
+            return true;
+        }
+        if (!(addr instanceof Instruction.GetElementPtr)) {
+            return false;
+        }
+        Instruction.GetElementPtr gep = (Instruction.GetElementPtr) addr;
+        Type cur = ((Type.PointerType) gep.getBase().getType()).getInnerType();
+        boolean first = true;
+        for (Value offset : gep.getOffsets()) {
+            if (!(offset instanceof Constant.ConstantInt)) {
+                return false;
+            }
+            int index = (Integer) ((Constant.ConstantInt) offset).getConstValue();
+            if (first) {
+                if (index != 0) {
+                    return false;
+                }
+                first = false;
+                continue;
+            }
+            if (!(cur instanceof Type.ArrayType) || index < 0 || index >= ((Type.ArrayType) cur).getSize()) {
+                return false;
+            }
+            cur = ((Type.ArrayType) cur).getEleType();
+        }
+        return inBounds(gep.getBase());
+    }
+}
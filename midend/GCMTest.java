@@ -0,0 +1,107 @@
+package midend;
+
+import arg.Arg;
+import manager.CompilationContext;
+import mir.BasicBlock;
+import mir.Constant;
+import mir.Function;
+import mir.Instruction;
+import mir.Value;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * 循环不变 Load 外提的回归测试：while 循环可能一轮也不执行，
+ * 输入 n = 0、k = 100000000 时 a[k] 只能在循环体中读取，不能提到循环条件之前；
+ * 常量下标 a[3] 一定在数组之内，仍然外提到循环之前
+ */
+public class GCMTest {
+
+    private static final String SOURCE = """
+            int a[10];
+
+            int main() {
+                a[getint() % 10] = 7;
+                int n = getint();
+                int k = getint();
+                int i = 0;
+                int s = 0;
+                int t = 0;
+                while (i < n) {
+                    s = s + a[k];
+                    t = t + a[3];
+                    i = i + 1;
+                }
+                putint(s + t);
+                return 0;
+            }
+            """;
+
+    private static void zeroTripLoop() throws Exception {
+        File src = File.createTempFile("gcm", ".sy");
+        File out = File.createTempFile("gcm", ".ll");
+        src.deleteOnExit();
+        out.deleteOnExit();
+        Files.writeString(src.toPath(), SOURCE, StandardCharsets.UTF_8);
+        Arg arg = new Arg(src.getPath(), out.getPath(), out.getPath() + ".error.txt", true);
+        arg.passThreads = 1;
+        new File(arg.errPath).deleteOnExit();
+        CompilationContext context = new CompilationContext(arg);
+        context.compile();
+
+        Function main = null;
+        for (Function function : context.getModule().getFuncSet()) {
+            if (function.getName().equals("main")) {
+                main = function;
+            }
+        }
+        check(main != null, "main not found");
+        main.buildControlFlowGraph();
+        main.buildDominanceGraph();
+        DominanceGraph dg = main.getDominanceGraph();
+        BasicBlock exit = null;
+        for (BasicBlock block : main.getBlocks()) {
+            if (block.getLastInst() instanceof Instruction.Return) {
+                exit = block;
+            }
+        }
+        check(exit != null, "main has no return block");
+
+        int variable = 0;
+        int constant = 0;
+        for (BasicBlock block : main.getBlocks()) {
+            for (Instruction inst : block.getInstructions()) {
+                if (!(inst instanceof Instruction.Load)) {
+                    continue;
+                }
+                Value addr = ((Instruction.Load) inst).getAddr();
+                if (!(addr instanceof Instruction.GetElementPtr)) {
+                    continue;
+                }
+                // 支配返回块即进入循环之前就会执行
+                boolean beforeLoop = dg.dominates(block, exit);
+                if (((Instruction.GetElementPtr) addr).getOffsets().stream().allMatch(v -> v instanceof Constant.ConstantInt)) {
+                    constant++;
+                    check(beforeLoop, "a[3] should be hoisted out of the loop, found in " + block.getLabel());
+                } else {
+                    variable++;
+                    check(!beforeLoop, "a[k] is loaded in " + block.getLabel() + " before the loop condition is tested");
+                }
+            }
+        }
+        check(variable > 0 && constant > 0, "expected both a[k] and a[3] loads, got " + variable + " and " + constant);
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        zeroTripLoop();
+        System.out.println("GCMTest passed");
+    }
+}
@@ -0,0 +1,198 @@
+package midend;
+
+import mir.*;
+import mir.Module;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+/**
+ * 基于支配树作用域的全局值编号（GVN / CSE），在 Mem2Reg 之后的 SSA 上运行，需要支配树
+ * 1. 先标记纯函数（Function.setGvn）：无指针参数，只访问本函数 Alloc 出的内存，只调用纯函数（及局部数组的 memset）
+ * 2. 按支配树先序遍历，以 操作码 + 操作数 作为键查表：
+ *    命中说明支配者已算出同样的值，当前指令被替换并删除；否则登记，离开子树时撤销登记
+ * 常量按值作为键，其余操作数按对象身份编号；交换律运算的两个操作数排序后再组成键
+ */
+public class GVN {
+    private final HashMap<String, Instruction> table = new HashMap<>();
+    // 按登记顺序记录键，离开子树时据此撤销
+    private final ArrayList<String> scopeLog = new ArrayList<>();
+    private final IdentityHashMap<Value, Integer> valueNumbers = new IdentityHashMap<>();
+
+    public void run(Module module) {
+        markPureFunctions(module);
+        for (Function function : module.getFuncSet()) {
+            if (function.isExternal()) {
+                continue;
+            }
+            runOnFunction(function);
+        }
+    }
+
+    /**
+     * 乐观地假设所有有定义的函数都是纯函数，迭代剔除不满足条件的函数直到不动点
+     */
+    public void markPureFunctions(Module module) {
+        for (Function function : module.getFuncSet()) {
+            function.setGvn(!function.isExternal() && !hasPointerArgument(function));
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Function function : module.getFuncSet()) {
+                if (function.isGvn() && !isPure(function)) {
+                    function.setGvn(false);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private boolean hasPointerArgument(Function function) {
+        for (Function.Argument argument : function.getMyArguments()) {
+            if (argument.getType().isPointerTy()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isPure(Function function) {
+        for (BasicBlock block : function.getBlocks()) {
+            for (Instruction inst : block.getInstructions()) {
+                if (inst instanceof Instruction.Load && !isLocalAddress(((Instruction.Load) inst).getAddr())) {
+                    return false;
+                }
+                if (inst instanceof Instruction.Store && !isLocalAddress(((Instruction.Store) inst).getAddr())) {
+                    return false;
+                }
+                if (inst instanceof Instruction.Call && !isPureCall((Instruction.Call) inst)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 纯函数中允许的调用：纯函数，或对局部数组清零的 memset
+     */
+    private boolean isPureCall(Instruction.Call call) {
+        Function dest = call.getDestFunction();
+        if (dest.isExternal() && dest.getName().equals("memset")) {
+            return isLocalAddress(call.getParams().get(0));
+        }
+        return dest.isGvn();
+    }
+
+    /**
+     * 地址沿 GEP 的 base / BitCast 的 src 回溯到本函数的 Alloc
+     */
+    private boolean isLocalAddress(Value addr) {
+        while (addr instanceof Instruction.GetElementPtr || addr instanceof Instruction.BitCast) {
+            addr = addr instanceof Instruction.BitCast
+                    ? ((Instruction.BitCast) addr).getSrc()
+                    : ((Instruction.GetElementPtr) addr).getBase();
+        }
+        return addr instanceof Instruction.Alloc;
+    }
+
+    /**
+     * 需要已标记纯函数（markPureFunctions）
+     */
+    public void runOnFunction(Function function) {
+        table.clear();
+        scopeLog.clear();
+        valueNumbers.clear();
+        BasicBlock entry = function.getEntry();
+        ArrayDeque<Iterator<BasicBlock>> iters = new ArrayDeque<>();
+        ArrayDeque<Integer> marks = new ArrayDeque<>();
+        marks.push(scopeLog.size());
+        numberBlock(entry);
+        iters.push(entry.getDomTreeChildren().iterator());
+        while (!iters.isEmpty()) {
+            Iterator<BasicBlock> iter = iters.peek();
+            if (iter.hasNext()) {
+                BasicBlock child = iter.next();
+                marks.push(scopeLog.size());
+                numberBlock(child);
+                iters.push(child.getDomTreeChildren().iterator());
+            } else {
+                iters.pop();
+                int mark = marks.pop();
+                while (scopeLog.size() > mark) {
+                    table.remove(scopeLog.remove(scopeLog.size() - 1));
+                }
+            }
+        }
+    }
+
+    private void numberBlock(BasicBlock block) {
+        for (Instruction inst : block.getInstructions()) {
+            String key = keyOf(inst);
+            if (key == null) {
+                continue;
+            }
+            Instruction leader = table.get(key);
+            if (leader != null) {
+                inst.replaceAllUsesWith(leader);
+                inst.delete();
+            } else {
+                table.put(key, inst);
+                scopeLog.add(key);
+            }
+        }
+    }
+
+    /**
+     * 常量已唯一化，与其他值一样按引用编号
+     */
+    private String operandKey(Value value) {
+        return "#" + valueNumbers.computeIfAbsent(value, v -> valueNumbers.size());
+    }
+
+    private static boolean isCommutative(Instruction.InstType instType) {
+        return switch (instType) {
+            case ADD, MUL, FAdd, FMUL -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * 可编号指令的键，其余指令（访存、控制流、phi、非纯调用）返回 null
+     */
+    private String keyOf(Instruction inst) {
+        StringBuilder key = new StringBuilder(inst.getInstType().toString()).append(' ');
+        if (inst instanceof Instruction.BinaryOperation) {
+            String src1 = operandKey(((Instruction.BinaryOperation) inst).getSrc1());
+            String src2 = operandKey(((Instruction.BinaryOperation) inst).getSrc2());
+            if (isCommutative(inst.getInstType()) && src1.compareTo(src2) > 0) {
+                String tmp = src1;
+                src1 = src2;
+                src2 = tmp;
+            }
+            return key.append(inst.getType()).append(' ').append(src1).append(' ').append(src2).toString();
+        }
+        if (inst instanceof Instruction.Icmp) {
+            key.append(((Instruction.Icmp) inst).getCondCode());
+        } else if (inst instanceof Instruction.Fcmp) {
+            key.append(((Instruction.Fcmp) inst).getCondCode());
+        } else if (inst instanceof Instruction.GetElementPtr) {
+            key.append(inst.getType());
+        } else if (inst instanceof Instruction.Call) {
+            if (!((Instruction.Call) inst).getDestFunction().isGvn()) {
+                return null;
+            }
+        } else if (!(inst instanceof Instruction.Zext || inst instanceof Instruction.SItofp
+                || inst instanceof Instruction.FPtosi)) {
+            return null;
+        }
+        for (Value operand : inst.getOperands()) {
+            key.append(' ').append(operandKey(operand));
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,96 @@
+package midend;
+
+import mir.BasicBlock;
+import mir.Constant;
+import mir.Instruction;
+import mir.Type;
+import mir.Value;
+
+import java.util.ArrayList;
+
+/**
+ * 规范循环中的基本归纳变量：header 中形如 phi [init, preheader], [phi + step, latch] 的 i32 phi，
+ * step 在循环内不变；phi - c（c 为常量）视为 step = -c
+ */
+public class InductionVar {
+    private final Instruction.Phi phi;
+    private final Value init;
+    private final Value step;
+    // latch 传回 header 的新值
+    private final Instruction.BinaryOperation update;
+
+    private InductionVar(Instruction.Phi phi, Value init, Value step, Instruction.BinaryOperation update) {
+        this.phi = phi;
+        this.init = init;
+        this.step = step;
+        this.update = update;
+    }
+
+    public Instruction.Phi getPhi() {
+        return phi;
+    }
+
+    public Value getInit() {
+        return init;
+    }
+
+    public Value getStep() {
+        return step;
+    }
+
+    public Instruction.BinaryOperation getUpdate() {
+        return update;
+    }
+
+    /**
+     * 循环内不变的值：常量、参数、全局变量，或定义在循环外的指令
+     */
+    public static boolean isInvariant(Value value, Loop loop) {
+        return !(value instanceof Instruction) || !loop.contains(((Instruction) value).getParentBlock());
+    }
+
+    /**
+     * 识别循环的全部基本归纳变量，循环须为规范形式
+     */
+    public static ArrayList<InductionVar> findAll(Loop loop) {
+        ArrayList<InductionVar> ivs = new ArrayList<>();
+        BasicBlock preheader = loop.getPreheader();
+        BasicBlock latch = loop.getLatch();
+        if (preheader == null || latch == null) {
+            return ivs;
+        }
+        for (Instruction inst : loop.getHeader().getInstructions()) {
+            if (!(inst instanceof Instruction.Phi)) {
+                break;
+            }
+            Instruction.Phi phi = (Instruction.Phi) inst;
+            if (phi.getType() != Type.BasicType.I32_TYPE || phi.getNumOperands() != 2) {
+                continue;
+            }
+            int preIdx = phi.getIncomingIndex(preheader);
+            int latchIdx = phi.getIncomingIndex(latch);
+            if (preIdx < 0 || latchIdx < 0) {
+                continue;
+            }
+            Value next = phi.getOptionalValue(latchIdx);
+            if (!(next instanceof Instruction.Add || next instanceof Instruction.Sub)) {
+                continue;
+            }
+            Instruction.BinaryOperation update = (Instruction.BinaryOperation) next;
+            Value step = null;
+            if (update instanceof Instruction.Add) {
+                if (update.getSrc1() == phi && isInvariant(update.getSrc2(), loop)) {
+                    step = update.getSrc2();
+                } else if (update.getSrc2() == phi && isInvariant(update.getSrc1(), loop)) {
+                    step = update.getSrc1();
+                }
+            } else if (update.getSrc1() == phi && update.getSrc2() instanceof Constant.ConstantInt) {
+                step = Constant.ConstantInt.get(phi.getParentBlock().getParentFunction().getContext(), -(Integer) ((Constant.ConstantInt) update.getSrc2()).getConstValue());
+            }
+            if (step != null) {
+                ivs.add(new InductionVar(phi, phi.getOptionalValue(preIdx), step, update));
+            }
+        }
+        return ivs;
+    }
+}
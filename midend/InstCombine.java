@@ -0,0 +1,607 @@
+package midend;
+
+import mir.*;
+import mir.Module;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * 指令合并（窥孔）与代数化简，在 SSA 上运行
+ * 规则表按指令类型登记规则，每条规则返回替换当前指令的值（可以是新建、插在当前指令之前的指令），
+ * 返回当前指令本身表示原地修改，不适用时返回 null
+ * 1. 初始时函数中的全部指令入工作表，逐条尝试对应类型的规则，命中一条即替换
+ * 2. 被替换指令的使用者、操作数以及新建的指令重新入表，直到工作表为空（不动点）
+ * 3. 没有使用者的无副作用指令直接删除，其操作数重新入表
+ * 浮点只做精确的化简：x - 0.0、x + (-0.0)、x * 1.0、x / 1.0；fptosi(sitofp x) 只在 x 能被 float 精确表示时消去
+ */
+public class InstCombine {
+    // float 尾数 24 位，绝对值不超过 2^24 的整数都能被精确表示
+    private static final int FLOAT_EXACT_LIMIT = 1 << 24;
+    // 判断非负时沿 phi 向上查找的深度
+    private static final int MAX_DEPTH = 4;
+
+    /**
+     * 一条化简规则
+     */
+    private interface Rule {
+        Value apply(Instruction inst);
+    }
+
+    private final EnumMap<Instruction.InstType, List<Rule>> rules = new EnumMap<>(Instruction.InstType.class);
+    private final ArrayDeque<Instruction> workList = new ArrayDeque<>();
+    private final HashSet<Instruction> inWorkList = new HashSet<>();
+    // 正在化简的指令，规则新建的指令插在它之前
+    private Instruction current;
+    // 所处理函数的常量表
+    private IRContext context;
+
+    public InstCombine() {
+        for (Instruction.InstType instType : new Instruction.InstType[]{
+                Instruction.InstType.ADD, Instruction.InstType.SUB, Instruction.InstType.MUL,
+                Instruction.InstType.DIV, Instruction.InstType.REM, Instruction.InstType.SHL,
+                Instruction.InstType.ASHR, Instruction.InstType.FAdd, Instruction.InstType.FSUB,
+                Instruction.InstType.FMUL, Instruction.InstType.FDIV, Instruction.InstType.FREM}) {
+            addRule(instType, this::foldBinary);
+        }
+        for (Instruction.InstType instType : new Instruction.InstType[]{
+                Instruction.InstType.ADD, Instruction.InstType.MUL,
+                Instruction.InstType.FAdd, Instruction.InstType.FMUL}) {
+            addRule(instType, this::constantToRight);
+        }
+        addRule(Instruction.InstType.ADD, this::simplifyAdd);
+        addRule(Instruction.InstType.SUB, this::simplifySub);
+        addRule(Instruction.InstType.MUL, this::simplifyMul);
+        addRule(Instruction.InstType.DIV, this::simplifyDiv);
+        addRule(Instruction.InstType.REM, this::simplifyRem);
+        addRule(Instruction.InstType.SHL, this::simplifyShift);
+        addRule(Instruction.InstType.ASHR, this::simplifyShift);
+        addRule(Instruction.InstType.FAdd, this::simplifyFloat);
+        addRule(Instruction.InstType.FSUB, this::simplifyFloat);
+        addRule(Instruction.InstType.FMUL, this::simplifyFloat);
+        addRule(Instruction.InstType.FDIV, this::simplifyFloat);
+        addRule(Instruction.InstType.Zext, this::simplifyZext);
+        addRule(Instruction.InstType.SItofp, this::simplifySItofp);
+        addRule(Instruction.InstType.FPtosi, this::simplifyFPtosi);
+        addRule(Instruction.InstType.Icmp, this::simplifyIcmp);
+        addRule(Instruction.InstType.Fcmp, this::simplifyFcmp);
+        addRule(Instruction.InstType.PHI, this::simplifyPhi);
+    }
+
+    private void addRule(Instruction.InstType instType, Rule rule) {
+        rules.computeIfAbsent(instType, k -> new ArrayList<>()).add(rule);
+    }
+
+    public void run(Module module) {
+        for (Function function : module.getFuncSet()) {
+            if (function.isExternal()) {
+                continue;
+            }
+            runOnFunction(function);
+        }
+    }
+
+    public void runOnFunction(Function function) {
+        context = function.getContext();
+        for (BasicBlock block : function.getBlocks()) {
+            for (Instruction inst : block.getInstructions()) {
+                push(inst);
+            }
+        }
+        while (!workList.isEmpty()) {
+            Instruction inst = workList.poll();
+            inWorkList.remove(inst);
+            // 已被删除
+            if (!inst.hasParent()) {
+                continue;
+            }
+            if (isTriviallyDead(inst)) {
+                pushOperands(inst);
+                inst.delete();
+                continue;
+            }
+            current = inst;
+            for (Rule rule : rules.getOrDefault(inst.getInstType(), List.of())) {
+                Value value = rule.apply(inst);
+                if (value == null) {
+                    continue;
+                }
+                if (value == inst) {
+                    push(inst);
+                } else {
+                    replace(inst, value);
+                }
+                break;
+            }
+        }
+        current = null;
+    }
+
+    private void push(Instruction inst) {
+        if (inWorkList.add(inst)) {
+            workList.add(inst);
+        }
+    }
+
+    private void pushOperands(Instruction inst) {
+        for (Value operand : inst.getOperands()) {
+            if (operand instanceof Instruction) {
+                push((Instruction) operand);
+            }
+        }
+    }
+
+    private void replace(Instruction inst, Value value) {
+        for (Use use : inst.getUses()) {
+            push((Instruction) use.getUser());
+        }
+        inst.replaceAllUsesWith(value);
+        if (value instanceof Instruction) {
+            push((Instruction) value);
+        }
+        pushOperands(inst);
+        inst.delete();
+    }
+
+    private static boolean isTriviallyDead(Instruction inst) {
+        if (!inst.getUses().isEmpty()) {
+            return false;
+        }
+        return inst instanceof Instruction.BinaryOperation || inst instanceof Instruction.Icmp
+                || inst instanceof Instruction.Fcmp || inst instanceof Instruction.Zext
+                || inst instanceof Instruction.SItofp || inst instanceof Instruction.FPtosi
+                || inst instanceof Instruction.GetElementPtr || inst instanceof Instruction.BitCast
+                || inst instanceof Instruction.Phi || inst instanceof Instruction.Load;
+    }
+
+    /**
+     * 把规则新建的指令移到当前指令之前
+     */
+    private <T extends Instruction> T insert(T inst) {
+        inst.remove();
+        current.getParentBlock().getInstructions().insertBefore(inst, current);
+        return inst;
+    }
+
+    private static Integer intConst(Value value) {
+        return value instanceof Constant.ConstantInt ? (Integer) ((Constant.ConstantInt) value).getConstValue() : null;
+    }
+
+    private static boolean isInt(Value value, int val) {
+        Integer c = intConst(value);
+        return c != null && c == val;
+    }
+
+    private static boolean isFloat(Value value, float val) {
+        return value instanceof Constant.ConstantFloat
+                && Float.floatToIntBits((Float) ((Constant.ConstantFloat) value).getConstValue()) == Float.floatToIntBits(val);
+    }
+
+    /**
+     * 同一个值，常量按值比较
+     */
+    private static boolean isSame(Value a, Value b) {
+        if (a == b) {
+            return true;
+        }
+        return a instanceof Constant && b instanceof Constant && a.getType() == b.getType()
+                && ((Constant) a).getConstValue().equals(((Constant) b).getConstValue());
+    }
+
+    private static int log2(int val) {
+        return val > 0 && (val & (val - 1)) == 0 ? Integer.numberOfTrailingZeros(val) : -1;
+    }
+
+    private static Object constValue(Value value) {
+        return value instanceof Constant.ConstantInt || value instanceof Constant.ConstantFloat
+                ? ((Constant) value).getConstValue() : null;
+    }
+
+    /**
+     * value 一定不小于 0
+     */
+    private static boolean isNonNegative(Value value, int depth) {
+        Integer c = intConst(value);
+        if (c != null) {
+            return c >= 0;
+        }
+        if (value instanceof Instruction.Zext) {
+            return true;
+        }
+        if (depth >= MAX_DEPTH) {
+            return false;
+        }
+        if (value instanceof Instruction.Rem || value instanceof Instruction.AShr) {
+            return isNonNegative(((Instruction.BinaryOperation) value).getSrc1(), depth + 1);
+        }
+        if (value instanceof Instruction.Div) {
+            return isNonNegative(((Instruction.Div) value).getSrc1(), depth + 1)
+                    && isNonNegative(((Instruction.Div) value).getSrc2(), depth + 1);
+        }
+        if (value instanceof Instruction.Phi) {
+            for (Value incoming : ((Instruction.Phi) value).getOperands()) {
+                if (incoming != value && !isNonNegative(incoming, depth + 1)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * value 能否被 float 精确表示
+     */
+    private static boolean isFloatExact(Value value) {
+        Integer c = intConst(value);
+        if (c != null) {
+            return java.lang.Math.abs((long) c) <= FLOAT_EXACT_LIMIT;
+        }
+        if (value instanceof Instruction.Zext) {
+            return true;
+        }
+        // |x % d| < |d|
+        if (value instanceof Instruction.Rem) {
+            Integer d = intConst(((Instruction.Rem) value).getSrc2());
+            return d != null && java.lang.Math.abs((long) d) <= FLOAT_EXACT_LIMIT;
+        }
+        return false;
+    }
+
+    private Constant makeConstant(Type type, Object val) {
+        if (type.isFloatTy()) {
+            return Constant.ConstantFloat.get(context, (Float) val);
+        }
+        return Constant.ConstantInt.get(context, (Integer) val);
+    }
+
+    // ---------------- 二元运算 ----------------
+
+    private Value foldBinary(Instruction inst) {
+        Instruction.BinaryOperation bin = (Instruction.BinaryOperation) inst;
+        Object a = constValue(bin.getSrc1());
+        Object b = constValue(bin.getSrc2());
+        if (a == null || b == null) {
+            return null;
+        }
+        Object val = SCCP.foldBinary(inst.getInstType(), a, b);
+        if (!(val instanceof Integer || val instanceof Float)) {
+            return null;
+        }
+        return makeConstant(inst.getType(), val);
+    }
+
+    /**
+     * 交换律运算的常量操作数放到右边，之后的规则只需匹配右边
+     */
+    private Value constantToRight(Instruction inst) {
+        Instruction.BinaryOperation bin = (Instruction.BinaryOperation) inst;
+        Value src1 = bin.getSrc1();
+        Value src2 = bin.getSrc2();
+        if (!(src1 instanceof Constant) || src2 instanceof Constant) {
+            return null;
+        }
+        bin.setOperand(0, src2);
+        bin.setOperand(1, src1);
+        return inst;
+    }
+
+    private Value simplifyAdd(Instruction inst) {
+        if (!inst.getType().isInt32Ty()) {
+            return null;
+        }
+        Value x = ((Instruction.Add) inst).getSrc1();
+        Value y = ((Instruction.Add) inst).getSrc2();
+        Integer c = intConst(y);
+        if (c != null && c == 0) {
+            return x;
+        }
+        // (a + c1) + c2 -> a + (c1 + c2)
+        if (c != null && x instanceof Instruction.Add && intConst(((Instruction.Add) x).getSrc2()) != null) {
+            int sum = intConst(((Instruction.Add) x).getSrc2()) + c;
+            return insert(new Instruction.Add(current.getParentBlock(), inst.getType(),
+                    ((Instruction.Add) x).getSrc1(), Constant.ConstantInt.get(context, sum)));
+        }
+        // a + (0 - b) -> a - b
+        if (y instanceof Instruction.Sub && isInt(((Instruction.Sub) y).getSrc1(), 0)) {
+            return insert(new Instruction.Sub(current.getParentBlock(), inst.getType(), x, ((Instruction.Sub) y).getSrc2()));
+        }
+        if (x instanceof Instruction.Sub && isInt(((Instruction.Sub) x).getSrc1(), 0)) {
+            return insert(new Instruction.Sub(current.getParentBlock(), inst.getType(), y, ((Instruction.Sub) x).getSrc2()));
+        }
+        // (a - b) + b -> a
+        if (x instanceof Instruction.Sub && ((Instruction.Sub) x).getSrc2() == y) {
+            return ((Instruction.Sub) x).getSrc1();
+        }
+        if (y instanceof Instruction.Sub && ((Instruction.Sub) y).getSrc2() == x) {
+            return ((Instruction.Sub) y).getSrc1();
+        }
+        // a + a -> a << 1
+        if (x == y) {
+            return insert(new Instruction.Shl(current.getParentBlock(), inst.getType(), x, Constant.ConstantInt.get(context, 1)));
+        }
+        return null;
+    }
+
+    private Value simplifySub(Instruction inst) {
+        if (!inst.getType().isInt32Ty()) {
+            return null;
+        }
+        Value x = ((Instruction.Sub) inst).getSrc1();
+        Value y = ((Instruction.Sub) inst).getSrc2();
+        if (x == y) {
+            return Constant.ConstantInt.get(context, 0);
+        }
+        Integer c = intConst(y);
+        if (c != null) {
+            // a - c -> a + (-c)，交给加法的规则继续合并
+            return c == 0 ? x : insert(new Instruction.Add(current.getParentBlock(), inst.getType(), x, Constant.ConstantInt.get(context, -c)));
+        }
+        // (a + b) - b -> a，(a + b) - a -> b
+        if (x instanceof Instruction.Add) {
+            if (((Instruction.Add) x).getSrc2() == y) {
+                return ((Instruction.Add) x).getSrc1();
+            }
+            if (((Instruction.Add) x).getSrc1() == y) {
+                return ((Instruction.Add) x).getSrc2();
+            }
+        }
+        if (y instanceof Instruction.Sub && isInt(((Instruction.Sub) y).getSrc1(), 0)) {
+            // 0 - (0 - b) -> b
+            if (isInt(x, 0)) {
+                return ((Instruction.Sub) y).getSrc2();
+            }
+            // a - (0 - b) -> a + b
+            return insert(new Instruction.Add(current.getParentBlock(), inst.getType(), x, ((Instruction.Sub) y).getSrc2()));
+        }
+        return null;
+    }
+
+    private Value simplifyMul(Instruction inst) {
+        if (!inst.getType().isInt32Ty()) {
+            return null;
+        }
+        Value x = ((Instruction.Mul) inst).getSrc1();
+        Integer c = intConst(((Instruction.Mul) inst).getSrc2());
+        if (c == null) {
+            return null;
+        }
+        if (c == 0) {
+            return Constant.ConstantInt.get(context, 0);
+        }
+        if (c == 1) {
+            return x;
+        }
+        if (c == -1) {
+            return insert(new Instruction.Sub(current.getParentBlock(), inst.getType(), Constant.ConstantInt.get(context, 0), x));
+        }
+        // (a * c1) * c2 -> a * (c1 * c2)
+        if (x instanceof Instruction.Mul && intConst(((Instruction.Mul) x).getSrc2()) != null) {
+            int product = intConst(((Instruction.Mul) x).getSrc2()) * c;
+            return insert(new Instruction.Mul(current.getParentBlock(), inst.getType(),
+                    ((Instruction.Mul) x).getSrc1(), Constant.ConstantInt.get(context, product)));
+        }
+        int shift = log2(c);
+        if (shift > 0) {
+            return insert(new Instruction.Shl(current.getParentBlock(), inst.getType(), x, Constant.ConstantInt.get(context, shift)));
+        }
+        return null;
+    }
+
+    private Value simplifyDiv(Instruction inst) {
+        if (!inst.getType().isInt32Ty()) {
+            return null;
+        }
+        Value x = ((Instruction.Div) inst).getSrc1();
+        Integer c = intConst(((Instruction.Div) inst).getSrc2());
+        if (c == null) {
+            return null;
+        }
+        if (c == 1) {
+            return x;
+        }
+        if (c == -1) {
+            return insert(new Instruction.Sub(current.getParentBlock(), inst.getType(), Constant.ConstantInt.get(context, 0), x));
+        }
+        // 被除数非负时除法向零取整与算术右移一致
+        int shift = log2(c);
+        if (shift > 0 && isNonNegative(x, 0)) {
+            return insert(new Instruction.AShr(current.getParentBlock(), inst.getType(), x, Constant.ConstantInt.get(context, shift)));
+        }
+        return null;
+    }
+
+    private Value simplifyRem(Instruction inst) {
+        if (!inst.getType().isInt32Ty()) {
+            return null;
+        }
+        Integer c = intConst(((Instruction.Rem) inst).getSrc2());
+        if (c != null && (c == 1 || c == -1)) {
+            return Constant.ConstantInt.get(context, 0);
+        }
+        return null;
+    }
+
+    private Value simplifyShift(Instruction inst) {
+        Value x = ((Instruction.BinaryOperation) inst).getSrc1();
+        if (isInt(((Instruction.BinaryOperation) inst).getSrc2(), 0)) {
+            return x;
+        }
+        if (isInt(x, 0)) {
+            return x;
+        }
+        return null;
+    }
+
+    private Value simplifyFloat(Instruction inst) {
+        Instruction.BinaryOperation bin = (Instruction.BinaryOperation) inst;
+        Value x = bin.getSrc1();
+        Value y = bin.getSrc2();
+        boolean identity = switch (inst.getInstType()) {
+            // -0.0 + 0.0 = 0.0，只有加 -0.0 是恒等的
+            case FAdd -> isFloat(y, -0.0f);
+            case FSUB -> isFloat(y, 0.0f);
+            case FMUL, FDIV -> isFloat(y, 1.0f);
+            default -> false;
+        };
+        return identity ? x : null;
+    }
+
+    // ---------------- 类型转换 ----------------
+
+    private Value simplifyZext(Instruction inst) {
+        Value src = ((Instruction.Zext) inst).getSrc();
+        if (src instanceof Constant.ConstantBool) {
+            return Constant.ConstantInt.get(context, (Integer) ((Constant.ConstantBool) src).getConstValue());
+        }
+        // zext (icmp ne (zext b), 0) -> zext b
+        if (src instanceof Instruction.Icmp) {
+            Instruction.Icmp icmp = (Instruction.Icmp) src;
+            Integer c = intConst(icmp.getSrc2());
+            if (icmp.getSrc1() instanceof Instruction.Zext && c != null
+                    && (Integer) SCCP.foldIcmp(icmp.getCondCode(), 0, c) == 0
+                    && (Integer) SCCP.foldIcmp(icmp.getCondCode(), 1, c) == 1) {
+                return icmp.getSrc1();
+            }
+        }
+        // 同一块中前面已有 zext b
+        for (Use use : src.getUses()) {
+            Instruction other = (Instruction) use.getUser();
+            if (other != inst && other instanceof Instruction.Zext && other.getParentBlock() == inst.getParentBlock()
+                    && inst.getParentBlock().getInstructions().comesBefore(other, inst)) {
+                return other;
+            }
+        }
+        return null;
+    }
+
+    private Value simplifySItofp(Instruction inst) {
+        Integer c = intConst(((Instruction.SItofp) inst).getSrc());
+        return c == null ? null : Constant.ConstantFloat.get(context, (float) c);
+    }
+
+    private Value simplifyFPtosi(Instruction inst) {
+        Value src = ((Instruction.FPtosi) inst).getSrc();
+        if (src instanceof Constant.ConstantFloat) {
+            return Constant.ConstantInt.get(context, (int) (float) (Float) ((Constant.ConstantFloat) src).getConstValue());
+        }
+        if (src instanceof Instruction.SItofp && isFloatExact(((Instruction.SItofp) src).getSrc())) {
+            return ((Instruction.SItofp) src).getSrc();
+        }
+        return null;
+    }
+
+    // ---------------- 比较 ----------------
+
+    private static Instruction.Icmp.CondCode swapped(Instruction.Icmp.CondCode condCode) {
+        return switch (condCode) {
+            case EQ, NE -> condCode;
+            case SGT -> Instruction.Icmp.CondCode.SLT;
+            case SGE -> Instruction.Icmp.CondCode.SLE;
+            case SLT -> Instruction.Icmp.CondCode.SGT;
+            case SLE -> Instruction.Icmp.CondCode.SGE;
+        };
+    }
+
+    private static Instruction.Icmp.CondCode inverted(Instruction.Icmp.CondCode condCode) {
+        return switch (condCode) {
+            case EQ -> Instruction.Icmp.CondCode.NE;
+            case NE -> Instruction.Icmp.CondCode.EQ;
+            case SGT -> Instruction.Icmp.CondCode.SLE;
+            case SGE -> Instruction.Icmp.CondCode.SLT;
+            case SLT -> Instruction.Icmp.CondCode.SGE;
+            case SLE -> Instruction.Icmp.CondCode.SGT;
+        };
+    }
+
+    /**
+     * 布尔值 b 的取反，b 不是 icmp 或常量时返回 null（fcmp 取反后对 NaN 的结果不同）
+     */
+    private Value not(Value b) {
+        if (b instanceof Constant.ConstantBool) {
+            return Constant.ConstantBool.get(((Constant.ConstantBool) b).isZero() ? 1 : 0);
+        }
+        if (b instanceof Instruction.Icmp) {
+            Instruction.Icmp icmp = (Instruction.Icmp) b;
+            return insert(new Instruction.Icmp(current.getParentBlock(), inverted(icmp.getCondCode()),
+                    icmp.getSrc1(), icmp.getSrc2()));
+        }
+        return null;
+    }
+
+    private Value simplifyIcmp(Instruction inst) {
+        Instruction.Icmp icmp = (Instruction.Icmp) inst;
+        Instruction.Icmp.CondCode condCode = icmp.getCondCode();
+        Value x = icmp.getSrc1();
+        Value y = icmp.getSrc2();
+        Integer a = intConst(x);
+        Integer c = intConst(y);
+        if (a != null && c != null) {
+            return Constant.ConstantBool.get((Integer) SCCP.foldIcmp(condCode, a, c));
+        }
+        if (x == y) {
+            return Constant.ConstantBool.get((Integer) SCCP.foldIcmp(condCode, 0, 0));
+        }
+        // 常量放到右边
+        if (a != null) {
+            return insert(new Instruction.Icmp(current.getParentBlock(), swapped(condCode), y, x));
+        }
+        if (c == null) {
+            return null;
+        }
+        // zext 的布尔值与常量比较：按 b 取 0、1 时的结果化为 b、!b 或常量
+        if (x instanceof Instruction.Zext) {
+            Value b = ((Instruction.Zext) x).getSrc();
+            int r0 = (Integer) SCCP.foldIcmp(condCode, 0, c);
+            int r1 = (Integer) SCCP.foldIcmp(condCode, 1, c);
+            if (r0 == r1) {
+                return Constant.ConstantBool.get(r0);
+            }
+            return r1 == 1 ? b : not(b);
+        }
+        if (condCode == Instruction.Icmp.CondCode.EQ || condCode == Instruction.Icmp.CondCode.NE) {
+            // (a + c1) == c2 -> a == c2 - c1
+            if (x instanceof Instruction.Add && intConst(((Instruction.Add) x).getSrc2()) != null) {
+                int rhs = c - intConst(((Instruction.Add) x).getSrc2());
+                return insert(new Instruction.Icmp(current.getParentBlock(), condCode,
+                        ((Instruction.Add) x).getSrc1(), Constant.ConstantInt.get(context, rhs)));
+            }
+            // (a - b) == 0 -> a == b
+            if (x instanceof Instruction.Sub && c == 0) {
+                return insert(new Instruction.Icmp(current.getParentBlock(), condCode,
+                        ((Instruction.Sub) x).getSrc1(), ((Instruction.Sub) x).getSrc2()));
+            }
+        }
+        return null;
+    }
+
+    private Value simplifyFcmp(Instruction inst) {
+        Instruction.Fcmp fcmp = (Instruction.Fcmp) inst;
+        if (fcmp.getSrc1() instanceof Constant.ConstantFloat && fcmp.getSrc2() instanceof Constant.ConstantFloat) {
+            return Constant.ConstantBool.get((Integer) SCCP.foldFcmp(fcmp.getCondCode(),
+                    (Float) ((Constant.ConstantFloat) fcmp.getSrc1()).getConstValue(),
+                    (Float) ((Constant.ConstantFloat) fcmp.getSrc2()).getConstValue()));
+        }
+        return null;
+    }
+
+    /**
+     * 除自身外只有一种取值的 phi
+     */
+    private Value simplifyPhi(Instruction inst) {
+        Value value = null;
+        for (Value incoming : inst.getOperands()) {
+            if (incoming == inst || value != null && isSame(incoming, value)) {
+                continue;
+            }
+            if (value != null) {
+                return null;
+            }
+            value = incoming;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,164 @@
+package midend;
+
+import mir.*;
+import mir.Module;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 冗余 Load 消除与 store 到 load 的转发，基于 AliasAnalysis，需要控制流图与支配树
+ * 按逆后序处理基本块，只有一个前驱的块继承前驱出口处的状态（扩展基本块），其余块从空状态开始：
+ * 1. 可用值表记录 地址 -> 值：Load 命中 mustAlias 的表项时替换为该值，否则记入表中；
+ *    Store 删去可能别名的表项后记入新值
+ * 2. memset 清零的根对象记录清零的字节数，之后对其常量偏移的 Load 直接取 0，
+ *    直到出现对该对象非常量偏移的写或可能写它的调用
+ * 3. 纯函数（Function.isGvn）不读写外部内存；库函数只写指针参数指向的对象；
+ *    其他函数可能写全局变量、指针参数以及传给它的局部数组
+ */
+public class LoadElimination {
+
+    private static class State {
+        // 地址 -> 该地址当前的值
+        final ArrayList<Value[]> available = new ArrayList<>();
+        // 根对象 -> 从偏移 0 开始清零的字节数
+        final HashMap<Value, Long> zeroed = new HashMap<>();
+
+        State copy() {
+            State state = new State();
+            state.available.addAll(available);
+            state.zeroed.putAll(zeroed);
+            return state;
+        }
+    }
+
+    // 所处理函数的常量表
+    private IRContext context;
+
+    public void run(Module module) {
+        for (Function function : module.getFuncSet()) {
+            if (function.isExternal()) {
+                continue;
+            }
+            runOnFunction(function);
+        }
+    }
+
+    public void runOnFunction(Function function) {
+        context = function.getContext();
+        HashMap<BasicBlock, State> outStates = new HashMap<>();
+        for (BasicBlock block : function.getDominanceGraph().getReversePostorder()) {
+            State state;
+            if (block.getPreBlocks().size() == 1 && outStates.containsKey(block.getPreBlocks().get(0))) {
+                state = outStates.get(block.getPreBlocks().get(0)).copy();
+            } else {
+                state = new State();
+            }
+            ArrayList<Instruction> dead = new ArrayList<>();
+            for (Instruction inst : block.getInstructions()) {
+                if (inst instanceof Instruction.Load) {
+                    Value value = visitLoad(state, (Instruction.Load) inst);
+                    if (value != null) {
+                        inst.replaceAllUsesWith(value);
+                        dead.add(inst);
+                    }
+                } else if (inst instanceof Instruction.Store) {
+                    Instruction.Store store = (Instruction.Store) inst;
+                    clobber(state, store.getAddr());
+                    state.available.add(new Value[]{store.getAddr(), store.getValue()});
+                } else if (inst instanceof Instruction.Call) {
+                    visitCall(state, (Instruction.Call) inst);
+                }
+            }
+            for (Instruction inst : dead) {
+                inst.delete();
+            }
+            outStates.put(block, state);
+        }
+    }
+
+    /**
+     * 返回 Load 可替换成的值，不能替换时记入可用值表并返回 null
+     */
+    private Value visitLoad(State state, Instruction.Load load) {
+        Value addr = load.getAddr();
+        for (int i = state.available.size() - 1; i >= 0; i--) {
+            Value[] entry = state.available.get(i);
+            if (AliasAnalysis.mustAlias(entry[0], addr) && entry[1].getType() == load.getType()) {
+                return entry[1];
+            }
+        }
+        AliasAnalysis.Location loc = AliasAnalysis.locate(addr);
+        Long bytes = state.zeroed.get(loc.root);
+        if (loc.known && bytes != null && loc.offset >= 0
+                && loc.offset + AliasAnalysis.sizeOf(load.getType()) <= bytes) {
+            if (load.getType().isFloatTy()) {
+                return Constant.ConstantFloat.get(context, 0);
+            }
+            if (load.getType().isInt32Ty()) {
+                return Constant.ConstantInt.get(context, 0);
+            }
+        }
+        state.available.add(new Value[]{addr, load});
+        return null;
+    }
+
+    /**
+     * 对 addr 的一次写
+     */
+    private void clobber(State state, Value addr) {
+        state.available.removeIf(entry -> AliasAnalysis.mayAlias(entry[0], addr));
+        AliasAnalysis.Location loc = AliasAnalysis.locate(addr);
+        // 常量偏移的写只改变一个元素，其值已记入可用值表
+        state.zeroed.keySet().removeIf(root -> AliasAnalysis.mayAliasRoots(root, loc.root)
+                && !(root == loc.root && loc.known));
+    }
+
+    /**
+     * 对根对象 root 指向的整块内存的写
+     */
+    private void clobberRoot(State state, Value root) {
+        state.available.removeIf(entry -> AliasAnalysis.mayAliasRoots(AliasAnalysis.rootOf(entry[0]), root));
+        state.zeroed.keySet().removeIf(zeroRoot -> AliasAnalysis.mayAliasRoots(zeroRoot, root));
+    }
+
+    private void visitCall(State state, Instruction.Call call) {
+        Function dest = call.getDestFunction();
+        if (dest.isGvn()) {
+            return;
+        }
+        if (dest.isExternal()) {
+            for (Value param : call.getParams()) {
+                if (param.getType().isPointerTy()) {
+                    clobberRoot(state, AliasAnalysis.rootOf(param));
+                }
+            }
+            if (dest.getName().equals("memset") && call.getParams().get(1) instanceof Constant.ConstantInt
+                    && ((Constant.ConstantInt) call.getParams().get(1)).isZero()
+                    && call.getParams().get(2) instanceof Constant.ConstantInt) {
+                AliasAnalysis.Location loc = AliasAnalysis.locate(call.getParams().get(0));
+                if (loc.known && loc.offset == 0 && !(loc.root instanceof Function.Argument)) {
+                    state.zeroed.put(loc.root, (long) (Integer) ((Constant.ConstantInt) call.getParams().get(2)).getConstValue());
+                }
+            }
+            return;
+        }
+        // 自定义函数：只有未传出的局部对象不受影响
+        ArrayList<Value> passed = new ArrayList<>();
+        for (Value param : call.getParams()) {
+            if (param.getType().isPointerTy()) {
+                passed.add(AliasAnalysis.rootOf(param));
+            }
+        }
+        state.available.removeIf(entry -> {
+            Value root = AliasAnalysis.rootOf(entry[0]);
+            return !(root instanceof Instruction.Alloc) || passed.contains(root);
+        });
+        for (Map.Entry<Value, Long> entry : new ArrayList<>(state.zeroed.entrySet())) {
+            if (!(entry.getKey() instanceof Instruction.Alloc) || passed.contains(entry.getKey())) {
+                state.zeroed.remove(entry.getKey());
+            }
+        }
+    }
+}
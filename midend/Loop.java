@@ -0,0 +1,158 @@
+package midend;
+
+import mir.BasicBlock;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
+/**
+ * 自然循环：由 header 与所有能不经过 header 到达某条回边起点的块组成
+ * latch / preheader / 出口等均按当前控制流图现算，LoopInfo 规范化之后：
+ * preheader 唯一且只跳到 header，latch 唯一，出口块的前驱全部在循环内
+ */
+public class Loop {
+    private final BasicBlock header;
+    private Loop parent = null;
+    private final ArrayList<Loop> subLoops = new ArrayList<>();
+    // 包含子循环的块，按逆后序排列，header 在最前
+    private final LinkedHashSet<BasicBlock> blocks = new LinkedHashSet<>();
+
+    public Loop(BasicBlock header) {
+        this.header = header;
+    }
+
+    public BasicBlock getHeader() {
+        return header;
+    }
+
+    public Loop getParent() {
+        return parent;
+    }
+
+    void setParent(Loop parent) {
+        this.parent = parent;
+    }
+
+    public ArrayList<Loop> getSubLoops() {
+        return subLoops;
+    }
+
+    public LinkedHashSet<BasicBlock> getBlocks() {
+        return blocks;
+    }
+
+    void addBlock(BasicBlock block) {
+        blocks.add(block);
+    }
+
+    public boolean contains(BasicBlock block) {
+        return blocks.contains(block);
+    }
+
+    public boolean contains(Loop loop) {
+        while (loop != null && loop != this) {
+            loop = loop.parent;
+        }
+        return loop == this;
+    }
+
+    /**
+     * 最外层循环深度为 1
+     */
+    public int getDepth() {
+        int depth = 1;
+        for (Loop cur = parent; cur != null; cur = cur.parent) {
+            depth++;
+        }
+        return depth;
+    }
+
+    public ArrayList<BasicBlock> getLatches() {
+        ArrayList<BasicBlock> latches = new ArrayList<>();
+        for (BasicBlock pre : header.getPreBlocks()) {
+            if (contains(pre)) {
+                latches.add(pre);
+            }
+        }
+        return latches;
+    }
+
+    /**
+     * 唯一的 latch，不唯一时为 null
+     */
+    public BasicBlock getLatch() {
+        ArrayList<BasicBlock> latches = getLatches();
+        return latches.size() == 1 ? latches.get(0) : null;
+    }
+
+    /**
+     * 循环外唯一的前驱，且该前驱只有 header 一个后继，否则为 null
+     */
+    public BasicBlock getPreheader() {
+        BasicBlock preheader = null;
+        for (BasicBlock pre : header.getPreBlocks()) {
+            if (contains(pre)) {
+                continue;
+            }
+            if (preheader != null) {
+                return null;
+            }
+            preheader = pre;
+        }
+        if (preheader == null || preheader.getSucBlocks().size() != 1) {
+            return null;
+        }
+        return preheader;
+    }
+
+    /**
+     * 有后继在循环外的循环内块
+     */
+    public ArrayList<BasicBlock> getExitingBlocks() {
+        ArrayList<BasicBlock> exiting = new ArrayList<>();
+        for (BasicBlock block : blocks) {
+            for (BasicBlock suc : block.getSucBlocks()) {
+                if (!contains(suc)) {
+                    exiting.add(block);
+                    break;
+                }
+            }
+        }
+        return exiting;
+    }
+
+    /**
+     * 循环外、有前驱在循环内的块
+     */
+    public ArrayList<BasicBlock> getExitBlocks() {
+        LinkedHashSet<BasicBlock> exits = new LinkedHashSet<>();
+        for (BasicBlock block : blocks) {
+            for (BasicBlock suc : block.getSucBlocks()) {
+                if (!contains(suc)) {
+                    exits.add(suc);
+                }
+            }
+        }
+        return new ArrayList<>(exits);
+    }
+
+    public boolean hasDedicatedExits() {
+        for (BasicBlock exit : getExitBlocks()) {
+            for (BasicBlock pre : exit.getPreBlocks()) {
+                if (!contains(pre)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public boolean isCanonical() {
+        return getPreheader() != null && getLatch() != null && hasDedicatedExits();
+    }
+
+    @Override
+    public String toString() {
+        return "loop<" + header.getLabel() + ", depth " + getDepth() + ", " + blocks.size() + " blocks>";
+    }
+}
@@ -0,0 +1,237 @@
+package midend;
+
+import mir.BasicBlock;
+import mir.Function;
+import mir.Instruction;
+import mir.Value;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * 自然循环分析，调用前需已建好控制流图与支配树：
+ * 1. 按支配树后序枚举 header，前驱中被 header 支配的块即回边起点，沿前驱反向扩展出循环体，
+ *    遇到已识别的（内层）循环时把它的最外层祖先挂为子循环，因而内层循环总是先于外层被识别
+ * 2. 规范化：为每个循环补上 preheader、唯一 latch 与专用出口块，phi 的来源随之拆分
+ * 3. 规范化改变了控制流时重建控制流图、支配树并重新识别
+ * 每个块记录所在的最内层循环（BasicBlock.getLoop），嵌套深度即循环树上的深度
+ */
+public class LoopInfo {
+    private final Function parentFunction;
+    // 所有循环，内层在前
+    private final ArrayList<Loop> loops = new ArrayList<>();
+    private final ArrayList<Loop> topLevelLoops = new ArrayList<>();
+    // 新建块的编号，保证标签在函数内唯一
+    private int splitCount = 0;
+
+    public LoopInfo(Function parentFunction) {
+        this.parentFunction = parentFunction;
+    }
+
+    public void build() {
+        analyze();
+        if (simplify()) {
+            parentFunction.buildControlFlowGraph();
+            parentFunction.buildDominanceGraph();
+            analyze();
+        }
+        assert loops.stream().allMatch(loop -> loop.isCanonical()
+                || loop.getHeader() == parentFunction.getEntry()) : "loops of " + parentFunction.getName() + " not canonical";
+    }
+
+    public void clear() {
+        for (BasicBlock block : parentFunction.getBlocks()) {
+            block.setLoop(null);
+        }
+        loops.clear();
+        topLevelLoops.clear();
+    }
+
+    public ArrayList<Loop> getLoops() {
+        return loops;
+    }
+
+    public ArrayList<Loop> getTopLevelLoops() {
+        return topLevelLoops;
+    }
+
+    public Loop getLoopFor(BasicBlock block) {
+        return block.getLoop();
+    }
+
+    private static Loop outermost(Loop loop) {
+        while (loop.getParent() != null) {
+            loop = loop.getParent();
+        }
+        return loop;
+    }
+
+    private void analyze() {
+        clear();
+        DominanceGraph dg = parentFunction.getDominanceGraph();
+        ArrayList<BasicBlock> rpo = dg.getReversePostorder();
+        // 支配树后序：内层 header 先于外层 header
+        ArrayList<BasicBlock> headers = new ArrayList<>(rpo);
+        headers.sort(Comparator.comparingInt(BasicBlock::getDomOut));
+        for (BasicBlock header : headers) {
+            LinkedList<BasicBlock> W = new LinkedList<>();
+            for (BasicBlock pre : header.getPreBlocks()) {
+                if (dg.dominates(header, pre)) {
+                    W.add(pre);
+                }
+            }
+            if (W.isEmpty()) {
+                continue;
+            }
+            Loop loop = new Loop(header);
+            loops.add(loop);
+            header.setLoop(loop);
+            while (!W.isEmpty()) {
+                BasicBlock block = W.remove();
+                Loop sub = block.getLoop();
+                if (sub == null) {
+                    // 不可达块不属于任何循环
+                    if (block.getDomIn() < 0) {
+                        continue;
+                    }
+                    block.setLoop(loop);
+                    W.addAll(block.getPreBlocks());
+                    continue;
+                }
+                sub = outermost(sub);
+                if (sub == loop) {
+                    continue;
+                }
+                sub.setParent(loop);
+                for (BasicBlock pre : sub.getHeader().getPreBlocks()) {
+                    Loop preLoop = pre.getLoop();
+                    if (preLoop == null || outermost(preLoop) != sub) {
+                        W.add(pre);
+                    }
+                }
+            }
+        }
+        // 块按逆后序加入所在循环及其全部祖先
+        for (BasicBlock block : rpo) {
+            for (Loop loop = block.getLoop(); loop != null; loop = loop.getParent()) {
+                loop.addBlock(block);
+            }
+        }
+        for (int i = loops.size() - 1; i >= 0; i--) {
+            Loop loop = loops.get(i);
+            if (loop.getParent() == null) {
+                topLevelLoops.add(loop);
+            } else {
+                loop.getParent().getSubLoops().add(loop);
+            }
+        }
+    }
+
+    /**
+     * 内层循环先处理，新建的块加入相应的外层循环，返回是否改变了控制流
+     */
+    private boolean simplify() {
+        boolean changed = false;
+        for (Loop loop : loops) {
+            BasicBlock header = loop.getHeader();
+
+            // preheader
+            ArrayList<BasicBlock> outside = new ArrayList<>();
+            for (BasicBlock pre : header.getPreBlocks()) {
+                if (!loop.contains(pre)) {
+                    outside.add(pre);
+                }
+            }
+            if (!outside.isEmpty() && loop.getPreheader() == null) {
+                BasicBlock preheader = splitPredecessors(header, outside, "preheader");
+                for (Loop outer = loop.getParent(); outer != null; outer = outer.getParent()) {
+                    outer.addBlock(preheader);
+                }
+                changed = true;
+            }
+
+            // latch
+            ArrayList<BasicBlock> latches = loop.getLatches();
+            if (latches.size() > 1) {
+                BasicBlock latch = splitPredecessors(header, latches, "latch");
+                for (Loop cur = loop; cur != null; cur = cur.getParent()) {
+                    cur.addBlock(latch);
+                }
+                changed = true;
+            }
+
+            // 专用出口
+            for (BasicBlock exit : loop.getExitBlocks()) {
+                ArrayList<BasicBlock> inside = new ArrayList<>();
+                boolean dedicated = true;
+                for (BasicBlock pre : exit.getPreBlocks()) {
+                    if (loop.contains(pre)) {
+                        inside.add(pre);
+                    } else {
+                        dedicated = false;
+                    }
+                }
+                if (dedicated) {
+                    continue;
+                }
+                BasicBlock newExit = splitPredecessors(exit, inside, "exit");
+                for (Loop outer = loop.getParent(); outer != null; outer = outer.getParent()) {
+                    if (outer.contains(exit)) {
+                        outer.addBlock(newExit);
+                    }
+                }
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 新建块 N，使 preds 中的块改为跳到 N，N 再跳到 target
+     * target 中 phi 来自 preds 的取值：只有一个前驱时改写来源块，否则在 N 中合并为新的 phi
+     * 同步维护前驱后继表，支配树需要调用方重建
+     */
+    private BasicBlock splitPredecessors(BasicBlock target, List<BasicBlock> preds, String kind) {
+        BasicBlock block = new BasicBlock(target.getLabel() + "_" + kind + "_" + splitCount++, parentFunction);
+        block.remove();
+        parentFunction.getBlocks().insertBefore(block, target);
+        for (BasicBlock pre : preds) {
+            pre.getLastInst().replaceUseOfWith(target, block);
+        }
+        new Instruction.Jump(block, target);
+
+        for (Instruction inst : target.getInstructions()) {
+            if (!(inst instanceof Instruction.Phi)) {
+                break;
+            }
+            Instruction.Phi phi = (Instruction.Phi) inst;
+            if (preds.size() == 1) {
+                phi.replaceIncomingBlock(preds.get(0), block);
+                continue;
+            }
+            ArrayList<Value> values = new ArrayList<>();
+            for (BasicBlock pre : preds) {
+                int idx = phi.getIncomingIndex(pre);
+                values.add(phi.getOptionalValue(idx));
+                phi.removeIncoming(idx);
+            }
+            Instruction.Phi merged = new Instruction.Phi(block, phi.getType(), values, preds);
+            merged.remove();
+            block.addInstFirst(merged);
+            phi.addIncoming(merged, block);
+        }
+
+        // 前驱后继
+        for (BasicBlock pre : preds) {
+            pre.getSucBlocks().remove(target);
+            pre.addSucBlock(block);
+            target.getPreBlocks().remove(pre);
+            block.addPreBlock(pre);
+        }
+        block.addSucBlock(target);
+        target.addPreBlock(block);
+        return block;
+    }
+}
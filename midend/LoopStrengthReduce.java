@@ -0,0 +1,119 @@
+package midend;
+
+import mir.*;
+import mir.Module;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * 归纳变量强度削弱，需要 LoopInfo（规范形式）
+ * 循环内的 iv * k（k 循环不变，iv << c 视为 iv * 2^c）在每轮中恒等于 init * k + 轮数 * step * k，
+ * 因此为每组 (iv, k) 在 header 新建 phi [init * k, preheader], [phi + step * k, latch]，
+ * 乘法替换为该 phi，每轮只剩 latch 中的一次加法；init * k 与 step * k 在 preheader 中计算
+ * 数组下标 i * dim 的展开多由此变为随循环递增的偏移
+ */
+public class LoopStrengthReduce {
+
+    public void run(Module module) {
+        for (Function function : module.getFuncSet()) {
+            if (function.isExternal()) {
+                continue;
+            }
+            runOnFunction(function);
+        }
+    }
+
+    public void runOnFunction(Function function) {
+        for (Loop loop : function.getLoopInfo().getLoops()) {
+            if (loop.isCanonical()) {
+                runOnLoop(loop);
+            }
+        }
+    }
+
+    private void runOnLoop(Loop loop) {
+        for (InductionVar iv : InductionVar.findAll(loop)) {
+            // 按乘数分组，同一乘数共用一个新 phi；常量已按 IRContext 唯一化，直接以 Value 对象为键
+            LinkedHashMap<Value, ArrayList<Instruction.BinaryOperation>> groups = new LinkedHashMap<>();
+            for (Use use : iv.getPhi().getUses()) {
+                Value factor;
+                if (use.getUser() instanceof Instruction.Mul) {
+                    Instruction.Mul mul = (Instruction.Mul) use.getUser();
+                    factor = mul.getSrc1() == iv.getPhi() ? mul.getSrc2() : mul.getSrc1();
+                } else if (use.getUser() instanceof Instruction.Shl
+                        && ((Instruction.Shl) use.getUser()).getSrc1() == iv.getPhi()
+                        && ((Instruction.Shl) use.getUser()).getSrc2() instanceof Constant.ConstantInt) {
+                    // iv << k 即 iv * 2^k
+                    int shift = (Integer) ((Constant.ConstantInt) ((Instruction.Shl) use.getUser()).getSrc2()).getConstValue();
+                    factor = Constant.ConstantInt.get(loop.getHeader().getParentFunction().getContext(), 1 << shift);
+                } else {
+                    continue;
+                }
+                Instruction.BinaryOperation mul = (Instruction.BinaryOperation) use.getUser();
+                if (!loop.contains(mul.getParentBlock())) {
+                    continue;
+                }
+                if (factor == iv.getPhi() || !InductionVar.isInvariant(factor, loop)) {
+                    continue;
+                }
+                ArrayList<Instruction.BinaryOperation> group = groups.computeIfAbsent(factor, k -> new ArrayList<>());
+                // iv * iv 之外，同一条乘法只会出现一次
+                if (!group.contains(mul)) {
+                    group.add(mul);
+                }
+            }
+            for (Value factor : groups.keySet()) {
+                reduce(loop, iv, factor, groups.get(factor));
+            }
+        }
+    }
+
+    private void reduce(Loop loop, InductionVar iv, Value factor, ArrayList<Instruction.BinaryOperation> muls) {
+        BasicBlock preheader = loop.getPreheader();
+        BasicBlock latch = loop.getLatch();
+        BasicBlock header = loop.getHeader();
+        Value base = emitMul(preheader, iv.getInit(), factor);
+        Value stride = emitMul(preheader, iv.getStep(), factor);
+
+        ArrayList<Value> values = new ArrayList<>();
+        values.add(base);
+        ArrayList<BasicBlock> blocks = new ArrayList<>();
+        blocks.add(preheader);
+        Instruction.Phi phi = new Instruction.Phi(header, Type.BasicType.I32_TYPE, values, blocks);
+        phi.remove();
+        header.addInstFirst(phi);
+
+        Instruction term = latch.getLastInst();
+        Instruction.Add next = new Instruction.Add(latch, Type.BasicType.I32_TYPE, phi, stride);
+        next.remove();
+        latch.getInstructions().insertBefore(next, term);
+        phi.addIncoming(next, latch);
+
+        for (Instruction.BinaryOperation mul : muls) {
+            mul.replaceAllUsesWith(phi);
+            mul.delete();
+        }
+    }
+
+    /**
+     * 在 block 的终结指令前计算 a * b，常量直接折叠
+     */
+    private static Value emitMul(BasicBlock block, Value a, Value b) {
+        if (a instanceof Constant.ConstantInt && b instanceof Constant.ConstantInt) {
+            return Constant.ConstantInt.get(block.getParentFunction().getContext(), (Integer) ((Constant.ConstantInt) a).getConstValue()
+                    * (Integer) ((Constant.ConstantInt) b).getConstValue());
+        }
+        if (a instanceof Constant.ConstantInt && (Integer) ((Constant.ConstantInt) a).getConstValue() == 1) {
+            return b;
+        }
+        if (b instanceof Constant.ConstantInt && (Integer) ((Constant.ConstantInt) b).getConstValue() == 1) {
+            return a;
+        }
+        Instruction term = block.getLastInst();
+        Instruction.Mul mul = new Instruction.Mul(block, Type.BasicType.I32_TYPE, a, b);
+        mul.remove();
+        block.getInstructions().insertBefore(mul, term);
+        return mul;
+    }
+}
@@ -0,0 +1,332 @@
+package midend;
+
+import mir.*;
+import mir.Module;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+/**
+ * 常数次数循环的展开，处理 Visitor 生成的 while / for 经 Mem2Reg 后的形状：
+ * header 只有 phi、一条 icmp 与条件跳转，循环体为单个块（即 latch），只从 header 退出
+ * 1. 归纳变量初值、步长与比较的另一侧均为常量时模拟求出次数 n
+ * 2. n * 循环体大小不超过 FULL_UNROLL_SIZE 时完全展开：n 份循环体顺次放进一个新块，循环本身删除
+ * 3. 否则按 factor 部分展开：循环体内复制 factor 份，header 的比较改为 iv != init + (n / factor) * factor * step，
+ *    余下 n % factor 轮在出口前直线执行
+ * 需要 LoopInfo，每次改动后合并基本块并重建分析，内层循环完全展开后外层循环可能随之满足条件，
+ * 结束时控制流图、支配树与 LoopInfo 都是有效的
+ */
+public class LoopUnroll {
+    public static final int DEFAULT_FACTOR = 4;
+    private static final int FULL_UNROLL_SIZE = 256;
+    private static final int PARTIAL_UNROLL_SIZE = 128;
+    // 模拟求次数的上限
+    private static final int MAX_TRIP_COUNT = 1 << 20;
+
+    private final int factor;
+    private Function function;
+    // 已部分展开的循环，不再重复展开
+    private final HashSet<BasicBlock> unrolled = new HashSet<>();
+    private int blockCount = 0;
+
+    public LoopUnroll() {
+        this(DEFAULT_FACTOR);
+    }
+
+    /**
+     * factor 不大于 1 时只做完全展开
+     */
+    public LoopUnroll(int factor) {
+        this.factor = factor;
+    }
+
+    public void run(Module module) {
+        for (Function function : module.getFuncSet()) {
+            if (function.isExternal()) {
+                continue;
+            }
+            runOnFunction(function);
+        }
+    }
+
+    public void runOnFunction(Function function) {
+        this.function = function;
+        unrolled.clear();
+        while (true) {
+            boolean changed = false;
+            // 内层循环在前
+            for (Loop loop : function.getLoopInfo().getLoops()) {
+                if (!unrolled.contains(loop.getHeader()) && tryUnroll(loop)) {
+                    changed = true;
+                    break;
+                }
+            }
+            if (!changed) {
+                break;
+            }
+            function.invalidateLoopInfo();
+            new DeadCodeDelete().mergeBlocks(function);
+            function.buildDominanceGraph();
+            function.buildLoopInfo();
+        }
+    }
+
+    private static Integer constOf(Value value) {
+        return value instanceof Constant.ConstantInt ? (Integer) ((Constant.ConstantInt) value).getConstValue() : null;
+    }
+
+    private static Instruction.Icmp.CondCode swap(Instruction.Icmp.CondCode condCode) {
+        return switch (condCode) {
+            case SGT -> Instruction.Icmp.CondCode.SLT;
+            case SGE -> Instruction.Icmp.CondCode.SLE;
+            case SLT -> Instruction.Icmp.CondCode.SGT;
+            case SLE -> Instruction.Icmp.CondCode.SGE;
+            default -> condCode;
+        };
+    }
+
+    private static boolean test(Instruction.Icmp.CondCode condCode, long x, long y) {
+        return switch (condCode) {
+            case EQ -> x == y;
+            case NE -> x != y;
+            case SGT -> x > y;
+            case SGE -> x >= y;
+            case SLT -> x < y;
+            case SLE -> x <= y;
+        };
+    }
+
+    /**
+     * 模拟循环条件求出执行次数，超出上限或 iv 溢出时返回 -1
+     */
+    private static int tripCount(Instruction.Icmp.CondCode condCode, int init, int step, int bound) {
+        long v = init;
+        int n = 0;
+        while (test(condCode, v, bound)) {
+            n++;
+            v += step;
+            if (n > MAX_TRIP_COUNT || v > Integer.MAX_VALUE || v < Integer.MIN_VALUE) {
+                return -1;
+            }
+        }
+        return n;
+    }
+
+    private boolean tryUnroll(Loop loop) {
+        if (!loop.isCanonical() || loop.getBlocks().size() != 2) {
+            return false;
+        }
+        BasicBlock header = loop.getHeader();
+        BasicBlock body = loop.getLatch();
+        BasicBlock preheader = loop.getPreheader();
+        if (body == header || body.getSucBlocks().size() != 1) {
+            return false;
+        }
+        // header：phi、icmp、br
+        if (!(header.getLastInst() instanceof Instruction.Branch)) {
+            return false;
+        }
+        Instruction.Branch br = (Instruction.Branch) header.getLastInst();
+        if (br.getThenBlock() != body || loop.contains(br.getElseBlock())
+                || !(br.getCond() instanceof Instruction.Icmp)) {
+            return false;
+        }
+        Instruction.Icmp cmp = (Instruction.Icmp) br.getCond();
+        if (cmp.getParentBlock() != header || cmp.getUses().size() != 1) {
+            return false;
+        }
+        ArrayList<Instruction.Phi> phis = new ArrayList<>();
+        for (Instruction inst : header.getInstructions()) {
+            if (inst instanceof Instruction.Phi) {
+                phis.add((Instruction.Phi) inst);
+            } else if (inst != cmp && inst != br) {
+                return false;
+            }
+        }
+        ArrayList<Instruction> bodyInsts = new ArrayList<>();
+        for (Instruction inst : body.getInstructions()) {
+            if (inst instanceof Instruction.Phi) {
+                return false;
+            }
+            if (!(inst instanceof Instruction.Terminator)) {
+                bodyInsts.add(inst);
+            }
+        }
+
+        // 次数
+        int n = -1;
+        for (InductionVar iv : InductionVar.findAll(loop)) {
+            Integer init = constOf(iv.getInit());
+            Integer step = constOf(iv.getStep());
+            if (init == null || step == null || step == 0) {
+                continue;
+            }
+            Instruction.Icmp.CondCode condCode;
+            Integer bound;
+            if (cmp.getSrc1() == iv.getPhi()) {
+                condCode = cmp.getCondCode();
+                bound = constOf(cmp.getSrc2());
+            } else if (cmp.getSrc2() == iv.getPhi()) {
+                condCode = swap(cmp.getCondCode());
+                bound = constOf(cmp.getSrc1());
+            } else {
+                continue;
+            }
+            if (bound == null) {
+                continue;
+            }
+            n = tripCount(condCode, init, step, bound);
+            if (n >= 0) {
+                if (n * (long) bodyInsts.size() <= FULL_UNROLL_SIZE) {
+                    fullUnroll(loop, phis, bodyInsts, n);
+                    return true;
+                }
+                int f = factor;
+                while (f > 1 && f * bodyInsts.size() > PARTIAL_UNROLL_SIZE) {
+                    f /= 2;
+                }
+                if (f > 1 && n >= 2 * f) {
+                    partialUnroll(loop, phis, bodyInsts, iv, cmp, n, f);
+                    unrolled.add(header);
+                    return true;
+                }
+            }
+            return false;
+        }
+        return false;
+    }
+
+    /**
+     * 在 block 末尾依次放入 count 份循环体，header 的 phi 初始取 values 中的值，
+     * latchValues 为原循环体传回 header 的值，返回执行完之后各 phi 对应的值
+     */
+    private static LinkedHashMap<Instruction.Phi, Value> emitCopies(BasicBlock block, ArrayList<Instruction> bodyInsts,
+                                                                   LinkedHashMap<Instruction.Phi, Value> latchValues,
+                                                                   LinkedHashMap<Instruction.Phi, Value> values, int count) {
+        LinkedHashMap<Instruction.Phi, Value> cur = values;
+        for (int i = 0; i < count; i++) {
+            CloneInfo cloneInfo = new CloneInfo();
+            for (Instruction.Phi phi : cur.keySet()) {
+                cloneInfo.addValueReflect(phi, cur.get(phi));
+            }
+            for (Instruction inst : bodyInsts) {
+                inst.cloneToBBAndAddInfo(block, cloneInfo).fix(cloneInfo);
+            }
+            LinkedHashMap<Instruction.Phi, Value> next = new LinkedHashMap<>();
+            for (Instruction.Phi phi : cur.keySet()) {
+                next.put(phi, cloneInfo.getReflectedValue(latchValues.get(phi)));
+            }
+            cur = next;
+        }
+        return cur;
+    }
+
+    private BasicBlock newBlockBefore(BasicBlock target, String kind) {
+        BasicBlock block = new BasicBlock(target.getLabel() + "_" + kind + "_" + blockCount++, function);
+        block.remove();
+        function.getBlocks().insertBefore(block, target);
+        return block;
+    }
+
+    private static LinkedHashMap<Instruction.Phi, Value> incomingValues(ArrayList<Instruction.Phi> phis, BasicBlock block) {
+        LinkedHashMap<Instruction.Phi, Value> values = new LinkedHashMap<>();
+        for (Instruction.Phi phi : phis) {
+            values.put(phi, phi.getOptionalValue(phi.getIncomingIndex(block)));
+        }
+        return values;
+    }
+
+    /**
+     * header 的 phi 在循环外的使用者，需在改写控制流之前收集
+     */
+    private static LinkedHashMap<Instruction.Phi, ArrayList<User>> outsideUsers(Loop loop, ArrayList<Instruction.Phi> phis) {
+        LinkedHashMap<Instruction.Phi, ArrayList<User>> users = new LinkedHashMap<>();
+        for (Instruction.Phi phi : phis) {
+            ArrayList<User> list = new ArrayList<>();
+            for (Use use : phi.getUses()) {
+                User user = use.getUser();
+                if (!loop.contains(((Instruction) user).getParentBlock()) && !list.contains(user)) {
+                    list.add(user);
+                }
+            }
+            users.put(phi, list);
+        }
+        return users;
+    }
+
+    /**
+     * 出口处 header 的 phi 改为 block 结束时的值，出口 phi 的来源块 header 改为 block
+     */
+    private static void rewriteExit(BasicBlock header, BasicBlock exit, BasicBlock block,
+                                    LinkedHashMap<Instruction.Phi, ArrayList<User>> users,
+                                    LinkedHashMap<Instruction.Phi, Value> finalValues) {
+        for (Instruction.Phi phi : users.keySet()) {
+            for (User user : users.get(phi)) {
+                user.replaceUseOfWith(phi, finalValues.get(phi));
+            }
+        }
+        for (Instruction inst : exit.getInstructions()) {
+            if (!(inst instanceof Instruction.Phi)) {
+                break;
+            }
+            ((Instruction.Phi) inst).replaceIncomingBlock(header, block);
+        }
+    }
+
+    private void fullUnroll(Loop loop, ArrayList<Instruction.Phi> phis, ArrayList<Instruction> bodyInsts, int n) {
+        BasicBlock header = loop.getHeader();
+        BasicBlock body = loop.getLatch();
+        BasicBlock preheader = loop.getPreheader();
+        BasicBlock exit = ((Instruction.Branch) header.getLastInst()).getElseBlock();
+        LinkedHashMap<Instruction.Phi, ArrayList<User>> users = outsideUsers(loop, phis);
+
+        BasicBlock block = newBlockBefore(exit, "unroll");
+        LinkedHashMap<Instruction.Phi, Value> finalValues = emitCopies(block, bodyInsts, incomingValues(phis, body),
+                incomingValues(phis, preheader), n);
+        new Instruction.Jump(block, exit);
+        preheader.getLastInst().replaceUseOfWith(header, block);
+        rewriteExit(header, exit, block, users, finalValues);
+        // header 与循环体不再可达，由 ControlFlowGraph 删除
+        function.buildControlFlowGraph();
+    }
+
+    private void partialUnroll(Loop loop, ArrayList<Instruction.Phi> phis, ArrayList<Instruction> bodyInsts,
+                               InductionVar iv, Instruction.Icmp cmp, int n, int f) {
+        BasicBlock header = loop.getHeader();
+        BasicBlock body = loop.getLatch();
+        Instruction.Branch br = (Instruction.Branch) header.getLastInst();
+        BasicBlock exit = br.getElseBlock();
+        LinkedHashMap<Instruction.Phi, ArrayList<User>> users = outsideUsers(loop, phis);
+        LinkedHashMap<Instruction.Phi, Value> latchValues = incomingValues(phis, body);
+
+        // 循环体内追加 f - 1 份，原有指令即第一份
+        body.getLastInst().delete();
+        LinkedHashMap<Instruction.Phi, Value> unrolledValues = emitCopies(body, bodyInsts, latchValues, latchValues, f - 1);
+        new Instruction.Jump(body, header);
+        for (Instruction.Phi phi : phis) {
+            phi.setIncomingValue(body, unrolledValues.get(phi));
+        }
+
+        // 主循环执行 n / f 轮
+        int init = constOf(iv.getInit());
+        int step = constOf(iv.getStep());
+        Instruction.Icmp newCmp = new Instruction.Icmp(header, Instruction.Icmp.CondCode.NE, iv.getPhi(),
+                Constant.ConstantInt.get(function.getContext(), init + (n / f) * f * step));
+        newCmp.remove();
+        header.getInstructions().insertBefore(newCmp, br);
+        br.replaceUseOfWith(cmp, newCmp);
+        cmp.delete();
+
+        // 余下的轮次在出口前执行
+        BasicBlock block = newBlockBefore(exit, "remainder");
+        LinkedHashMap<Instruction.Phi, Value> exitValues = new LinkedHashMap<>();
+        for (Instruction.Phi phi : phis) {
+            exitValues.put(phi, phi);
+        }
+        LinkedHashMap<Instruction.Phi, Value> finalValues = emitCopies(block, bodyInsts, latchValues, exitValues, n % f);
+        new Instruction.Jump(block, exit);
+        br.replaceUseOfWith(exit, block);
+        rewriteExit(header, exit, block, users, finalValues);
+    }
+}
@@ -0,0 +1,116 @@
+package midend;
+
+import arg.Arg;
+import manager.CompilationContext;
+import mir.BasicBlock;
+import mir.Function;
+import mir.Instruction;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+
+/**
+ * 完全展开后合并基本块的回归测试：
+ * main 中常数次的循环被完全展开，展开出的块链随后由 mergeBlocks 并入前驱，
+ * 之后由 getint 驱动的循环头中 phi 的来源块必须恰好是该块的前驱
+ */
+public class LoopUnrollTest {
+
+    private static final String SOURCE = """
+            void fill(int a[][4], int n) {
+                int i = 0;
+                while (i < n) {
+                    int j = 0;
+                    while (j < 4) {
+                        a[i][j] = i * 4 + j + 1;
+                        j = j + 1;
+                    }
+                    i = i + 1;
+                }
+            }
+
+            int getsum(int a[][4], int n) {
+                int i = 0;
+                int s = 0;
+                while (i < n) {
+                    int j = 0;
+                    while (j < 4) {
+                        s = s + a[i][j];
+                        j = j + 1;
+                    }
+                    i = i + 1;
+                }
+                return s;
+            }
+
+            int main() {
+                int m[3][4];
+                fill(m, 3);
+                int k = 0;
+                int t = 0;
+                while (k < 3) {
+                    t = t + getsum(m, 3);
+                    k = k + 1;
+                }
+                putint(t);
+                putch(10);
+                int n = getint();
+                int x = 0;
+                int r = 1;
+                while (x < n) {
+                    r = r * 3 + getint();
+                    x = x + 1;
+                }
+                putint(r);
+                putch(10);
+                return 0;
+            }
+            """;
+
+    private static void fullUnrollThenMerge() throws Exception {
+        File src = File.createTempFile("unroll", ".sy");
+        File out = File.createTempFile("unroll", ".ll");
+        src.deleteOnExit();
+        out.deleteOnExit();
+        Files.writeString(src.toPath(), SOURCE, StandardCharsets.UTF_8);
+        Arg arg = new Arg(src.getPath(), out.getPath(), out.getPath() + ".error.txt", true);
+        arg.passThreads = 1;
+        new File(arg.errPath).deleteOnExit();
+        CompilationContext context = new CompilationContext(arg);
+        context.compile();
+
+        int phis = 0;
+        for (Function function : context.getModule().getFuncSet()) {
+            if (function.isExternal() || function.isDeleted()) {
+                continue;
+            }
+            function.buildControlFlowGraph();
+            for (BasicBlock block : function.getBlocks()) {
+                HashSet<BasicBlock> preds = new HashSet<>(block.getPreBlocks());
+                for (Instruction inst : block.getInstructions()) {
+                    if (!(inst instanceof Instruction.Phi)) {
+                        break;
+                    }
+                    phis++;
+                    HashSet<BasicBlock> incoming = new HashSet<>(((Instruction.Phi) inst).getIncomingBlocks());
+                    check(incoming.equals(preds), function.getName() + ": " + inst
+                            + " does not match the predecessors of " + block.getLabel());
+                }
+            }
+        }
+        check(phis > 0, "expected the getint-driven loop to keep its phis");
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        fullUnrollThenMerge();
+        System.out.println("LoopUnrollTest passed");
+    }
+}
@@ -1,241 +1,355 @@
 package midend;
 
 import mir.*;
+import mir.Module;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 
+/**
+ * 将标量 Alloc 提升为 SSA 值，所有变量共用一次支配树遍历：
+ * 1. 收集只被 Load / Store 作为地址使用的标量 Alloc
+ * 2. 快速路径：没有 Load 的变量直接删除；只有一个 Store 且支配全部 Load 的变量直接替换；
+ *    def / use 都在同一基本块中的变量在块内顺序扫描一遍
+ * 3. 其余变量按活跃性剪枝插入 phi：只在迭代支配边界中变量入口活跃的块插入
+ * 4. 沿支配树遍历一次，每个变量一个 reachingDef 栈，同时完成所有变量的重命名
+ */
 public class Mem2Reg {
-    private static Function function;
-    // 描述变量， 及其def, use 侧的指令，基本块
-    private static Instruction.Alloc var;
-    private static final ArrayList<Instruction> varNames = new ArrayList<>();
-    private static final HashSet<Instruction> defInsts = new HashSet<>();
-    private static final HashSet<BasicBlock> defBlocks = new HashSet<>();
-    private static final HashSet<Instruction> useInsts = new HashSet<>();
-    private static final HashSet<BasicBlock> useBlocks = new HashSet<>();
-    // 描述重命名过程的reachingDef栈
-    private static final LinkedList<Value> stack = new LinkedList<>();
-
-    public static void run(Function function) {
+    private final Module module;
+    private Function function;
+    // 待提升的变量，下标即变量编号
+    private final ArrayList<Instruction.Alloc> vars = new ArrayList<>();
+    private final HashMap<Instruction.Alloc, Integer> varIndex = new HashMap<>();
+    // 插入的 phi 属于哪个变量
+    private final HashMap<Instruction.Phi, Integer> phiVar = new HashMap<>();
+    // 每个变量的 reachingDef 栈
+    private final ArrayList<ArrayList<Value>> stacks = new ArrayList<>();
+    // 按压栈顺序记录变量编号，离开基本块时据此弹栈
+    private final ArrayList<Integer> defLog = new ArrayList<>();
+
+    public Mem2Reg(Module module) {
+        this.module = module;
+    }
+
+    public void run(Function function) {
         init();
-        // System.out.println("Mem2Reg: " + function.getDescriptor());
-        Mem2Reg.function = function;
-        buildVariableName();
-        for (Instruction varName : varNames) {
-            //System.out.println("Mem2Reg: " + varName.getDescriptor());
-            var = (Instruction.Alloc) varName;
-            buildDefUse();
-            //defUseCheck();
-            //System.out.println("buildDefUse carried ");
-            phiInserting();
-            //System.out.println("phiInserting carried ");
-            renameDfs(function.getEntry());
-            //System.out.println("renameDfs carried ");
-            var.remove();
-            removeDefUse();
-            //System.out.println("removeDefUse carried ");
+        this.function = function;
+        for (Instruction.Alloc alloc : collectPromotable()) {
+            if (!promoteFast(alloc)) {
+                varIndex.put(alloc, vars.size());
+                vars.add(alloc);
+            }
         }
+        if (!vars.isEmpty()) {
+            for (int i = 0; i < vars.size(); i++) {
+                stacks.add(new ArrayList<>());
+                phiInserting(i);
+            }
+            rename();
+            for (Instruction.Alloc var : vars) {
+                removeRemaining(var);
+            }
+        }
+        init();
     }
 
-    private static void init() {
-        var = null;
-        varNames.clear();
-        defInsts.clear();
-        defBlocks.clear();
-        useInsts.clear();
-        useBlocks.clear();
-        stack.clear();
+    private void init() {
+        vars.clear();
+        varIndex.clear();
+        phiVar.clear();
+        stacks.clear();
+        defLog.clear();
     }
 
-    private static void defUseCheck() {
-        System.out.println("defInsts: ");
-        for (Instruction defInst : defInsts) {
-            System.out.println(defInst.getDescriptor());
-        }
-        System.out.println("defBlocks: ");
-        for (BasicBlock defBlock : defBlocks) {
-            System.out.println(defBlock.getLabel());
-        }
-        System.out.println("useInsts: ");
-        for (Instruction useInst : useInsts) {
-            System.out.println(useInst.getDescriptor());
-        }
-        System.out.println("useBlocks: ");
-        for (BasicBlock useBlock : useBlocks) {
-            System.out.println(useBlock.getLabel());
+    /**
+     * 标量 Alloc，且所有使用都是 Load 的地址或 Store 的地址
+     */
+    private ArrayList<Instruction.Alloc> collectPromotable() {
+        ArrayList<Instruction.Alloc> allocs = new ArrayList<>();
+        for (BasicBlock block : function.getBlocks()) {
+            for (Instruction inst : block.getInstructions()) {
+                if (!(inst instanceof Instruction.Alloc) || ((Instruction.Alloc) inst).isArrayAlloc()) {
+                    continue;
+                }
+                boolean promotable = true;
+                for (Use use : inst.getUses()) {
+                    User user = use.getUser();
+                    if (user instanceof Instruction.Load) {
+                        continue;
+                    }
+                    if (user instanceof Instruction.Store && ((Instruction.Store) user).getValue() != inst) {
+                        continue;
+                    }
+                    promotable = false;
+                    break;
+                }
+                if (promotable) {
+                    allocs.add((Instruction.Alloc) inst);
+                }
+            }
         }
+        return allocs;
     }
 
-    private static void removeDefUse() {
-        for (Instruction defInst : defInsts) {
-            if (!(defInst instanceof Instruction.Phi)) {
-                //System.out.println("removeDefUse: " + defInst.toString() + " in " + defInst.getParentBlock().getLabel());
-                defInst.remove();
+    /**
+     * 不需要 phi 的变量直接处理，返回 false 表示交给通用路径
+     */
+    private boolean promoteFast(Instruction.Alloc var) {
+        ArrayList<Instruction.Load> loads = new ArrayList<>();
+        ArrayList<Instruction.Store> stores = new ArrayList<>();
+        HashSet<BasicBlock> blocks = new HashSet<>();
+        for (Use use : var.getUses()) {
+            Instruction user = (Instruction) use.getUser();
+            if (user instanceof Instruction.Load) {
+                loads.add((Instruction.Load) user);
+            } else {
+                stores.add((Instruction.Store) user);
             }
+            blocks.add(user.getParentBlock());
         }
-        for (Instruction useInst : useInsts) {
-            if (!(useInst instanceof Instruction.Phi)) {
-                useInst.remove();
+
+        // 从未被读取
+        if (loads.isEmpty()) {
+            for (Instruction.Store store : stores) {
+                store.delete();
             }
+            var.delete();
+            return true;
         }
-    }
 
-    private static void buildVariableName() {
-        for (BasicBlock block : function.getBlocks()) {
+        // 唯一的 Store 支配所有 Load
+        if (stores.size() == 1) {
+            Instruction.Store store = stores.get(0);
+            BasicBlock defBlock = store.getParentBlock();
+            DominanceGraph dg = function.getDominanceGraph();
+            boolean dominatesAll = true;
+            for (Instruction.Load load : loads) {
+                BasicBlock useBlock = load.getParentBlock();
+                if (useBlock == defBlock
+                        ? !defBlock.getInstructions().comesBefore(store, load)
+                        : !dg.strictlyDominates(defBlock, useBlock)) {
+                    dominatesAll = false;
+                    break;
+                }
+            }
+            if (dominatesAll) {
+                for (Instruction.Load load : loads) {
+                    load.replaceAllUsesWith(store.getValue());
+                    load.delete();
+                }
+                store.delete();
+                var.delete();
+                return true;
+            }
+        }
+
+        // 只在一个基本块中出现，顺序扫描即可
+        if (blocks.size() == 1) {
+            BasicBlock block = blocks.iterator().next();
+            Value cur = module.getUndef(var.getContentType());
             for (Instruction inst : block.getInstructions()) {
-                if (inst instanceof Instruction.Alloc && !((Instruction.Alloc) inst).isArrayAlloc()) {
-                    varNames.add(inst);
+                if (inst instanceof Instruction.Load && ((Instruction.Load) inst).getAddr() == var) {
+                    inst.replaceAllUsesWith(cur);
+                    inst.delete();
+                } else if (inst instanceof Instruction.Store && ((Instruction.Store) inst).getAddr() == var) {
+                    cur = ((Instruction.Store) inst).getValue();
+                    inst.delete();
                 }
             }
+            var.delete();
+            return true;
         }
+        return false;
     }
 
-    private static void buildDefUse() {
-        // Alloc 的地址描述变量名
-        // def-use chain 此时的形式是地址 Alloc(name), Store(def), Load(use) 表征
-        defInsts.clear();
-        defBlocks.clear();
-        useInsts.clear();
-        useBlocks.clear();
+    /**
+     * 变量入口活跃的基本块：块内存在先于任何 Store 的 Load，或者经由不含 Store 的路径到达这样的块
+     */
+    private HashSet<BasicBlock> computeLiveInBlocks(Instruction.Alloc var, HashSet<BasicBlock> defBlocks) {
+        HashSet<BasicBlock> liveIn = new HashSet<>();
+        LinkedList<BasicBlock> W = new LinkedList<>();
+        HashSet<BasicBlock> useBlocks = new HashSet<>();
         for (Use use : var.getUses()) {
-            Instruction user = (Instruction) use.getUser();
-            if (user instanceof Instruction.Store) {
-                // add to defSet
-                defInsts.add(user);
-                // init blocks that contain def
-                defBlocks.add(user.getParentBlock());
+            if (use.getUser() instanceof Instruction.Load) {
+                useBlocks.add(((Instruction) use.getUser()).getParentBlock());
             }
-            if (user instanceof Instruction.Load) {
-                // add to useSet
-                useInsts.add(user);
-                // init blocks that contain use
-                useBlocks.add(user.getParentBlock());
+        }
+        for (BasicBlock block : useBlocks) {
+            if (!defBlocks.contains(block)) {
+                W.add(block);
+                continue;
+            }
+            // 块内既有 def 又有 use，看第一次访问是不是 Load
+            for (Instruction inst : block.getInstructions()) {
+                if (inst instanceof Instruction.Store && ((Instruction.Store) inst).getAddr() == var) {
+                    break;
+                }
+                if (inst instanceof Instruction.Load && ((Instruction.Load) inst).getAddr() == var) {
+                    W.add(block);
+                    break;
+                }
             }
         }
+        // 沿前驱反向传播，遇到 def 块停止
+        while (!W.isEmpty()) {
+            BasicBlock block = W.remove();
+            if (!liveIn.add(block)) {
+                continue;
+            }
+            for (BasicBlock pred : block.getPreBlocks()) {
+                if (!defBlocks.contains(pred) && !liveIn.contains(pred)) {
+                    W.add(pred);
+                }
+            }
+        }
+        return liveIn;
     }
 
     /**
-     * 对变量 var 插入 phi 指令
+     * 对变量 vars[idx] 插入 phi 指令
      */
-    private static void phiInserting() {
+    private void phiInserting(int idx) {
+        Instruction.Alloc var = vars.get(idx);
+        HashSet<BasicBlock> defBlocks = new HashSet<>();
+        for (Use use : var.getUses()) {
+            if (use.getUser() instanceof Instruction.Store) {
+                defBlocks.add(((Instruction) use.getUser()).getParentBlock());
+            }
+        }
+        HashSet<BasicBlock> liveIn = computeLiveInBlocks(var, defBlocks);
+
         // target blocks that phi to be inserted
         HashSet<BasicBlock> F = new HashSet<>();
         /*
-            block that contains definition of var
             迭代支配边界的遍历队列， 迭代方程 DF(S) = DF(S U DF(S))
+            初始化为 S = defBlocks
          */
-        // 初始化为 S = defBlocks
         LinkedList<BasicBlock> W = new LinkedList<>(defBlocks);
-
         while (!W.isEmpty()) {
             BasicBlock X = W.remove();
-            // System.out.println("phiInserting: now x is :" + X.getLabel());
             for (BasicBlock Y : X.getDomFrontiers()) {
-                if (!F.contains(Y)) {
-                    // insert phi
-                    // System.out.println("phiInserting: " + Y.getLabel()+ " "+ X.getLabel());
-                    F.add(Y);
-                    // 加入迭代队列
-                    if (!defBlocks.contains(Y)) {
-                        W.add(Y);
-                    }
+                if (F.add(Y) && !defBlocks.contains(Y)) {
+                    W.add(Y);
                 }
             }
         }
-        // 输出F 集合
-//        for (BasicBlock basicBlock : F) {
-//             System.out.println("phiInserting: " + basicBlock.getLabel());
-//        }
 
+        Type type = var.getContentType();
         for (BasicBlock insertBlock : F) {
-            // 用new Value构建相互区分的待调整的变量地址
-            LinkedList<Value> operands = new LinkedList<>();
+            // 变量在此不活跃，phi 不会被使用
+            if (!liveIn.contains(insertBlock)) {
+                continue;
+            }
+            // 来源取值先置为 undef，重命名时按来源块回填
+            ArrayList<Value> operands = new ArrayList<>();
             for (BasicBlock pred : insertBlock.getPreBlocks()) {
-                operands.add(new Value(var.getContentType()));
+                operands.add(module.getUndef(type));
             }
-            Instruction phi = new Instruction.Phi(insertBlock, var.getContentType(), operands);
-
-            // 维护def, use 指令集
-            defInsts.add(phi);
-            useInsts.add(phi);
+            Instruction.Phi phi = new Instruction.Phi(insertBlock, type, operands, insertBlock.getPreBlocks());
+            phiVar.put(phi, idx);
 
             // 调整到指令队列头部
             phi.remove();
             insertBlock.addInstFirst(phi);
-            // System.out.println("phiInserting: insert " + phi.getDescriptor() + " to " + insertBlock.getLabel());
         }
     }
 
-    private static Value getReachingDef(Type type) {
+    private Value getReachingDef(int idx) {
+        ArrayList<Value> stack = stacks.get(idx);
         if (stack.isEmpty()) {
-            // 尝试用 Value 代替
-            return GlobalValue.getUndef(type);
-        } else {
-            return stack.getLast();
+            return module.getUndef(vars.get(idx).getContentType());
         }
+        return stack.get(stack.size() - 1);
     }
 
-    private static void renamePhi(BasicBlock src) {
-        for (BasicBlock block : src.getSucBlocks()) {
-            for (Instruction inst : block.getInstructions()) {
+    private void pushDef(int idx, Value value) {
+        stacks.get(idx).add(value);
+        defLog.add(idx);
+    }
+
+    private Integer promotedIndex(Value addr) {
+        return addr instanceof Instruction.Alloc ? varIndex.get(addr) : null;
+    }
+
+    private void renameBlock(BasicBlock cur) {
+        for (Instruction inst : cur.getInstructions()) {
+            if (inst instanceof Instruction.Phi) {
+                Integer idx = phiVar.get(inst);
+                if (idx != null) {
+                    pushDef(idx, inst);
+                }
+            } else if (inst instanceof Instruction.Load) {
+                Integer idx = promotedIndex(((Instruction.Load) inst).getAddr());
+                if (idx != null) {
+                    inst.replaceAllUsesWith(getReachingDef(idx));
+                    inst.delete();
+                }
+            } else if (inst instanceof Instruction.Store) {
+                Integer idx = promotedIndex(((Instruction.Store) inst).getAddr());
+                if (idx != null) {
+                    pushDef(idx, ((Instruction.Store) inst).getValue());
+                    inst.delete();
+                }
+            }
+        }
+        // 回填后继块中 phi 来自 cur 的取值
+        for (BasicBlock suc : cur.getSucBlocks()) {
+            for (Instruction inst : suc.getInstructions()) {
                 if (!(inst instanceof Instruction.Phi)) {
                     break;
                 }
-                if (useInsts.contains(inst)) {
-                    // System.out.println("renamePhi: " + inst.getDescriptor());
-                    // replace phi's use with reachingDef
-                    int idx = block.getPreBlocks().indexOf(src);
-                    ((Instruction.Phi) inst).replaceOptionalValueAtWith(idx, getReachingDef(inst.getType()));
+                Integer idx = phiVar.get(inst);
+                if (idx != null) {
+                    ((Instruction.Phi) inst).setIncomingValue(cur, getReachingDef(idx));
                 }
             }
         }
     }
 
-    private static void renameDfs(BasicBlock cur) {
-
-        // print cur Block
-
-        int count = 0;
-        for (Instruction inst : cur.getInstructions()) {
+    /**
+     * 非递归地先序遍历支配树，离开子树时按 defLog 弹出该子树压入的定义
+     */
+    private void rename() {
+        BasicBlock entry = function.getEntry();
+        ArrayDeque<Iterator<BasicBlock>> iters = new ArrayDeque<>();
+        ArrayDeque<Integer> marks = new ArrayDeque<>();
+        marks.push(defLog.size());
+        renameBlock(entry);
+        iters.push(entry.getDomTreeChildren().iterator());
+        while (!iters.isEmpty()) {
+            Iterator<BasicBlock> iter = iters.peek();
+            if (iter.hasNext()) {
+                BasicBlock child = iter.next();
+                marks.push(defLog.size());
+                renameBlock(child);
+                iters.push(child.getDomTreeChildren().iterator());
+            } else {
+                iters.pop();
+                int mark = marks.pop();
+                while (defLog.size() > mark) {
+                    ArrayList<Value> stack = stacks.get(defLog.remove(defLog.size() - 1));
+                    stack.remove(stack.size() - 1);
+                }
+            }
+        }
+    }
 
-            // 输出当前指令的前后指令
-            // System.out.println(inst.getDescriptor());
-            // used by non-phi-function
-            if (useInsts.contains(inst) && !(inst instanceof Instruction.Phi)) {
-                assert inst instanceof Instruction.Load;
-                inst.replaceAllUsesWith(getReachingDef(((Instruction.Load) inst).getInnerType()));
-            }
-            // def
-            if (defInsts.contains(inst)) {
-                assert inst instanceof Instruction.Store || inst instanceof Instruction.Phi;
-                if (inst instanceof Instruction.Store) {
-                    stack.add(((Instruction.Store) inst).getValue());
-                    // print inst, descriptor with its value
-                    // System.out.println("renameDfs: " + inst.getDescriptor() + " : " + inst + " " + ((Instruction.Store) inst).getValue().getDescriptor());
-                } else {
-                    stack.add(inst);
-                }
-                count++;
-            }
-        }
-        // print finished replace
-        //System.out.println("renameDfs finished replace");
-        // rename phi
-        renamePhi(cur);
-        //System.out.println("renameDfs finished renamePhi");
-        // dfs
-        for (BasicBlock suc : cur.getDomTreeChildren()) {
-            renameDfs(suc);
-        }
-        //System.out.println("renameDfs finished dfs");
-        // pop stack
-        while (count > 0) {
-            stack.removeLast();
-            count--;
-        }
-        //System.out.println("renameDfs finished pop stack");
+    /**
+     * 支配树遍历不到的块中残留的访问，读取视为 undef
+     */
+    private void removeRemaining(Instruction.Alloc var) {
+        for (Use use : var.getUses()) {
+            Instruction user = (Instruction) use.getUser();
+            if (user instanceof Instruction.Load) {
+                user.replaceAllUsesWith(module.getUndef(var.getContentType()));
+            }
+            user.delete();
+        }
+        var.delete();
     }
 
 }
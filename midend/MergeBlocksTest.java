@@ -0,0 +1,60 @@
+package midend;
+
+import mir.BasicBlock;
+import mir.Constant;
+import mir.Function;
+import mir.IRContext;
+import mir.Instruction;
+import mir.Type;
+import mir.Value;
+
+import java.util.List;
+
+/**
+ * DeadCodeDelete.mergeBlocks 在 SSA 上的回归测试：
+ * 块 B 先并入 C，之后 A 再并入 B，D 中 phi 的来源块必须改为 A，不能留下已删除的 B 或 C
+ */
+public class MergeBlocksTest {
+
+    private static void chainedMerge() {
+        IRContext context = new IRContext();
+        Function func = new Function(context, Type.FunctionType.FUNC_TYPE, "main");
+        // 块的顺序决定 mergeBlocks 的处理顺序：B 先于 A 处理
+        BasicBlock entry = new BasicBlock("entry", func);
+        BasicBlock B = new BasicBlock("B", func);
+        BasicBlock C = new BasicBlock("C", func);
+        BasicBlock A = new BasicBlock("A", func);
+        BasicBlock D = new BasicBlock("D", func);
+        Value cond = new Value(Type.BasicType.I1_TYPE);
+        new Instruction.Branch(entry, cond, A, D);
+        new Instruction.Jump(A, B);
+        new Instruction.Jump(B, C);
+        new Instruction.Jump(C, D);
+        Instruction.Phi phi = new Instruction.Phi(D, Type.BasicType.I32_TYPE,
+                List.of(Constant.ConstantInt.get(context, 1), Constant.ConstantInt.get(context, 2)), List.of(C, entry));
+        new Instruction.Return(D, phi);
+
+        new DeadCodeDelete().mergeBlocks(func);
+
+        check(func.getBlocks().getSize() == 3, "expected entry, A, D after merging, got " + func.getBlocks().getSize());
+        check(phi.getIncomingBlocks().contains(A) && phi.getIncomingBlocks().contains(entry),
+                "phi incoming blocks should be [A, entry], got " + labels(phi.getIncomingBlocks()));
+        check(D.getPreBlocks().contains(A) && D.getPreBlocks().size() == 2,
+                "D predecessors should be [entry, A], got " + labels(D.getPreBlocks()));
+    }
+
+    private static List<String> labels(List<BasicBlock> blocks) {
+        return blocks.stream().map(BasicBlock::getLabel).toList();
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+    public static void main(String[] args) {
+        chainedMerge();
+        System.out.println("MergeBlocksTest passed");
+    }
+}
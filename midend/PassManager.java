@@ -0,0 +1,272 @@
+package midend;
+
+import mir.BasicBlock;
+import mir.Function;
+import mir.Module;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * 中端流水线的调度
+ * 每个 pass 声明运行前需要的分析（required）与运行后仍然有效的分析（preserved）：
+ * 1. 分析结果按函数缓存，pass 运行前只重建需要且已失效的分析（CFG <- 支配树 <- LoopInfo，后者依赖前者）
+ * 2. pass 运行后，未被 preserve 的分析标记为失效，LoopInfo 失效时同时清除块上残留的循环信息
+ * 3. 开启计时时记录每个 pass 的耗时与前后的指令条数，以及各分析的重建次数与耗时
+ * 模块 pass 作用于整个模块，其 required 对所有函数生效；函数 pass 逐个函数运行
+ * 给定线程池时，函数 pass 与模块 pass 前的分析重建按函数并行，模块 pass 是屏障：
+ * 1. 函数 pass 只修改所处理的函数，新建的 pass 对象只被一个线程使用；
+ *    跨函数共享的值（常量、全局变量、函数）的使用链加锁修改
+ * 2. 共享值使用链中不同函数的 Use 的先后与线程调度有关，模块 pass 不能依赖这一顺序，
+ *    输出因此与串行运行相同
+ */
+public class PassManager {
+
+    public enum Analysis {
+        CFG("cfg"),
+        DOMINANCE("dominance"),
+        LOOPS("loops");
+
+        private final String str;
+
+        Analysis(String str) {
+            this.str = str;
+        }
+
+        public String toString() {
+            return str;
+        }
+    }
+
+    public static final EnumSet<Analysis> NONE = EnumSet.noneOf(Analysis.class);
+    public static final EnumSet<Analysis> ALL = EnumSet.allOf(Analysis.class);
+
+    private static class Pass {
+        final String name;
+        final EnumSet<Analysis> required;
+        final EnumSet<Analysis> preserved;
+        // 二者恰有一个非空
+        final Consumer<Module> modulePass;
+        final Consumer<Function> functionPass;
+
+        Pass(String name, EnumSet<Analysis> required, EnumSet<Analysis> preserved,
+             Consumer<Module> modulePass, Consumer<Function> functionPass) {
+            this.name = name;
+            this.required = closure(required);
+            this.preserved = preserved;
+            this.modulePass = modulePass;
+            this.functionPass = functionPass;
+        }
+    }
+
+    /**
+     * 一次 pass 运行的统计
+     */
+    private static class Record {
+        final String name;
+        final long nanos;
+        final int instsBefore;
+        final int instsAfter;
+
+        Record(String name, long nanos, int instsBefore, int instsAfter) {
+            this.name = name;
+            this.nanos = nanos;
+            this.instsBefore = instsBefore;
+            this.instsAfter = instsAfter;
+        }
+    }
+
+    private final ArrayList<Pass> passes = new ArrayList<>();
+    private final boolean timing;
+    // 为 null 时串行
+    private final ExecutorService pool;
+    // 函数 -> 当前有效的分析，并行阶段开始前为每个函数建好表项，之后只读
+    private final HashMap<Function, EnumSet<Analysis>> valid = new HashMap<>();
+    private final ArrayList<Record> records = new ArrayList<>();
+    // 按 Analysis.ordinal() 计数
+    private final AtomicLongArray analysisRuns = new AtomicLongArray(Analysis.values().length);
+    private final AtomicLongArray analysisNanos = new AtomicLongArray(Analysis.values().length);
+
+    public PassManager(boolean timing) {
+        this(timing, null);
+    }
+
+    public PassManager(boolean timing, ExecutorService pool) {
+        this.timing = timing;
+        this.pool = pool;
+    }
+
+    /**
+     * 补全依赖：LoopInfo 需要支配树，支配树需要 CFG
+     */
+    private static EnumSet<Analysis> closure(EnumSet<Analysis> analyses) {
+        EnumSet<Analysis> res = EnumSet.copyOf(analyses);
+        if (res.contains(Analysis.LOOPS)) {
+            res.add(Analysis.DOMINANCE);
+        }
+        if (res.contains(Analysis.DOMINANCE)) {
+            res.add(Analysis.CFG);
+        }
+        return res;
+    }
+
+    public PassManager addModulePass(String name, Consumer<Module> pass,
+                                     EnumSet<Analysis> required, EnumSet<Analysis> preserved) {
+        passes.add(new Pass(name, required, preserved, pass, null));
+        return this;
+    }
+
+    public PassManager addFunctionPass(String name, Consumer<Function> pass,
+                                       EnumSet<Analysis> required, EnumSet<Analysis> preserved) {
+        passes.add(new Pass(name, required, preserved, null, pass));
+        return this;
+    }
+
+    public void run(Module module) {
+        for (Pass pass : passes) {
+            long start = timing ? System.nanoTime() : 0;
+            int before = timing ? countInsts(module) : 0;
+            ArrayList<Function> functions = new ArrayList<>();
+            for (Function function : module.getFuncSet()) {
+                if (!function.isExternal()) {
+                    functions.add(function);
+                    valid.computeIfAbsent(function, k -> EnumSet.noneOf(Analysis.class));
+                }
+            }
+            if (pass.modulePass != null) {
+                forEach(functions, function -> require(function, pass.required));
+                pass.modulePass.accept(module);
+                for (Function function : module.getFuncSet()) {
+                    if (!function.isExternal()) {
+                        invalidate(function, pass.preserved);
+                    }
+                }
+            } else {
+                forEach(functions, function -> {
+                    require(function, pass.required);
+                    pass.functionPass.accept(function);
+                    invalidate(function, pass.preserved);
+                });
+            }
+            if (timing) {
+                records.add(new Record(pass.name, System.nanoTime() - start, before, countInsts(module)));
+            }
+        }
+        valid.clear();
+    }
+
+    /**
+     * 对每个函数执行 action，有线程池且函数多于一个时并行，全部完成后返回
+     * 任务中的异常在等待时重新抛出
+     */
+    private void forEach(ArrayList<Function> functions, Consumer<Function> action) {
+        if (pool == null || functions.size() < 2) {
+            functions.forEach(action);
+            return;
+        }
+        ArrayList<Future<?>> tasks = new ArrayList<>();
+        for (Function function : functions) {
+            tasks.add(pool.submit(() -> action.accept(function)));
+        }
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 保证 function 的这些分析有效，失效的按依赖顺序重建
+     * pass 内部只在部分函数上需要分析时也可以直接调用，并行时只能针对当前处理的函数
+     */
+    public void require(Function function, EnumSet<Analysis> analyses) {
+        EnumSet<Analysis> cur = valid.computeIfAbsent(function, k -> EnumSet.noneOf(Analysis.class));
+        if (!function.isLoopInfoValid()) {
+            cur.remove(Analysis.LOOPS);
+        }
+        for (Analysis analysis : closure(analyses)) {
+            if (cur.contains(analysis)) {
+                continue;
+            }
+            long start = timing ? System.nanoTime() : 0;
+            switch (analysis) {
+                case CFG -> function.buildControlFlowGraph();
+                case DOMINANCE -> function.buildDominanceGraph();
+                // 规范化循环时会插入基本块，并重建 CFG 与支配树
+                case LOOPS -> function.buildLoopInfo();
+            }
+            cur.add(analysis);
+            if (timing) {
+                analysisRuns.incrementAndGet(analysis.ordinal());
+                analysisNanos.addAndGet(analysis.ordinal(), System.nanoTime() - start);
+            }
+        }
+    }
+
+    private void invalidate(Function function, EnumSet<Analysis> preserved) {
+        EnumSet<Analysis> cur = valid.get(function);
+        if (cur != null) {
+            cur.retainAll(preserved);
+            // 依赖的分析失效时，依赖它的分析也随之失效
+            if (!cur.contains(Analysis.CFG)) {
+                cur.clear();
+            } else if (!cur.contains(Analysis.DOMINANCE)) {
+                cur.remove(Analysis.LOOPS);
+            }
+        }
+        if (cur == null || !cur.contains(Analysis.LOOPS)) {
+            function.invalidateLoopInfo();
+        }
+    }
+
+    private static int countInsts(Module module) {
+        int count = 0;
+        for (Function function : module.getFuncSet()) {
+            if (function.isExternal()) {
+                continue;
+            }
+            for (BasicBlock block : function.getBlocks()) {
+                count += block.getInstructions().getSize();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 输出各 pass 的耗时与指令条数变化，pass 的耗时包含为它重建分析的时间
+     * 并行时 pass 的耗时是墙钟时间，分析的耗时是各线程之和
+     */
+    public void printReport(Appendable out, String unitName) throws IOException {
+        out.append("===== pass report: ").append(unitName).append(" =====\n");
+        out.append(String.format("%-28s %10s %8s %8s%n", "pass", "time(ms)", "insts", "delta"));
+        long total = 0;
+        for (Record record : records) {
+            total += record.nanos;
+            out.append(String.format("%-28s %10.3f %8d %+8d%n", record.name, record.nanos / 1e6,
+                    record.instsAfter, record.instsAfter - record.instsBefore));
+        }
+        out.append(String.format("%-28s %10.3f%n", "total", total / 1e6));
+        for (Analysis analysis : Analysis.values()) {
+            out.append(String.format("  analysis %-18s %10.3f %8d runs%n", analysis.toString(),
+                    analysisNanos.get(analysis.ordinal()) / 1e6, analysisRuns.get(analysis.ordinal())));
+        }
+    }
+}
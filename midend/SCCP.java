@@ -0,0 +1,347 @@
+package midend;
+
+import mir.*;
+import mir.Module;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+/**
+ * 稀疏条件常量传播（Wegman-Zadeck），在 SSA 上运行
+ * 格：TOP（尚未确定）> 常量 > BOTTOM（非常量），只有可执行边才参与 phi 的求值
+ * 1. 从入口出发，交替处理 CFG 工作表（新可执行的边）与 SSA 工作表（格值下降的指令）直至不动点
+ * 2. 条件为常量的 Branch 改为 Jump，并删去未走的边在后继 phi 中的取值
+ * 3. 不可达块由 ControlFlowGraph 删除（同时删去其在可达后继 phi 中的取值）
+ * 4. 格值为常量的指令替换为常量，最后交给 DeadCodeDelete 合并基本块
+ */
+public class SCCP {
+    private static final Object TOP = new Object();
+    private static final Object BOTTOM = new Object();
+
+    private Function function;
+    // 指令的格值：TOP / BOTTOM / Integer / Float
+    private final HashMap<Value, Object> lattice = new HashMap<>();
+    private final HashSet<BasicBlock> executableBlocks = new HashSet<>();
+    private final HashMap<BasicBlock, HashSet<BasicBlock>> executableEdges = new HashMap<>();
+    private final LinkedList<BasicBlock> blockWorkList = new LinkedList<>();
+    private final LinkedList<Instruction> instWorkList = new LinkedList<>();
+
+    public void run(Module module) {
+        for (Function function : module.getFuncSet()) {
+            if (function.isExternal()) {
+                continue;
+            }
+            runOnFunction(function);
+        }
+    }
+
+    public void runOnFunction(Function function) {
+        function.invalidateLoopInfo();
+        solve(function);
+        new DeadCodeDelete().mergeBlocks(function);
+    }
+
+    private void init() {
+        lattice.clear();
+        executableBlocks.clear();
+        executableEdges.clear();
+        blockWorkList.clear();
+        instWorkList.clear();
+    }
+
+    private void solve(Function function) {
+        init();
+        this.function = function;
+        executableBlocks.add(function.getEntry());
+        blockWorkList.add(function.getEntry());
+        while (!blockWorkList.isEmpty() || !instWorkList.isEmpty()) {
+            while (!instWorkList.isEmpty()) {
+                Instruction inst = instWorkList.remove();
+                for (Use use : inst.getUses()) {
+                    Instruction user = (Instruction) use.getUser();
+                    if (executableBlocks.contains(user.getParentBlock())) {
+                        visitInst(user);
+                    }
+                }
+            }
+            while (!blockWorkList.isEmpty()) {
+                BasicBlock block = blockWorkList.remove();
+                for (Instruction inst : block.getInstructions()) {
+                    visitInst(inst);
+                }
+            }
+        }
+        rewrite();
+        init();
+    }
+
+    private Object getLattice(Value value) {
+        if (value instanceof Constant.ConstantInt) {
+            return ((Constant.ConstantInt) value).getConstValue();
+        }
+        if (value instanceof Constant.ConstantFloat) {
+            return ((Constant.ConstantFloat) value).getConstValue();
+        }
+        if (value instanceof Constant.ConstantBool) {
+            return ((Constant.ConstantBool) value).getConstValue();
+        }
+        if (value instanceof Instruction) {
+            return lattice.getOrDefault(value, TOP);
+        }
+        // 参数、全局变量、函数
+        return BOTTOM;
+    }
+
+    private static boolean isConst(Object val) {
+        return val != TOP && val != BOTTOM;
+    }
+
+    private void markEdge(BasicBlock from, BasicBlock to) {
+        if (!executableEdges.computeIfAbsent(from, k -> new HashSet<>()).add(to)) {
+            return;
+        }
+        if (executableBlocks.add(to)) {
+            blockWorkList.add(to);
+        } else {
+            // 块已处理过，新的入边只影响 phi
+            for (Instruction inst : to.getInstructions()) {
+                if (!(inst instanceof Instruction.Phi)) {
+                    break;
+                }
+                visitInst(inst);
+            }
+        }
+    }
+
+    private boolean isEdgeExecutable(BasicBlock from, BasicBlock to) {
+        HashSet<BasicBlock> tos = executableEdges.get(from);
+        return tos != null && tos.contains(to);
+    }
+
+    private void visitInst(Instruction inst) {
+        if (inst instanceof Instruction.Branch) {
+            Instruction.Branch br = (Instruction.Branch) inst;
+            Object cond = getLattice(br.getCond());
+            if (isConst(cond)) {
+                markEdge(br.getParentBlock(), (Integer) cond != 0 ? br.getThenBlock() : br.getElseBlock());
+            } else {
+                markEdge(br.getParentBlock(), br.getThenBlock());
+                markEdge(br.getParentBlock(), br.getElseBlock());
+            }
+            return;
+        }
+        if (inst instanceof Instruction.Jump) {
+            markEdge(inst.getParentBlock(), ((Instruction.Jump) inst).getTargetBlock());
+            return;
+        }
+        if (inst.getType() == Type.VoidType.VOID_TYPE) {
+            return;
+        }
+        Object old = lattice.getOrDefault(inst, TOP);
+        if (old == BOTTOM) {
+            return;
+        }
+        Object val = evaluate(inst);
+        if (val == TOP || val.equals(old)) {
+            return;
+        }
+        // 单调下降：常量变为另一个常量时直接落到 BOTTOM
+        lattice.put(inst, old == TOP ? val : BOTTOM);
+        instWorkList.add(inst);
+    }
+
+    private Object evaluate(Instruction inst) {
+        if (inst instanceof Instruction.Phi) {
+            Instruction.Phi phi = (Instruction.Phi) inst;
+            Object val = TOP;
+            for (int i = 0; i < phi.getNumOperands(); i++) {
+                if (!isEdgeExecutable(phi.getIncomingBlock(i), phi.getParentBlock())) {
+                    continue;
+                }
+                Object cur = getLattice(phi.getOptionalValue(i));
+                if (cur == TOP) {
+                    continue;
+                }
+                if (cur == BOTTOM || (val != TOP && !val.equals(cur))) {
+                    return BOTTOM;
+                }
+                val = cur;
+            }
+            return val;
+        }
+        if (inst instanceof Instruction.BinaryOperation) {
+            Object a = getLattice(((Instruction.BinaryOperation) inst).getSrc1());
+            Object b = getLattice(((Instruction.BinaryOperation) inst).getSrc2());
+            if (a == BOTTOM || b == BOTTOM) {
+                return BOTTOM;
+            }
+            if (a == TOP || b == TOP) {
+                return TOP;
+            }
+            return foldBinary(inst.getInstType(), a, b);
+        }
+        if (inst instanceof Instruction.Icmp || inst instanceof Instruction.Fcmp) {
+            Object a = getLattice(inst.getOperand(0));
+            Object b = getLattice(inst.getOperand(1));
+            if (a == BOTTOM || b == BOTTOM) {
+                return BOTTOM;
+            }
+            if (a == TOP || b == TOP) {
+                return TOP;
+            }
+            return inst instanceof Instruction.Icmp
+                    ? foldIcmp(((Instruction.Icmp) inst).getCondCode(), (Integer) a, (Integer) b)
+                    : foldFcmp(((Instruction.Fcmp) inst).getCondCode(), (Float) a, (Float) b);
+        }
+        if (inst instanceof Instruction.Zext || inst instanceof Instruction.SItofp
+                || inst instanceof Instruction.FPtosi) {
+            Object src = getLattice(inst.getOperand(0));
+            if (!isConst(src)) {
+                return src;
+            }
+            if (inst instanceof Instruction.SItofp) {
+                return (float) (Integer) src;
+            }
+            if (inst instanceof Instruction.FPtosi) {
+                return (int) (float) (Float) src;
+            }
+            return src;
+        }
+        // 访存、调用等
+        return BOTTOM;
+    }
+
+    /**
+     * 两个常量操作数的运算结果，不能折叠时返回 BOTTOM（不是 Integer / Float）
+     */
+    static Object foldBinary(Instruction.InstType instType, Object a, Object b) {
+        if (a instanceof Float) {
+            float x = (Float) a;
+            float y = (Float) b;
+            return switch (instType) {
+                case FAdd -> x + y;
+                case FSUB -> x - y;
+                case FMUL -> x * y;
+                case FDIV -> x / y;
+                case FREM -> x % y;
+                default -> BOTTOM;
+            };
+        }
+        int x = (Integer) a;
+        int y = (Integer) b;
+        return switch (instType) {
+            case ADD -> x + y;
+            case SUB -> x - y;
+            case MUL -> x * y;
+            // 除零保留到运行时
+            case DIV -> y == 0 ? BOTTOM : (Object) (x / y);
+            case REM -> y == 0 ? BOTTOM : (Object) (x % y);
+            case SHL -> x << y;
+            case ASHR -> x >> y;
+            default -> BOTTOM;
+        };
+    }
+
+    static Object foldIcmp(Instruction.Icmp.CondCode condCode, int x, int y) {
+        boolean res = switch (condCode) {
+            case EQ -> x == y;
+            case NE -> x != y;
+            case SGT -> x > y;
+            case SGE -> x >= y;
+            case SLT -> x < y;
+            case SLE -> x <= y;
+        };
+        return res ? 1 : 0;
+    }
+
+    static Object foldFcmp(Instruction.Fcmp.CondCode condCode, float x, float y) {
+        boolean res = switch (condCode) {
+            case EQ -> x == y;
+            case NE -> x != y;
+            case OGT -> x > y;
+            case OGE -> x >= y;
+            case OLT -> x < y;
+            case OLE -> x <= y;
+        };
+        return res ? 1 : 0;
+    }
+
+    private Constant makeConstant(Type type, Object val) {
+        if (type.isInt1Ty()) {
+            return Constant.ConstantBool.get((Integer) val);
+        }
+        if (type.isFloatTy()) {
+            return Constant.ConstantFloat.get(function.getContext(), (Float) val);
+        }
+        return Constant.ConstantInt.get(function.getContext(), (Integer) val);
+    }
+
+    private void rewrite() {
+        // 常量条件的分支改为跳转，删去未走的边在后继 phi 中的取值
+        for (BasicBlock block : function.getBlocks()) {
+            if (!executableBlocks.contains(block)) {
+                continue;
+            }
+            Instruction last = block.getLastInst();
+            if (!(last instanceof Instruction.Branch)) {
+                continue;
+            }
+            Instruction.Branch br = (Instruction.Branch) last;
+            BasicBlock thenBlock = br.getThenBlock();
+            BasicBlock elseBlock = br.getElseBlock();
+            boolean thenLive = isEdgeExecutable(block, thenBlock);
+            boolean elseLive = isEdgeExecutable(block, elseBlock);
+            if (thenLive && elseLive) {
+                continue;
+            }
+            BasicBlock target = thenLive ? thenBlock : elseBlock;
+            BasicBlock dead = thenLive ? elseBlock : thenBlock;
+            br.delete();
+            new Instruction.Jump(block, target);
+            if (dead != target) {
+                for (Instruction inst : dead.getInstructions()) {
+                    if (!(inst instanceof Instruction.Phi)) {
+                        break;
+                    }
+                    ((Instruction.Phi) inst).removeIncomingBlock(block);
+                }
+            }
+        }
+
+        // 格值为常量的指令替换为常量
+        ArrayList<Instruction> folded = new ArrayList<>();
+        for (BasicBlock block : function.getBlocks()) {
+            if (!executableBlocks.contains(block)) {
+                continue;
+            }
+            for (Instruction inst : block.getInstructions()) {
+                Object val = lattice.get(inst);
+                if (val != null && isConst(val)) {
+                    inst.replaceAllUsesWith(makeConstant(inst.getType(), val));
+                    folded.add(inst);
+                }
+            }
+        }
+        for (Instruction inst : folded) {
+            inst.delete();
+        }
+
+        // 删除不可达块
+        function.buildControlFlowGraph();
+
+        // 只剩一个来源的 phi
+        for (BasicBlock block : function.getBlocks()) {
+            for (Instruction inst : block.getInstructions()) {
+                if (!(inst instanceof Instruction.Phi)) {
+                    break;
+                }
+                if (inst.getNumOperands() == 1) {
+                    inst.replaceAllUsesWith(((Instruction.Phi) inst).getOptionalValue(0));
+                    inst.delete();
+                }
+            }
+        }
+    }
+}
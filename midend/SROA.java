@@ -0,0 +1,135 @@
+package midend;
+
+import mir.*;
+import mir.Module;
+
+import java.util.ArrayList;
+
+/**
+ * 小型局部数组的标量替换
+ * 元素个数不超过 MAX_ELEMENTS 的 Alloc 数组，若地址（经 GEP / BitCast）只用于常量偏移的 Load / Store
+ * 与对整个数组清零的 memset，则每个元素拆成一个标量 Alloc：
+ * Load / Store 改用对应元素的 Alloc，memset 改为逐元素存 0，之后由 Mem2Reg 提升
+ * 返回值表示是否拆分了数组，调用方据此决定是否重新运行 Mem2Reg
+ */
+public class SROA {
+    private static final int MAX_ELEMENTS = 16;
+
+    public boolean run(Module module) {
+        boolean changed = false;
+        for (Function function : module.getFuncSet()) {
+            if (function.isExternal()) {
+                continue;
+            }
+            changed |= runOnFunction(function);
+        }
+        return changed;
+    }
+
+    public boolean runOnFunction(Function function) {
+        ArrayList<Instruction.Alloc> allocs = new ArrayList<>();
+        for (BasicBlock block : function.getBlocks()) {
+            for (Instruction inst : block.getInstructions()) {
+                if (inst instanceof Instruction.Alloc && ((Instruction.Alloc) inst).isArrayAlloc()) {
+                    allocs.add((Instruction.Alloc) inst);
+                }
+            }
+        }
+        boolean changed = false;
+        for (Instruction.Alloc alloc : allocs) {
+            changed |= split(function, alloc);
+        }
+        return changed;
+    }
+
+    /**
+     * 收集数组的全部访问与地址计算，出现不能拆分的使用时返回 false
+     */
+    private boolean collectAccesses(Value value, Type.BasicType eleType, int bytes,
+                                    ArrayList<Instruction> accesses, ArrayList<Instruction> addrs) {
+        for (Use use : value.getUses()) {
+            Instruction user = (Instruction) use.getUser();
+            if (user instanceof Instruction.GetElementPtr && ((Instruction.GetElementPtr) user).getBase() == value
+                    || user instanceof Instruction.BitCast) {
+                addrs.add(user);
+                if (!collectAccesses(user, eleType, bytes, accesses, addrs)) {
+                    return false;
+                }
+                continue;
+            }
+            if (user instanceof Instruction.Load || user instanceof Instruction.Store
+                    && ((Instruction.Store) user).getAddr() == value && ((Instruction.Store) user).getValue() != value) {
+                Type type = user instanceof Instruction.Load ? user.getType() : ((Instruction.Store) user).getValue().getType();
+                AliasAnalysis.Location loc = AliasAnalysis.locate(value);
+                if (type != eleType || !loc.known || loc.offset < 0 || loc.offset >= bytes || loc.offset % 4 != 0) {
+                    return false;
+                }
+                accesses.add(user);
+                continue;
+            }
+            if (user instanceof Instruction.Call) {
+                Instruction.Call call = (Instruction.Call) user;
+                Function dest = call.getDestFunction();
+                if (dest.isExternal() && dest.getName().equals("memset") && call.getParams().get(0) == value
+                        && call.getParams().get(1) instanceof Constant.ConstantInt
+                        && ((Constant.ConstantInt) call.getParams().get(1)).isZero()
+                        && call.getParams().get(2) instanceof Constant.ConstantInt
+                        && (Integer) ((Constant.ConstantInt) call.getParams().get(2)).getConstValue() == bytes
+                        && AliasAnalysis.locate(value).known && AliasAnalysis.locate(value).offset == 0) {
+                    accesses.add(user);
+                    continue;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private boolean split(Function function, Instruction.Alloc alloc) {
+        Type.ArrayType arrayType = (Type.ArrayType) alloc.getContentType();
+        int count = arrayType.getFlattenSize();
+        if (count > MAX_ELEMENTS) {
+            return false;
+        }
+        Type.BasicType eleType = arrayType.getBasicEleType();
+        int bytes = AliasAnalysis.sizeOf(arrayType);
+        if (bytes != count * 4) {
+            return false;
+        }
+        ArrayList<Instruction> accesses = new ArrayList<>();
+        ArrayList<Instruction> addrs = new ArrayList<>();
+        if (!collectAccesses(alloc, eleType, bytes, accesses, addrs)) {
+            return false;
+        }
+
+        BasicBlock entry = function.getFirstBlock();
+        Instruction.Alloc[] elements = new Instruction.Alloc[count];
+        for (int i = count - 1; i >= 0; i--) {
+            elements[i] = new Instruction.Alloc(entry, eleType);
+            elements[i].remove();
+            entry.addInstFirst(elements[i]);
+        }
+        for (Instruction inst : accesses) {
+            if (inst instanceof Instruction.Call) {
+                // memset 改为逐元素存 0
+                for (Instruction.Alloc element : elements) {
+                    Value zero = eleType.isFloatTy() ? Constant.ConstantFloat.get(function.getContext(), 0) : Constant.ConstantInt.get(function.getContext(), 0);
+                    Instruction.Store store = new Instruction.Store(inst.getParentBlock(), zero, element);
+                    store.remove();
+                    inst.getParentBlock().getInstructions().insertBefore(store, inst);
+                }
+                inst.delete();
+                continue;
+            }
+            Value addr = inst instanceof Instruction.Load ? ((Instruction.Load) inst).getAddr() : ((Instruction.Store) inst).getAddr();
+            int idx = (int) (AliasAnalysis.locate(addr).offset / 4);
+            inst.replaceUseOfWith(addr, elements[idx]);
+        }
+        // 使用者在后，逆序删除
+        for (int i = addrs.size() - 1; i >= 0; i--) {
+            addrs.get(i).delete();
+        }
+        alloc.delete();
+        return true;
+    }
+}
@@ -0,0 +1,117 @@
+package midend;
+
+import mir.*;
+import mir.Module;
+
+import java.util.ArrayList;
+
+/**
+ * 尾递归消除，在 Mem2Reg 之后运行
+ * 尾调用：调用自身，且紧随其后的是返回该调用结果（或 void 函数的 ret void）的 Return
+ * 1. 新建入口块，原入口变为循环头，所有 Alloc 移到新入口
+ * 2. 原入口为每个形参（Function.getFuncRArguments）建 phi [形参, 新入口]，函数体中对形参的使用改为 phi
+ * 3. 每个尾调用连同 Return 替换为跳回原入口，实参作为 phi 来自该块的取值
+ * 实参指向本函数局部数组时，下一轮会复用同一块栈空间，这样的调用不处理
+ */
+public class TailRecursionElimination {
+
+    public void run(Module module) {
+        for (Function function : module.getFuncSet()) {
+            if (function.isExternal()) {
+                continue;
+            }
+            runOnFunction(function);
+        }
+    }
+
+    /**
+     * call 之后紧跟返回其结果的 Return，且调用的是所在函数本身
+     */
+    public static boolean isTailCall(Instruction.Call call) {
+        Function function = call.getParentBlock().getParentFunction();
+        if (call.getDestFunction() != function || !(call.getNext() instanceof Instruction.Return)) {
+            return false;
+        }
+        Instruction.Return ret = (Instruction.Return) call.getNext();
+        if (call.getType() instanceof Type.VoidType) {
+            return !ret.hasValue();
+        }
+        return ret.getRetValue() == call && call.getUses().size() == 1;
+    }
+
+    public void runOnFunction(Function function) {
+        ArrayList<Instruction.Call> tailCalls = new ArrayList<>();
+        for (BasicBlock block : function.getBlocks()) {
+            Instruction last = block.getLastInst();
+            if (!(last instanceof Instruction.Return) || !(last.getPrev() instanceof Instruction.Call)) {
+                continue;
+            }
+            Instruction.Call call = (Instruction.Call) last.getPrev();
+            if (!isTailCall(call)) {
+                continue;
+            }
+            boolean local = false;
+            for (Value param : call.getParams()) {
+                if (param.getType().isPointerTy() && AliasAnalysis.rootOf(param) instanceof Instruction.Alloc) {
+                    local = true;
+                    break;
+                }
+            }
+            if (!local) {
+                tailCalls.add(call);
+            }
+        }
+        if (tailCalls.isEmpty()) {
+            return;
+        }
+        function.invalidateLoopInfo();
+
+        BasicBlock header = function.getEntry();
+        BasicBlock entry = new BasicBlock(function.getName() + "_tre_entry", function);
+        entry.remove();
+        function.getBlocks().addFirst(entry);
+        ArrayList<Instruction> allocs = new ArrayList<>();
+        for (BasicBlock block : function.getBlocks()) {
+            for (Instruction inst : block.getInstructions()) {
+                if (inst instanceof Instruction.Alloc) {
+                    allocs.add(inst);
+                }
+            }
+        }
+        for (Instruction alloc : allocs) {
+            alloc.remove();
+            entry.addInstLast(alloc);
+            alloc.setParentBlock(entry);
+        }
+        new Instruction.Jump(entry, header);
+
+        // 形参改为 phi，倒序插入使 phi 的顺序与形参一致
+        ArrayList<Function.Argument> arguments = function.getFuncRArguments();
+        ArrayList<Instruction.Phi> phis = new ArrayList<>();
+        for (Function.Argument argument : arguments) {
+            ArrayList<Value> values = new ArrayList<>();
+            values.add(argument);
+            ArrayList<BasicBlock> blocks = new ArrayList<>();
+            blocks.add(entry);
+            Instruction.Phi phi = new Instruction.Phi(header, argument.getType(), values, blocks);
+            phi.remove();
+            argument.replaceAllUsesWith(phi);
+            phi.setIncomingValue(entry, argument);
+            phis.add(phi);
+        }
+        for (int i = phis.size() - 1; i >= 0; i--) {
+            header.addInstFirst(phis.get(i));
+        }
+
+        for (Instruction.Call call : tailCalls) {
+            BasicBlock block = call.getParentBlock();
+            for (int i = 0; i < phis.size(); i++) {
+                phis.get(i).addIncoming(call.getParams().get(i), block);
+            }
+            ((Instruction) call.getNext()).delete();
+            call.delete();
+            new Instruction.Jump(block, header);
+        }
+        function.buildControlFlowGraph();
+    }
+}
@@ -2,11 +2,11 @@ package mir;
 
 import manager.Manager;
 import midend.CloneInfo;
+import midend.Loop;
 import utils.SyncLinkedList;
 
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.Objects;
 
 public class BasicBlock extends Value {
@@ -14,13 +14,17 @@ public class BasicBlock extends Value {
     private final String label;
     private final SyncLinkedList<Instruction> instructions;
     // 控制图属性
-    private LinkedList<BasicBlock> preBlocks; // 控制图-前驱块
-    private LinkedList<BasicBlock> sucBlocks; // 控制图-后继块
+    private ArrayList<BasicBlock> preBlocks; // 控制图-前驱块
+    private ArrayList<BasicBlock> sucBlocks; // 控制图-后继块
     // 支配图属性
     private BasicBlock idom; // 支配图-直接支配块
-    private HashSet<BasicBlock> domSet = new HashSet<>(); // 支配图-支配块集合
     private final HashSet<BasicBlock> domFrontiers = new HashSet<>(); // 支配图-支配边界
-    private final LinkedList<BasicBlock> domTreeChildren = new LinkedList<>(); // 支配图-支配树孩子
+    private final ArrayList<BasicBlock> domTreeChildren = new ArrayList<>(); // 支配图-支配树孩子
+    private int domDepth; // 支配树-深度，入口为 0
+    private int domIn = -1; // 支配树-DFS 进入序号，不可达块为 -1
+    private int domOut = -1; // 支配树-DFS 离开序号
+    // 循环属性
+    private Loop loop; // 所在的最内层循环，不在循环中为 null
     public boolean isDeleted = false;
 
     public BasicBlock(String label, Function parentFunction) {
@@ -28,8 +32,8 @@ public class BasicBlock extends Value {
         this.parentFunction = parentFunction;
         parentFunction.appendBlock(this);
         this.label = label;
-        this.sucBlocks = new LinkedList<>();
-        this.preBlocks = new LinkedList<>();
+        this.sucBlocks = new ArrayList<>();
+        this.preBlocks = new ArrayList<>();
         this.instructions = new SyncLinkedList<>();
     }
 
@@ -73,11 +77,11 @@ public class BasicBlock extends Value {
         }
     }
 
-    public LinkedList<BasicBlock> getPreBlocks() {
+    public ArrayList<BasicBlock> getPreBlocks() {
         return preBlocks;
     }
 
-    public LinkedList<BasicBlock> getSucBlocks() {
+    public ArrayList<BasicBlock> getSucBlocks() {
         return sucBlocks;
     }
 
@@ -93,16 +97,44 @@ public class BasicBlock extends Value {
         return domFrontiers;
     }
 
-    public LinkedList<BasicBlock> getDomTreeChildren() {
+    public ArrayList<BasicBlock> getDomTreeChildren() {
         return domTreeChildren;
     }
 
-    public HashSet<BasicBlock> getDomSet() {
-        return domSet;
+    public int getDomDepth() {
+        return domDepth;
     }
 
-    public void setDomSet(HashSet<BasicBlock> domSet) {
-        this.domSet = domSet;
+    public int getDomIn() {
+        return domIn;
+    }
+
+    public int getDomOut() {
+        return domOut;
+    }
+
+    /**
+     * 由 DominanceGraph 在构建支配树时设置
+     */
+    public void setDomNumbers(int domDepth, int domIn, int domOut) {
+        this.domDepth = domDepth;
+        this.domIn = domIn;
+        this.domOut = domOut;
+    }
+
+    public Loop getLoop() {
+        return loop;
+    }
+
+    public void setLoop(Loop loop) {
+        this.loop = loop;
+    }
+
+    /**
+     * 循环嵌套深度，不在循环中为 0
+     */
+    public int getLoopDepth() {
+        return loop == null ? 0 : loop.getDepth();
     }
 
     public boolean isTerminated() {
@@ -130,42 +162,24 @@ public class BasicBlock extends Value {
         return Objects.hash(label);
     }
 
-    public void setPreBlocks(LinkedList<BasicBlock> preBlocks) {
+    public void setPreBlocks(ArrayList<BasicBlock> preBlocks) {
         this.preBlocks = preBlocks;
     }
 
-    public void setSucBlocks(LinkedList<BasicBlock> sucBlocks) {
+    public void setSucBlocks(ArrayList<BasicBlock> sucBlocks) {
         this.sucBlocks = sucBlocks;
     }
 
-    //region outputLLVMIR
-    public ArrayList<String> output() {
-        if (instructions.isEmpty()) {
-            return new ArrayList<>();
-        }
-
-        ArrayList<String> outputList = new ArrayList<>();
-        outputList.add(label + ":");
-
-        for (Instruction instruction :
-                instructions) {
-            outputList.add("\t" + instruction.toString());
-        }
-        return outputList;
-    }
-    //endregion
-
-
-    //函数内联的时候,维护循环信息,方便GCM
-    public BasicBlock cloneToFunc(Function function, int idx) {
+    // 函数内联时克隆出的块不携带循环信息，所在函数的 LoopInfo 由调用方置为失效后重建
+    public BasicBlock cloneToFunc(Function function, int idx, CloneInfo cloneInfo) {
 
 
         BasicBlock ret = new BasicBlock(function.getName()+"_"+getLabel()+"_"+idx, function);
-        CloneInfo.addValueReflect(this, ret);
+        cloneInfo.addValueReflect(this, ret);
 
         for (Instruction inst:
              getInstructions()) {
-            Instruction tmp = inst.cloneToBBAndAddInfo(ret);
+            Instruction tmp = inst.cloneToBBAndAddInfo(ret, cloneInfo);
         }
 
         return ret;
@@ -1,8 +1,13 @@
 package mir;
 
 import java.util.ArrayList;
-import java.util.Objects;
 
+/**
+ * 整数、浮点与数组常量经 get 在编译单元的 IRContext 中唯一化：值相同的常量是同一个对象，
+ * 可以直接用 == 比较、作为哈希表的键；布尔常量只有 TRUE / FALSE 两个
+ * 唯一化的常量不可变，也不记录使用链，因此可以被单元内的任意函数同时使用
+ * 全局变量（GlobalValue）不唯一化，照常记录使用链
+ */
 public abstract class Constant extends User {
 
     public Constant(Type type) {
@@ -11,6 +16,16 @@ public abstract class Constant extends User {
 
     public abstract Object getConstValue();
 
+    @Override
+    protected boolean isShared() {
+        return true;
+    }
+
+    @Override
+    protected boolean tracksUses() {
+        return false;
+    }
+
     public abstract boolean isZero();
 
     @Override
@@ -21,11 +36,15 @@ public abstract class Constant extends User {
     public static class ConstantInt extends Constant {
         private final int intValue;//当前int具体的值
 
-        public ConstantInt(int Value) {
+        private ConstantInt(int Value) {
             super(Type.BasicType.I32_TYPE);
             intValue = Value;
         }
 
+        public static ConstantInt get(IRContext context, int value) {
+            return context.ints.computeIfAbsent(value, ConstantInt::new);
+        }
+
         @Override
         public Object getConstValue() {
             return intValue;
@@ -46,11 +65,15 @@ public abstract class Constant extends User {
     public static class ConstantFloat extends Constant {
         private final float floatValue;
 
-        public ConstantFloat(float val) {
+        private ConstantFloat(float val) {
             super(Type.BasicType.F32_TYPE);
             floatValue = val;
         }
 
+        public static ConstantFloat get(IRContext context, float value) {
+            return context.floats.computeIfAbsent(Float.floatToRawIntBits(value), bits -> new ConstantFloat(Float.intBitsToFloat(bits)));
+        }
+
         @Override
         public Object getConstValue() {
             return floatValue;
@@ -72,7 +95,7 @@ public abstract class Constant extends User {
         private final ArrayList<Constant> constArray;
         private final Type eleType;
 
-        public ConstantArray(Type type, Type eleType, ArrayList<Constant> constArray) {
+        private ConstantArray(Type type, Type eleType, ArrayList<Constant> constArray) {
             //todo: why pass 'type' as a param
             super(type);
             assert type instanceof Type.ArrayType;
@@ -80,6 +103,14 @@ public abstract class Constant extends User {
             this.eleType = eleType;
         }
 
+        public static ConstantArray get(IRContext context, Type type, Type eleType, ArrayList<Constant> constArray) {
+            ArrayList<Object> key = new ArrayList<>(constArray.size() + 2);
+            key.add(type);
+            key.add(eleType);
+            key.addAll(constArray);
+            return context.arrays.computeIfAbsent(key, k -> new ConstantArray(type, eleType, new ArrayList<>(constArray)));
+        }
+
         @Override
         public Object getConstValue() {
             return constArray;
@@ -101,13 +132,21 @@ public abstract class Constant extends User {
     }
 
     public static class ConstantBool extends Constant {
-        int boolValue;//0 or 1
+        // 只有两个取值，不需要按编译单元唯一化
+        public static final ConstantBool FALSE = new ConstantBool(0);
+        public static final ConstantBool TRUE = new ConstantBool(1);
 
-        public ConstantBool(int val) {
+        private final int boolValue;//0 or 1
+
+        private ConstantBool(int val) {
             super(Type.BasicType.I1_TYPE);
             boolValue = val;
         }
 
+        public static ConstantBool get(int val) {
+            return val == 0 ? FALSE : TRUE;
+        }
+
         @Override
         public Object getConstValue() {
             return boolValue;
@@ -3,12 +3,14 @@ package mir;
 import midend.CloneInfo;
 import midend.ControlFlowGraph;
 import midend.DominanceGraph;
+import midend.LoopInfo;
 import midend.Mem2Reg;
 import utils.SyncLinkedList;
 
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 
 public class Function extends Value {
 
@@ -43,6 +45,7 @@ public class Function extends Value {
 
     }
 
+    private final IRContext context; // 所属编译单元的常量与类型表
     private final Type retType; //返回值类型
     private final ArrayList<Argument> myArguments; // 参数表
     private ArrayList<Argument> funcRArguments = new ArrayList<>();
@@ -65,9 +68,13 @@ public class Function extends Value {
 
     private final ControlFlowGraph CG = new ControlFlowGraph(this);
     private final DominanceGraph DG = new DominanceGraph(this);
+    private final LoopInfo LI = new LoopInfo(this);
+    // 控制流改变后置为 false，getLoopInfo 之前需要重新 buildLoopInfo
+    private boolean loopInfoValid = false;
 
-    public Function(Type type, String name, Type... argumentTypes) {
+    public Function(IRContext context, Type type, String name, Type... argumentTypes) {
         super(Type.FunctionType.FUNC_TYPE);
+        this.context = context;
         entry = null;
         setName(name);
         retType = type;
@@ -84,8 +91,9 @@ public class Function extends Value {
         myArguments = arguments;
     }
 
-    public Function(Type type, String name, ArrayList<Type> argumentTypes) {
+    public Function(IRContext context, Type type, String name, ArrayList<Type> argumentTypes) {
         super(Type.FunctionType.FUNC_TYPE);
+        this.context = context;
         setName(name);
         entry = null;
         retType = type;
@@ -103,10 +111,37 @@ public class Function extends Value {
         myArguments = arguments;
     }
 
+    /**
+     * 按输出顺序给有结果的指令编号 %0, %1, ...，与 LLVM 对未命名值的要求一致
+     * 输出前调用；编号只取决于函数当前的指令序列，与指令的创建先后、其他函数无关
+     */
+    public void numberValues() {
+        int slot = 0;
+        for (BasicBlock block : blocks) {
+            for (Instruction inst : block.getInstructions()) {
+                if (inst.hasResult()) {
+                    inst.setSlot(slot++);
+                }
+            }
+        }
+    }
+
+    public IRContext getContext() {
+        return context;
+    }
+
     public boolean isExternal() {
         return blocks.isEmpty();
     }
 
+    /**
+     * 函数被各个调用者的 Call 使用
+     */
+    @Override
+    protected boolean isShared() {
+        return true;
+    }
+
     public void setDeleted() {
         deleted = true;
     }
@@ -165,18 +200,6 @@ public class Function extends Value {
         return str.toString();
     }
 
-    public ArrayList<String> output() {
-        ArrayList<String> outputList = new ArrayList<>();
-        outputList.add(String.format("define %s @%s(%s) {", getRetType().toString(), name, RArgsToString()));
-        for (BasicBlock block :
-                blocks) {
-            outputList.addAll(block.output());
-            outputList.add("\n");
-        }
-        outputList.add("}\n");
-        return outputList;
-    }
-
 
     //endregion
 
@@ -215,29 +238,65 @@ public class Function extends Value {
         DG.build();
     }
 
+    public DominanceGraph getDominanceGraph() {
+        return DG;
+    }
+
+    /**
+     * 识别自然循环并规范化（preheader / 唯一 latch / 专用出口），会插入新的基本块
+     * 之后重建控制流图与支配树
+     */
+    public void buildLoopInfo() {
+        LI.build();
+        loopInfoValid = true;
+    }
+
+    public LoopInfo getLoopInfo() {
+        assert loopInfoValid : "loop info of " + getName() + " is stale";
+        return LI;
+    }
+
+    public boolean isLoopInfoValid() {
+        return loopInfoValid;
+    }
+
+    /**
+     * 改变控制流（内联、删除基本块等）的变换调用，清除块上残留的循环信息
+     */
+    public void invalidateLoopInfo() {
+        if (loopInfoValid) {
+            LI.clear();
+        }
+        loopInfoValid = false;
+    }
+
     public void checkCFG() {
         CG.checkGraph();
     }
 
-    public void runMem2Reg() {
-            Mem2Reg.run(this);
+    public void runMem2Reg(Module module) {
+        new Mem2Reg(module).run(this);
     }
 
 
-    public Instruction.Load inlineToFunc(Function tagFunc, BasicBlock retBB, Instruction.Call call, Instruction.Alloc alloc, int idx) {
+    public Instruction.Load inlineToFunc(Function tagFunc, BasicBlock retBB, Instruction.Call call, Instruction.Alloc alloc, int idx, CloneInfo cloneInfo) {
         //Instruction.Phi retPhi = null;
 
 
-        for (BasicBlock block:
-             getBlocks()) {
-            block.cloneToFunc(tagFunc, idx);
+        // 先取快照：内联到自身时克隆出的块会追加到同一链表
+        ArrayList<BasicBlock> srcBlocks = new ArrayList<>();
+        for (BasicBlock block : getBlocks()) {
+            srcBlocks.add(block);
+        }
+        for (BasicBlock block : srcBlocks) {
+            block.cloneToFunc(tagFunc, idx, cloneInfo);
         }
 
-        ArrayList<Value> callParams = call.getParams();
+        List<Value> callParams = call.getParams();
         ArrayList<Argument> funcParams = getMyArguments();
 
         for (int i = 0; i < callParams.size(); i++) {
-            CloneInfo.addValueReflect(funcRArguments.get(i), callParams.get(i));
+            cloneInfo.addValueReflect(funcRArguments.get(i), callParams.get(i));
 //            for (Use use:
 //                 funcRArguments.get(i).getUses()) {
 //                use.getUser().replaceUseOfWith(use.get(), callParams.get(i));
@@ -246,12 +305,12 @@ public class Function extends Value {
 
         Instruction.Load load = null;
 
-        for(BasicBlock block : getBlocks()) {
+        for(BasicBlock block : srcBlocks) {
             //((BasicBlock) CloneInfoMap.getReflectedValue(bb)).fix();
-            BasicBlock needFixBB = (BasicBlock) CloneInfo.getReflectedValue(block);
+            BasicBlock needFixBB = (BasicBlock) cloneInfo.getReflectedValue(block);
 
             for(Instruction inst : needFixBB.getInstructions()) {
-                inst.fix();
+                inst.fix(cloneInfo);
                 if (inst instanceof Instruction.Return && ((Instruction.Return) inst).hasValue()) {
                     Instruction jumpToRetBB = new Instruction.Jump(needFixBB, retBB);
                     jumpToRetBB.remove();
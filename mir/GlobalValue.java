@@ -4,49 +4,34 @@ import frontend.lexer.Token;
 import frontend.semantic.InitValue;
 import frontend.syntaxChecker.Ast;
 
-import java.util.HashMap;
 
 public class GlobalValue extends Constant {
     //constant fixed address (after linking).
     //拥有@的全局标识符
     public Ast.Ident ident;
     public InitValue initValue;
-    public static final HashMap<Type, GlobalValue> undefTable = new HashMap<>();
 
 
-
-    public static Constant getUndef(Type type) {
-        if(type.isInt32Ty()) {
-            return new Constant.ConstantInt(0);
-        }
-        if(type.isFloatTy()) {
-            return new Constant.ConstantFloat(0);
-        }
-        if(undefTable.containsKey(type)) {
-            return undefTable.get(type);
-        }
-        GlobalValue undef = new GlobalValue(type);
-        undefTable.put(type, undef);
-        return undef;
-    }
-
-    private GlobalValue(Type type) {
+    /**
+     * 未定义值的占位全局变量，由 Module 的未定义常量表统一创建
+     */
+    GlobalValue(IRContext context, Type type, String name) {
         //Type must be pointer，存的是全局变量地址
-        super(new Type.PointerType(type));
-        ident = new Ast.Ident(new Token(Token.Type.IDENTIFIER, "undef_" + undefTable.size()));
+        super(Type.PointerType.get(context, type));
+        ident = new Ast.Ident(new Token(Token.Type.IDENTIFIER, name));
         if(type.isInt32Ty()) {
-            initValue = new InitValue.ValueInit(new ConstantInt(0), type);
+            initValue = new InitValue.ValueInit(ConstantInt.get(context, 0), type);
         } else if(type.isFloatTy()) {
-            initValue = new InitValue.ValueInit(new ConstantFloat(0), type);
+            initValue = new InitValue.ValueInit(ConstantFloat.get(context, 0), type);
         } else if(type.isPointerTy()) {
-            initValue = new InitValue.ZeroArrayInit(((Type.PointerType) type).getInnerType());
+            initValue = new InitValue.ZeroArrayInit(context, ((Type.PointerType) type).getInnerType());
         } else {
             throw new RuntimeException("Unsupported type for undef");
         }
     }
 
-    public GlobalValue(Type innerType, Ast.Ident ident, InitValue initValue) {
-        super(new Type.PointerType(innerType));
+    public GlobalValue(IRContext context, Type innerType, Ast.Ident ident, InitValue initValue) {
+        super(Type.PointerType.get(context, innerType));
         this.ident = ident;
         this.initValue = initValue;
     }
@@ -61,6 +46,11 @@ public class GlobalValue extends Constant {
         return initValue;
     }
 
+    @Override
+    protected boolean tracksUses() {
+        return true;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (o == null) {
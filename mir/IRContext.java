@@ -0,0 +1,20 @@
+package mir;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 一个编译单元的唯一化表：整数、浮点、数组常量与数组、指针类型
+ * 同一个 IRContext 中值相同的常量、结构相同的类型是同一个对象，可以直接用 == 比较
+ * 由 Module 持有，随编译单元一起回收；函数级 pass 并行时共用，因此用并发的表
+ */
+public class IRContext {
+    final ConcurrentHashMap<Integer, Constant.ConstantInt> ints = new ConcurrentHashMap<>();
+    // 按位模式唯一化，0.0 与 -0.0 是不同的常量
+    final ConcurrentHashMap<Integer, Constant.ConstantFloat> floats = new ConcurrentHashMap<>();
+    // 键为 [type, eleType, 各元素]，元素与类型都已唯一化，按引用比较即可
+    final ConcurrentHashMap<ArrayList<Object>, Constant.ConstantArray> arrays = new ConcurrentHashMap<>();
+    // 元素类型 -> (长度 -> 数组类型)
+    final ConcurrentHashMap<Type, ConcurrentHashMap<Integer, Type.ArrayType>> arrayTypes = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<Type, Type.PointerType> pointerTypes = new ConcurrentHashMap<>();
+}
@@ -3,6 +3,8 @@ package mir;
 import manager.Manager;
 import midend.CloneInfo;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 
@@ -34,35 +36,42 @@ public class Instruction extends User {
         FMUL,
         FDIV,
         REM,
-        FREM;
+        FREM,
+        SHL,
+        ASHR;
 
 
     }
 
-    public static class ResNameManager {
-        private static final HashMap<InstType, Integer> indexes = new HashMap<>();
-
-        public static String getName(InstType instType) {
-            indexes.putIfAbsent(instType, 0);
-            int index = indexes.get(instType);
-            String name = "%" + instType.toString().toLowerCase() + "_" + index;
-            index++;
-            indexes.put(instType, index);
-            return name;
-        }
-    }
-
     protected BasicBlock parentBlock;
     protected final InstType instType;
-    public final String resName;
+    // 输出时由 Function.numberValues 分配的编号，-1 表示尚未编号
+    private int slot = -1;
 
     public InstType getInstType() {
         return instType;
     }
 
+    /**
+     * 是否产生结果值，即是否占用一个编号
+     */
+    public boolean hasResult() {
+        return instType != InstType.RETURN && !type.isVoidTy();
+    }
+
+    void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    /**
+     * 结果名在输出时才确定：编号后为 %slot；编号前（调试输出）用类型与对象的哈希区分
+     */
     @Override
     public String getDescriptor() {
-        return resName;
+        if (slot >= 0) {
+            return "%" + slot;
+        }
+        return "%" + instType.toString().toLowerCase() + "." + Integer.toHexString(System.identityHashCode(this));
     }
 
     protected Instruction(BasicBlock parentBlock, Type type, InstType instType) {
@@ -70,10 +79,22 @@ public class Instruction extends User {
         setName("");
         this.parentBlock = parentBlock;
         this.instType = instType;
+        reserveOperands(fixedOperandCount(instType, type));
         // 同步在parentBlock 中插入
         parentBlock.addInstLast(this);
-        //分配一个结果名
-        resName = ResNameManager.getName(instType);
+    }
+
+    /**
+     * 各种指令固定的操作数个数；call、phi、gep 的个数不定，由各自的构造函数预留
+     */
+    private static int fixedOperandCount(InstType instType, Type type) {
+        return switch (instType) {
+            case RETURN -> type.isVoidTy() ? 0 : 1;
+            case BRANCH -> 3;
+            case STORE, Icmp, Fcmp, ADD, SUB, FAdd, FSUB, MUL, DIV, FMUL, FDIV, REM, FREM, SHL, ASHR -> 2;
+            case LOAD, JUMP, SItofp, FPtosi, Zext, BitCast -> 1;
+            default -> 0;
+        };
     }
 
     public void setParentBlock(BasicBlock parentBlock) {
@@ -84,32 +105,55 @@ public class Instruction extends User {
         return parentBlock;
     }
 
+    /**
+     * 从所在基本块中删除该指令，并断开它对操作数的使用
+     * 与 remove 不同，remove 只把指令摘出链表，之后还可以插入到别处
+     */
+    public void delete() {
+        remove();
+        dropAllOperands();
+    }
+
     public Instruction cloneToBB(BasicBlock newBlock) {
         return new Instruction(newBlock, type, instType);
     }
 
-    public Instruction cloneToBBAndAddInfo(BasicBlock newBlock) {
-        CloneInfo.addValueReflect(this, cloneToBB(newBlock));
-        return (Instruction) CloneInfo.getReflectedValue(this);
+    /**
+     * 将指令的 LLVM IR 文本直接写入 out，不构造中间字符串
+     */
+    public void print(Appendable out) throws IOException {
+        out.append(getDescriptor());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        try {
+            print(str);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return str.toString();
+    }
+
+    /**
+     * 输出 "type descriptor" 形式的操作数
+     */
+    protected static void printTypedOperand(Appendable out, Value value) throws IOException {
+        out.append(value.getType().toString()).append(' ').append(value.getDescriptor());
+    }
+
+    public Instruction cloneToBBAndAddInfo(BasicBlock newBlock, CloneInfo cloneInfo) {
+        cloneInfo.addValueReflect(this, cloneToBB(newBlock));
+        return (Instruction) cloneInfo.getReflectedValue(this);
     }
 
 
 
     //public Instruction
-    public void fix() {
-        ArrayList<Value> toReplace = new ArrayList<>();
-        for (Value operand : getOperands()) {
-            //getOperands().set(getOperands().indexOf(operand), CloneInfo.getReflectedValue(operand));
-            if (operand != CloneInfo.getReflectedValue(operand)) {
-                toReplace.add(operand);
-            }
-            //replaceUseOfWith(operand, CloneInfo.getReflectedValue(operand));
-        }
-        //setParentBlock((BasicBlock) CloneInfo.getReflectedValue(parentBlock));
-        for (Value operand:
-             toReplace) {
-            //assert operand.getType().isPointerTy() == CloneInfo.getReflectedValue(operand).getType().isPointerTy();
-            replaceUseOfWith(operand, CloneInfo.getReflectedValue(operand));
+    public void fix(CloneInfo cloneInfo) {
+        for (int i = 0; i < getNumOperands(); i++) {
+            setOperand(i, cloneInfo.getReflectedValue(getOperand(i)));
         }
     }
 
@@ -118,8 +162,6 @@ public class Instruction extends User {
      */
     public static class Return extends Instruction implements Terminator {
 
-        private Value retValue;
-
         public Return(BasicBlock parentBlock) {
             super(parentBlock, Type.VoidType.VOID_TYPE, InstType.RETURN);
         }
@@ -127,38 +169,31 @@ public class Instruction extends User {
         public Return(BasicBlock parentBlock, Value retValue) {
             super(parentBlock, retValue.getType(), InstType.RETURN);
             addOperand(retValue);
-            this.retValue = retValue;
         }
 
         public boolean hasValue() {
-            return !getOperands().isEmpty();
+            return getNumOperands() != 0;
         }
 
         public Value getRetValue() {
-            return retValue;
+            return hasValue() ? getOperand(0) : null;
         }
 
         @Override
-        public String toString() {
+        public void print(Appendable out) throws IOException {
             Value retValue = getRetValue();
             if (retValue != null) {
-                return String.format("ret %s %s", retValue.getType().toString(), retValue.getDescriptor());
+                out.append("ret ");
+                printTypedOperand(out, retValue);
             } else {
-                return "ret void";
+                out.append("ret void");
             }
         }
 
-        @Override
-        public void replaceUseOfWith(Value value, Value v) {
-            super.replaceUseOfWith(value, v);
-            retValue = v;
-        }
-
-
         @Override
         public Return cloneToBB(BasicBlock block) {
-            if (retValue != null)
-                return new Return(block, retValue);
+            if (hasValue())
+                return new Return(block, getRetValue());
             return new Return(block);
         }
 
@@ -166,119 +201,55 @@ public class Instruction extends User {
 
     }
 
+    /**
+     * 操作数 0 为被调函数，其后依次为实参
+     */
     public static class Call extends Instruction {
-        private final ArrayList<Value> params;
-        private Function destFunction;
-        private int strIdx = -1;
 
         public Call(BasicBlock parentBlock, Function destFunction, ArrayList<Value> params) {
             super(parentBlock, destFunction.getRetType(), InstType.CALL);
-            this.destFunction = destFunction;
-            this.params = params;
             parentBlock.getParentFunction().isLeaf = false;
 
+            reserveOperands(params.size() + 1);
             addOperand(destFunction);
             for (Value param : params) {
                 addOperand(param);
             }
         }
 
-        public Call(BasicBlock parentBlock, Function destFunction, ArrayList<Value> params, int strIdx) {
-            super(parentBlock, destFunction.getRetType(), InstType.CALL);
-            this.destFunction = destFunction;
-            this.params = params;
-            this.strIdx = strIdx;
-            parentBlock.getParentFunction().isLeaf = false;
-
-            addOperand(destFunction);
-            for (Value param : params) {
-                addOperand(param);
-            }
-        }
-
-        public ArrayList<Value> getParams() {
-            return params;
+        public List<Value> getParams() {
+            return getOperands().subList(1, getNumOperands());
         }
 
         public Function getDestFunction() {
-            return destFunction;
+            return (Function) getOperand(0);
         }
 
-        private String paramsToString() {
-            StringBuilder str = new StringBuilder();
-            Iterator<Value> iter = params.iterator();
-            while (iter.hasNext()) {
-                Value val = iter.next();
-                str.append(val.type.toString() + " " + val.getDescriptor());
-                if (iter.hasNext()) {
-                    str.append(", ");
+        private void printParams(Appendable out) throws IOException {
+            for (int i = 1; i < getNumOperands(); i++) {
+                printTypedOperand(out, getOperand(i));
+                if (i + 1 < getNumOperands()) {
+                    out.append(", ");
                 }
             }
-            return str.toString();
-        }
-
-        public boolean isPrintf() {
-            // todo: improve way to judge
-            return strIdx != -1;
-        }
-
-        public int getPrintfIdx() {
-            return strIdx;
         }
 
         @Override
-        public String toString() {
-            if (strIdx != -1) {
-                //fixme:to
-                if (!params.isEmpty()){
-                    // 准备参数 调整格式
-                    return "REPLACE_PRINTF:<" + strIdx + ">, " + paramsToString();
-                }
-                else
-                    return "REPLACE_PRINTF:<" + strIdx + ">";
-            }
+        public void print(Appendable out) throws IOException {
+            Function destFunction = getDestFunction();
             if (destFunction.getRetType() instanceof Type.VoidType) {
-                return String.format("call void @%s(%s)", destFunction.name, paramsToString());
+                out.append("call void @");
             } else {
-                return String.format("%s = call %s @%s(%s)", getDescriptor(), destFunction.getRetType().toString(), destFunction.name, paramsToString());
+                out.append(getDescriptor()).append(" = call ").append(destFunction.getRetType().toString()).append(" @");
             }
+            out.append(destFunction.name).append('(');
+            printParams(out);
+            out.append(')');
         }
 
-        @Override
-        public boolean equals(Object o) {
-            if (o == null) {
-                return false;
-            }
-            if (o.getClass() != getClass()) {
-                return false;
-            }
-            if (params != ((Call) o).params) {
-                return false;
-            }
-            return destFunction == ((Call) o).destFunction;
-        }
-
-        @Override
-        public void replaceUseOfWith(Value value, Value v) {
-            super.replaceUseOfWith(value, v);
-            if (destFunction.equals(value)) {
-                destFunction = (Function) v;
-            }
-            LinkedList<Value> toReplace = new LinkedList<>();
-            for (Value param : params) {
-                if (param.equals(value)) {
-                    toReplace.add(param);
-                }
-            }
-            for (Value param : toReplace) {
-                params.set(params.indexOf(param), v);
-            }
-        }
-
-
         @Override
         public Call cloneToBB(BasicBlock newBlock) {
-            return new Call(newBlock, destFunction, params);
+            return new Call(newBlock, getDestFunction(), new ArrayList<>(getParams()));
         }
 
     }
@@ -290,16 +261,10 @@ public class Instruction extends User {
     }
 
     public static class Branch extends Instruction implements Terminator {
-        private Value cond;
-        private BasicBlock thenBlock;
-        private BasicBlock elseBlock;
 
         public Branch(BasicBlock parentBlock,
                       Value cond, BasicBlock thenBlock, BasicBlock elseBlock) {
             super(parentBlock, Type.VoidType.VOID_TYPE, InstType.BRANCH);
-            this.cond = cond;
-            this.thenBlock = thenBlock;
-            this.elseBlock = elseBlock;
 
             assert cond.getType().isInt1Ty();
 
@@ -310,88 +275,67 @@ public class Instruction extends User {
         }
 
         public Value getCond() {
-            return cond;
+            return getOperand(0);
         }
 
         public BasicBlock getThenBlock() {
-            return thenBlock;
+            return (BasicBlock) getOperand(1);
         }
 
         public BasicBlock getElseBlock() {
-            return elseBlock;
+            return (BasicBlock) getOperand(2);
         }
 
         @Override
-        public String toString() {
-            return String.format("br i1 %s, label %%%s, label %%%s", cond.getDescriptor(), thenBlock.getLabel(), elseBlock.getLabel());
-        }
-
-        @Override
-        public void replaceUseOfWith(Value value, Value v) {
-            super.replaceUseOfWith(value, v);
-            if (cond.equals(value)) {
-                cond = v;
-            }
-            if (thenBlock.equals(value)) {
-                thenBlock = (BasicBlock) v;
-            }
-            if (elseBlock.equals(value)) {
-                elseBlock = (BasicBlock) v;
-            }
+        public void print(Appendable out) throws IOException {
+            out.append("br i1 ").append(getCond().getDescriptor())
+                    .append(", label %").append(getThenBlock().getLabel())
+                    .append(", label %").append(getElseBlock().getLabel());
         }
 
         @Override
         public Branch cloneToBB(BasicBlock block) {
-            return new Branch(block, cond, thenBlock, elseBlock);
+            return new Branch(block, getCond(), getThenBlock(), getElseBlock());
         }
     }
 
     public static class Jump extends Instruction implements Terminator {
-        private BasicBlock targetBlock;
         private Recorder.Mark mark;
 
         public Jump(BasicBlock parentBlock, BasicBlock targetBlock) {
             super(parentBlock, Type.VoidType.VOID_TYPE, InstType.JUMP);
-            this.targetBlock = targetBlock;
             addOperand(targetBlock);
         }
 
+        /**
+         * 目标待回填的跳转，回填前没有操作数
+         */
         public Jump(BasicBlock parentBlock, Recorder.Mark mark) {
             super(parentBlock, Type.VoidType.VOID_TYPE, InstType.JUMP);
-            this.targetBlock = null;
             this.mark = mark;
         }
 
         public void backFill(BasicBlock targetBlock) {
-            assert this.targetBlock == null;
-            this.targetBlock = targetBlock;
+            assert getNumOperands() == 0;
             addOperand(targetBlock);
         }
 
         public BasicBlock getTargetBlock() {
-            return targetBlock;
+            return getNumOperands() == 0 ? null : (BasicBlock) getOperand(0);
         }
 
         @Override
-        public String toString() {
-            return "br label %" + targetBlock.getLabel();
+        public void print(Appendable out) throws IOException {
+            out.append("br label %").append(getTargetBlock().getLabel());
         }
 
         public Recorder.Mark getMark() {
             return mark;
         }
 
-        @Override
-        public void replaceUseOfWith(Value value, Value v) {
-            super.replaceUseOfWith(value, v);
-            if (targetBlock.equals(value)) {
-                targetBlock = (BasicBlock) v;
-            }
-        }
-
         @Override
         public Jump cloneToBB(BasicBlock newBlock) {
-            return new Jump(newBlock, targetBlock);
+            return new Jump(newBlock, getTargetBlock());
         }
     }
 
@@ -399,7 +343,7 @@ public class Instruction extends User {
         private final Type contentType;
 
         public Alloc(BasicBlock parentBlock, Type contentType) {
-            super(parentBlock, new Type.PointerType(contentType), InstType.ALLOC);
+            super(parentBlock, Type.PointerType.get(parentBlock.getParentFunction().getContext(), contentType), InstType.ALLOC);
             this.contentType = contentType;
         }
 
@@ -412,8 +356,8 @@ public class Instruction extends User {
         }
 
         @Override
-        public String toString() {
-            return String.format("%s = alloca %s", resName, contentType);
+        public void print(Appendable out) throws IOException {
+            out.append(getDescriptor()).append(" = alloca ").append(contentType.toString());
         }
 
         @Override
@@ -423,186 +367,138 @@ public class Instruction extends User {
     }
 
     public static class Load extends Instruction {
-        private Value addr;
 
         public Load(BasicBlock parentBlock, Value addr) {
             super(parentBlock, ((Type.PointerType) addr.getType()).getInnerType(), InstType.LOAD);
-            this.addr = addr;
             assert addr.getType().isPointerTy();
 
             addOperand(addr);
         }
 
         public Value getAddr() {
-            return addr;
+            return getOperand(0);
         }
 
         public Type getInnerType(){
-            return ((Type.PointerType) addr.getType()).getInnerType();
+            return ((Type.PointerType) getAddr().getType()).getInnerType();
         }
 
 
         @Override
-        public String toString() {
-            Type.PointerType ptrTp = (Type.PointerType) addr.getType();
-            return String.format("%s = load %s, %s %s", resName, ptrTp.getInnerType().toString(), ptrTp, addr.getDescriptor());
-        }
-
-        @Override
-        public void replaceUseOfWith(Value value, Value v) {
-            super.replaceUseOfWith(value, v);
-            if (addr.equals(value)) {
-                addr = v;
-            }
+        public void print(Appendable out) throws IOException {
+            out.append(getDescriptor()).append(" = load ").append(getInnerType().toString()).append(", ");
+            printTypedOperand(out, getAddr());
         }
 
         @Override
         public Load cloneToBB(BasicBlock block) {
-            return new Load(block, addr);
+            return new Load(block, getAddr());
         }
     }
 
     public static class Store extends Instruction {
-        private Value value;
-        private Value addr;
 
         public Store(BasicBlock parentBlock, Value value, Value addr) {
             super(parentBlock, Type.VoidType.VOID_TYPE, InstType.STORE);
-            this.value = value;
-            this.addr = addr;
 
             assert addr.getType() instanceof Type.PointerType;
 
-            //assert addr.getType().equals(new Type.PointerType(value.getType()));
+            //assert addr.getType().equals(Type.PointerType.get(parentBlock.getParentFunction().getContext(), value.getType()));
 
             addOperand(value);
             addOperand(addr);
         }
 
         public Value getValue() {
-            return value;
+            return getOperand(0);
         }
 
         public Value getAddr() {
-            return addr;
+            return getOperand(1);
         }
 
         @Override
-        public String toString() {
-            return String.format("store %s %s, %s %s", value.getType().toString(), value.getDescriptor(), addr.getType().toString(), addr.getDescriptor());
-        }
-
-        @Override
-        public void replaceUseOfWith(Value value, Value v) {
-            super.replaceUseOfWith(value, v);
-            if (this.value.equals(value)) {
-                this.value = v;
-            }
-            if (addr.equals(value)) {
-                addr = v;
-            }
+        public void print(Appendable out) throws IOException {
+            out.append("store ");
+            printTypedOperand(out, getValue());
+            out.append(", ");
+            printTypedOperand(out, getAddr());
         }
 
         @Override
         public Store cloneToBB(BasicBlock block) {
-            return new Store(block, value, addr);
+            return new Store(block, getValue(), getAddr());
         }
     }
 
     public static class SItofp extends Instruction {
-        private Value src;
 
         public Value getSrc() {
-            return src;
+            return getOperand(0);
         }
 
         public SItofp(BasicBlock parentBlock, Value src) {
             super(parentBlock, Type.BasicType.F32_TYPE, InstType.SItofp);
             assert src.getType().isInt32Ty();
-            this.src = src;
 
             addOperand(src);
         }
 
         @Override
-        public String toString() {
-            return String.format("%s = sitofp i32 %s to float", getDescriptor(), src.getDescriptor());
-        }
-
-        @Override
-        public void replaceUseOfWith(Value value, Value v) {
-            super.replaceUseOfWith(value, v);
-            if (src.equals(value)) {
-                src = v;
-            }
+        public void print(Appendable out) throws IOException {
+            out.append(getDescriptor()).append(" = sitofp i32 ").append(getSrc().getDescriptor()).append(" to float");
         }
 
         @Override
         public SItofp cloneToBB(BasicBlock block) {
-            return new SItofp(block, src);
+            return new SItofp(block, getSrc());
         }
     }
 
     public static class FPtosi extends Instruction {
-        private Value src;
 
         public Value getSrc() {
-            return src;
+            return getOperand(0);
         }
 
         public FPtosi(BasicBlock parentBlock, Value src) {
             super(parentBlock, Type.BasicType.I32_TYPE, InstType.FPtosi);
             assert src.getType().isFloatTy();
-            this.src = src;
             addOperand(src);
         }
 
         @Override
-        public String toString() {
-            return String.format("%s = fptosi float %s to i32", getDescriptor(), src.getDescriptor());
-        }
-
-        @Override
-        public void replaceUseOfWith(Value value, Value v) {
-            super.replaceUseOfWith(value, v);
-            if (src.equals(value)) {
-                src = v;
-            }
+        public void print(Appendable out) throws IOException {
+            out.append(getDescriptor()).append(" = fptosi float ").append(getSrc().getDescriptor()).append(" to i32");
         }
 
         @Override
         public FPtosi cloneToBB(BasicBlock block) {
-            return new FPtosi(block, src);
+            return new FPtosi(block, getSrc());
         }
     }
 
     //zero extend I1 to I32
     public static class Zext extends Instruction {
-        private Value src;
 
         public Zext(BasicBlock parentBlock, Value src) {
             super(parentBlock, Type.BasicType.I32_TYPE, InstType.Zext);
             assert src.getType().isInt1Ty();
-            this.src = src;
             addOperand(src);
         }
 
-        @Override
-        public String toString() {
-            return String.format("%s = zext i1 %s to i32", getDescriptor(), src.getDescriptor());
+        public Value getSrc() {
+            return getOperand(0);
         }
 
         @Override
-        public void replaceUseOfWith(Value value, Value v) {
-            super.replaceUseOfWith(value, v);
-            if (src.equals(value)) {
-                src = v;
-            }
+        public void print(Appendable out) throws IOException {
+            out.append(getDescriptor()).append(" = zext i1 ").append(getSrc().getDescriptor()).append(" to i32");
         }
 
         @Override
         public Zext cloneToBB(BasicBlock block) {
-            return new Zext(block, src);
+            return new Zext(block, getSrc());
         }
     }
 
@@ -631,41 +527,34 @@ public class Instruction extends User {
             return condCode;
         }
 
-        private Value src1;
-        private Value src2;
-
         public Icmp(BasicBlock parentBlock, CondCode condCode, Value src1, Value src2) {
             super(parentBlock, Type.BasicType.I1_TYPE, InstType.Icmp);
             assert !src1.getType().isFloatTy();
             assert src1.getType() == src2.getType();
             this.condCode = condCode;
-            this.src1 = src1;
-            this.src2 = src2;
 
             addOperand(src1);
             addOperand(src2);
         }
 
+        public Value getSrc1() {
+            return getOperand(0);
+        }
 
-        @Override
-        public String toString() {
-            return String.format("%s = icmp %s %s %s, %s", getDescriptor(), condCode.toString(), src1.getType().toString(), src1.getDescriptor(), src2.getDescriptor());
+        public Value getSrc2() {
+            return getOperand(1);
         }
 
         @Override
-        public void replaceUseOfWith(Value value, Value v) {
-            super.replaceUseOfWith(value, v);
-            if (src1.equals(value)) {
-                src1 = v;
-            }
-            if (src2.equals(value)) {
-                src2 = v;
-            }
+        public void print(Appendable out) throws IOException {
+            out.append(getDescriptor()).append(" = icmp ").append(condCode.toString()).append(' ');
+            printTypedOperand(out, getSrc1());
+            out.append(", ").append(getSrc2().getDescriptor());
         }
 
         @Override
         public Icmp cloneToBB(BasicBlock block) {
-            return new Icmp(block, condCode, src1, src2);
+            return new Icmp(block, condCode, getSrc1(), getSrc2());
         }
 
     }
@@ -695,121 +584,145 @@ public class Instruction extends User {
             return condCode;
         }
 
-        private Value src1;
-        private Value src2;
-
         public Fcmp(BasicBlock parentBlock, CondCode condCode, Value src1, Value src2) {
             super(parentBlock, Type.BasicType.I1_TYPE, InstType.Fcmp);
             assert src1.getType().isFloatTy();
             assert src2.getType().isFloatTy();
             this.condCode = condCode;
-            this.src1 = src1;
-            this.src2 = src2;
 
             addOperand(src1);
             addOperand(src2);
         }
 
-        @Override
-        public String toString() {
-            return String.format("%s = fcmp %s float %s, %s", getDescriptor(), condCode.toString(), src1.getDescriptor(), src2.getDescriptor());
+        public Value getSrc1() {
+            return getOperand(0);
+        }
+
+        public Value getSrc2() {
+            return getOperand(1);
         }
 
         @Override
-        public void replaceUseOfWith(Value value, Value v) {
-            super.replaceUseOfWith(value, v);
-            if (src1.equals(value)) {
-                src1 = v;
-            }
-            if (src2.equals(value)) {
-                src2 = v;
-            }
+        public void print(Appendable out) throws IOException {
+            out.append(getDescriptor()).append(" = fcmp ").append(condCode.toString()).append(" float ")
+                    .append(getSrc1().getDescriptor()).append(", ").append(getSrc2().getDescriptor());
         }
 
         @Override
         public Fcmp cloneToBB(BasicBlock block) {
-            return new Fcmp(block, condCode, src1, src2);
+            return new Fcmp(block, condCode, getSrc1(), getSrc2());
         }
     }
 
+    /**
+     * 操作数 i 为来自 incomingBlocks[i] 的取值，来源块显式记录，不依赖所在块前驱表的顺序
+     */
     public static class Phi extends Instruction {
-        // 等同于返回值类型
-        private final Type type;
-        // 对齐前驱块的顺序
-        private final LinkedList<Value> optionalValues = new LinkedList<>();
+        private final ArrayList<BasicBlock> incomingBlocks = new ArrayList<>();
 
-        public Phi(BasicBlock parentBlock, Type type, LinkedList<Value> optionalValues) {
+        public Phi(BasicBlock parentBlock, Type type, List<Value> optionalValues, List<BasicBlock> incomingBlocks) {
             super(parentBlock, type, InstType.PHI);
-            for (Value optionalValue : optionalValues) {
-                appendOptionalValue(optionalValue);
+            assert optionalValues.size() == incomingBlocks.size();
+            reserveOperands(optionalValues.size());
+            for (int i = 0; i < optionalValues.size(); i++) {
+                addIncoming(optionalValues.get(i), incomingBlocks.get(i));
             }
-            this.type = type;
         }
 
-        public void appendOptionalValue(Value value) {
-            optionalValues.add(value);
+        public void addIncoming(Value value, BasicBlock block) {
             addOperand(value);
+            incomingBlocks.add(block);
         }
 
         public Value getOptionalValue(int idx) {
-            return optionalValues.get(idx);
+            return getOperand(idx);
+        }
+
+        public BasicBlock getIncomingBlock(int idx) {
+            return incomingBlocks.get(idx);
+        }
+
+        public List<BasicBlock> getIncomingBlocks() {
+            return incomingBlocks;
+        }
+
+        public int getIncomingIndex(BasicBlock block) {
+            return incomingBlocks.indexOf(block);
         }
 
         public void replaceOptionalValueAtWith(int idx, Value value) {
-            Value old = optionalValues.get(idx);
-            optionalValues.set(idx, value);
-            replaceUseOfWith(old, value);
+            setOperand(idx, value);
+        }
+
+        /**
+         * 设置来自 block 的取值，block 必须已是来源块之一
+         */
+        public void setIncomingValue(BasicBlock block, Value value) {
+            int idx = getIncomingIndex(block);
+            assert idx >= 0;
+            setOperand(idx, value);
+        }
+
+        public void removeIncoming(int idx) {
+            removeOperand(idx);
+            incomingBlocks.remove(idx);
+        }
+
+        /**
+         * 删除来自 block 的边对应的取值，block 不是来源块时不做任何事
+         */
+        public void removeIncomingBlock(BasicBlock block) {
+            int idx = getIncomingIndex(block);
+            if (idx >= 0) {
+                removeIncoming(idx);
+            }
+        }
+
+        public void replaceIncomingBlock(BasicBlock oldBlock, BasicBlock newBlock) {
+            int idx = getIncomingIndex(oldBlock);
+            if (idx >= 0) {
+                incomingBlocks.set(idx, newBlock);
+            }
         }
 
         @Override
-        public void replaceUseOfWith(Value value, Value v) {
-            super.replaceUseOfWith(value, v);
-            for (int i = 0; i < optionalValues.size(); i++) {
-                if (optionalValues.get(i).equals(value)) {
-                    optionalValues.set(i, v);
-                }
+        public void fix(CloneInfo cloneInfo) {
+            super.fix(cloneInfo);
+            for (int i = 0; i < incomingBlocks.size(); i++) {
+                incomingBlocks.set(i, (BasicBlock) cloneInfo.getReflectedValue(incomingBlocks.get(i)));
             }
         }
 
         @Override
-        public String toString() {
-            StringBuilder str = new StringBuilder(resName + " = phi " + type.toString() + " ");
-            int len = optionalValues.size();
-            for (int i = 0; i < len; i++) {
-                Value value = optionalValues.get(i);
-                assert i + 1 <= parentBlock.getPreBlocks().size();
-                str.append("[ ");
-                str.append(value.getDescriptor());
-                str.append(", %");
-                str.append(parentBlock.getPreBlocks().get(i).getLabel());
-                str.append(" ]");
-                if (i + 1 != len) {
-                    str.append(", ");
+        public void print(Appendable out) throws IOException {
+            out.append(getDescriptor()).append(" = phi ").append(getType().toString()).append(' ');
+            for (int i = 0; i < getNumOperands(); i++) {
+                out.append("[ ").append(getOperand(i).getDescriptor())
+                        .append(", %").append(incomingBlocks.get(i).getLabel()).append(" ]");
+                if (i + 1 < getNumOperands()) {
+                    out.append(", ");
                 }
             }
-            return str.toString();
         }
 
         @Override
         public Phi cloneToBB(BasicBlock block) {
-            return new Phi(block, type, optionalValues);
+            return new Phi(block, getType(), getOperands(), incomingBlocks);
         }
     }
 
     /**
      * 寻址指令，我们规定每次仅能寻址一维，即只支持base[offset]，对于高维数组的寻址可通过多个该指令完成
+     * 操作数 0 为 base，其后依次为各维偏移
      */
     public static class GetElementPtr extends Instruction {
-        private Value base;
         private final Type eleType;
-        private final ArrayList<Value> offsets;
 
         public GetElementPtr(BasicBlock parentBlock, Value base, Type eleType, ArrayList<Value> offsets) {
-            super(parentBlock, new Type.PointerType(eleType), InstType.GEP);
-            this.base = base;
+            super(parentBlock, Type.PointerType.get(parentBlock.getParentFunction().getContext(), eleType), InstType.GEP);
             this.eleType = eleType;
-            this.offsets = offsets;
 
+            reserveOperands(offsets.size() + 1);
             addOperand(base);
             for (Value offset :
                     offsets) {
@@ -818,110 +731,84 @@ public class Instruction extends User {
         }
 
         public Value getBase() {
-            return base;
+            return getOperand(0);
         }
 
-        public ArrayList<Value> getOffsets() {
-            return offsets;
+        public List<Value> getOffsets() {
+            return getOperands().subList(1, getNumOperands());
         }
 
         @Override
-        public String toString() {
-            StringBuilder str;
-            str = new StringBuilder(String.format("%s = getelementptr %s, %s %s, ",
-                    getDescriptor(),
-                    ((Type.PointerType) base.getType()).getInnerType().toString(),
-                    base.getType().toString(),
-                    base.getDescriptor())
-            );
-            Iterator<Value> iter = offsets.iterator();
-            while (iter.hasNext()) {
-                str.append("i32 " + iter.next().getDescriptor());
-                if (iter.hasNext()) {
-                    str.append(", ");
-                }
-            }
-            return str.toString();
-        }
-
-        @Override
-        public void replaceUseOfWith(Value value, Value v) {
-            super.replaceUseOfWith(value, v);
-            if (base.equals(value)) {
-                base = v;
-            }
-            for (int i = 0; i < offsets.size(); i++) {
-                if (offsets.get(i).equals(value)) {
-                    offsets.set(i, v);
+        public void print(Appendable out) throws IOException {
+            Value base = getBase();
+            out.append(getDescriptor()).append(" = getelementptr ")
+                    .append(((Type.PointerType) base.getType()).getInnerType().toString()).append(", ");
+            printTypedOperand(out, base);
+            out.append(", ");
+            for (int i = 1; i < getNumOperands(); i++) {
+                out.append("i32 ").append(getOperand(i).getDescriptor());
+                if (i + 1 < getNumOperands()) {
+                    out.append(", ");
                 }
             }
         }
 
         @Override
         public GetElementPtr cloneToBB(BasicBlock newBlock) {
-            ArrayList<Value> offsets = new ArrayList<>();
-            for (Value offset :
-                 this.offsets) {
-                offsets.add(offset);
-            }
-            return new GetElementPtr(newBlock, base, eleType, offsets);
+            return new GetElementPtr(newBlock, getBase(), eleType, new ArrayList<>(getOffsets()));
         }
     }
 
     public static class BitCast extends Instruction {
-        private Value src;
 
         public BitCast(BasicBlock parentBlock, Value src, Type targetType) {
             super(parentBlock, targetType, InstType.BitCast);
-            this.src = src;
 
             addOperand(src);
         }
 
-        @Override
-        public String toString() {
-            return String.format("%s = bitcast %s %s to %s", getDescriptor(), src.getType().toString(), src.getDescriptor(), getType().toString());
+        public Value getSrc() {
+            return getOperand(0);
         }
 
         @Override
-        public void replaceUseOfWith(Value value, Value v) {
-            System.out.println("BitCast replaceUseOfWith");
-            super.replaceUseOfWith(value, v);
-            if (src.equals(value)) {
-                src = v;
-            }
+        public void print(Appendable out) throws IOException {
+            out.append(getDescriptor()).append(" = bitcast ");
+            printTypedOperand(out, getSrc());
+            out.append(" to ").append(getType().toString());
         }
 
         @Override
         public BitCast cloneToBB(BasicBlock block) {
-            return new BitCast(block, src, getType());
+            return new BitCast(block, getSrc(), getType());
         }
     }
 
     public static abstract class BinaryOperation extends Instruction{
-        protected Value operand_1;
-        protected Value operand_2;
         protected final Type resType;
         public BinaryOperation(BasicBlock parentBlock, Type resType, InstType instType, Value operand_1, Value operand_2) {
             super(parentBlock, resType, instType);
             assert operand_1.getType() == operand_2.getType();
-            this.operand_1 = operand_1;
-            this.operand_2 = operand_2;
             this.resType = resType;
 
             addOperand(operand_1);
             addOperand(operand_2);
         }
 
-        @Override
-        public void replaceUseOfWith(Value value, Value v) {
-            super.replaceUseOfWith(value, v);
-            if (operand_1.equals(value)) {
-                operand_1 = v;
-            }
-            if (operand_2.equals(value)) {
-                operand_2 = v;
-            }
+        public Value getSrc1() {
+            return getOperand(0);
+        }
+
+        public Value getSrc2() {
+            return getOperand(1);
+        }
+
+        /**
+         * 二元运算统一的输出格式：res = op type a, b
+         */
+        protected void printBinary(Appendable out, String op) throws IOException {
+            out.append(getDescriptor()).append(" = ").append(op).append(' ').append(resType.toString()).append(' ')
+                    .append(getSrc1().getDescriptor()).append(", ").append(getSrc2().getDescriptor());
         }
 
     }
@@ -932,13 +819,13 @@ public class Instruction extends User {
         }
 
         @Override
-        public String toString() {
-            return String.format("%s = add %s %s, %s", getDescriptor(), resType.toString(), operand_1.getDescriptor(), operand_2.getDescriptor());
+        public void print(Appendable out) throws IOException {
+            printBinary(out, "add");
         }
 
         @Override
         public Add cloneToBB(BasicBlock block) {
-            return new Add(block, resType, operand_1, operand_2);
+            return new Add(block, resType, getSrc1(), getSrc2());
         }
 
     }
@@ -950,13 +837,13 @@ public class Instruction extends User {
         }
 
         @Override
-        public String toString() {
-            return String.format("%s = sub %s %s, %s", getDescriptor(), resType.toString(), operand_1.getDescriptor(), operand_2.getDescriptor());
+        public void print(Appendable out) throws IOException {
+            printBinary(out, "sub");
         }
 
         @Override
         public Sub cloneToBB(BasicBlock block) {
-            return new Sub(block, resType, operand_1, operand_2);
+            return new Sub(block, resType, getSrc1(), getSrc2());
         }
     }
 
@@ -967,13 +854,13 @@ public class Instruction extends User {
         }
 
         @Override
-        public String toString() {
-            return String.format("%s = fadd %s %s, %s", getDescriptor(), resType.toString(), operand_1.getDescriptor(), operand_2.getDescriptor());
+        public void print(Appendable out) throws IOException {
+            printBinary(out, "fadd");
         }
 
         @Override
         public FAdd cloneToBB(BasicBlock block) {
-            return new FAdd(block, resType, operand_1, operand_2);
+            return new FAdd(block, resType, getSrc1(), getSrc2());
         }
 
     }
@@ -985,13 +872,13 @@ public class Instruction extends User {
         }
 
         @Override
-        public String toString() {
-            return String.format("%s = fsub %s %s, %s", getDescriptor(), resType.toString(), operand_1.getDescriptor(), operand_2.getDescriptor());
+        public void print(Appendable out) throws IOException {
+            printBinary(out, "fsub");
         }
 
         @Override
         public FSub cloneToBB(BasicBlock block) {
-            return new FSub(block, resType, operand_1, operand_2);
+            return new FSub(block, resType, getSrc1(), getSrc2());
         }
 
     }
@@ -1002,13 +889,13 @@ public class Instruction extends User {
         }
 
         @Override
-        public String toString() {
-            return String.format("%s = mul %s %s, %s", getDescriptor(), resType.toString(), operand_1.getDescriptor(), operand_2.getDescriptor());
+        public void print(Appendable out) throws IOException {
+            printBinary(out, "mul");
         }
 
         @Override
         public Mul cloneToBB(BasicBlock block) {
-            return new Mul(block, resType, operand_1, operand_2);
+            return new Mul(block, resType, getSrc1(), getSrc2());
         }
 
     }
@@ -1020,13 +907,13 @@ public class Instruction extends User {
         }
 
         @Override
-        public String toString() {
-            return String.format("%s = sdiv %s %s, %s", getDescriptor(), resType.toString(), operand_1.getDescriptor(), operand_2.getDescriptor());
+        public void print(Appendable out) throws IOException {
+            printBinary(out, "sdiv");
         }
 
         @Override
         public Div cloneToBB(BasicBlock block) {
-            return new Div(block, resType, operand_1, operand_2);
+            return new Div(block, resType, getSrc1(), getSrc2());
         }
 
     }
@@ -1038,13 +925,13 @@ public class Instruction extends User {
         }
 
         @Override
-        public String toString() {
-            return String.format("%s = fmul %s %s, %s", getDescriptor(), resType.toString(), operand_1.getDescriptor(), operand_2.getDescriptor());
+        public void print(Appendable out) throws IOException {
+            printBinary(out, "fmul");
         }
 
         @Override
         public FMul cloneToBB(BasicBlock block) {
-            return new FMul(block, resType, operand_1, operand_2);
+            return new FMul(block, resType, getSrc1(), getSrc2());
         }
 
     }
@@ -1055,13 +942,13 @@ public class Instruction extends User {
         }
 
         @Override
-        public String toString() {
-            return String.format("%s = fdiv %s %s, %s", getDescriptor(), resType.toString(), operand_1.getDescriptor(), operand_2.getDescriptor());
+        public void print(Appendable out) throws IOException {
+            printBinary(out, "fdiv");
         }
 
         @Override
         public FDiv cloneToBB(BasicBlock block) {
-            return new FDiv(block, resType, operand_1, operand_2);
+            return new FDiv(block, resType, getSrc1(), getSrc2());
         }
 
     }
@@ -1073,13 +960,13 @@ public class Instruction extends User {
         }
 
         @Override
-        public String toString() {
-            return String.format("%s = srem %s %s, %s", getDescriptor(), resType.toString(), operand_1.getDescriptor(), operand_2.getDescriptor());
+        public void print(Appendable out) throws IOException {
+            printBinary(out, "srem");
         }
 
         @Override
         public Rem cloneToBB(BasicBlock block) {
-            return new Rem(block, resType, operand_1, operand_2);
+            return new Rem(block, resType, getSrc1(), getSrc2());
         }
 
     }
@@ -1091,13 +978,51 @@ public class Instruction extends User {
         }
 
         @Override
-        public String toString() {
-            return String.format("%s = frem %s %s, %s", getDescriptor(), resType.toString(), operand_1.getDescriptor(), operand_2.getDescriptor());
+        public void print(Appendable out) throws IOException {
+            printBinary(out, "frem");
         }
 
         @Override
         public FRem cloneToBB(BasicBlock block) {
-            return new FRem(block, resType, operand_1, operand_2);
+            return new FRem(block, resType, getSrc1(), getSrc2());
+        }
+
+    }
+
+    //左移，只由中端的强度削弱产生
+    public static class Shl extends BinaryOperation {
+
+        public Shl(BasicBlock parentBlock, Type resType, Value operand_1, Value operand_2) {
+            super(parentBlock, resType, InstType.SHL, operand_1, operand_2);
+        }
+
+        @Override
+        public void print(Appendable out) throws IOException {
+            printBinary(out, "shl");
+        }
+
+        @Override
+        public Shl cloneToBB(BasicBlock block) {
+            return new Shl(block, resType, getSrc1(), getSrc2());
+        }
+
+    }
+
+    //算术右移，只由中端的强度削弱产生
+    public static class AShr extends BinaryOperation {
+
+        public AShr(BasicBlock parentBlock, Type resType, Value operand_1, Value operand_2) {
+            super(parentBlock, resType, InstType.ASHR, operand_1, operand_2);
+        }
+
+        @Override
+        public void print(Appendable out) throws IOException {
+            printBinary(out, "ashr");
+        }
+
+        @Override
+        public AShr cloneToBB(BasicBlock block) {
+            return new AShr(block, resType, getSrc1(), getSrc2());
         }
 
     }
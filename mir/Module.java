@@ -1,24 +1,36 @@
 package mir;
 
+import frontend.lexer.Token;
+import frontend.semantic.InitValue;
 import frontend.semantic.SymTable;
+import frontend.syntaxChecker.Ast;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 
 public class Module {
+    private final IRContext context;
     private final HashMap<String, Function> functions = new HashMap<>();
     private final SymTable globalSymTable;
-    private final ArrayList<String> globalStrings;
     private final ArrayList<GlobalValue> globalValues;
+    // 未定义常量表
+    private final HashMap<Type, GlobalValue> undefTable = new HashMap<>();
+    // 字符串常量池，相同内容只生成一个 @.str_n
+    private final LinkedHashMap<String, GlobalValue> stringPool = new LinkedHashMap<>();
 
-    public Module(SymTable globalSymTable, ArrayList<String> globalStrings, ArrayList<GlobalValue> globalValues) {
+    public Module(IRContext context, SymTable globalSymTable, ArrayList<GlobalValue> globalValues) {
+        this.context = context;
         this.globalSymTable = globalSymTable;
-        this.globalStrings = globalStrings;
         this.globalValues = globalValues;
     }
 
 
+    public IRContext getContext() {
+        return context;
+    }
+
     public HashMap<String, Function> getFunctions() {
         return functions;
     }
@@ -31,8 +43,48 @@ public class Module {
         return globalValues;
     }
 
-    public ArrayList<String> getGlobalStrings() {
-        return globalStrings;
+    /**
+     * 取得内容为 content 的全局字符串常量，不存在则创建
+     */
+    public GlobalValue getString(String content) {
+        return stringPool.computeIfAbsent(content, str -> {
+            InitValue.StrInit init = new InitValue.StrInit(context, str);
+            Ast.Ident ident = new Ast.Ident(new Token(Token.Type.IDENTIFIER, ".str_" + (stringPool.size() + 1)));
+            return new GlobalValue(context, init.getType(), ident, init);
+        });
+    }
+
+    public Collection<GlobalValue> getStrings() {
+        return stringPool.values();
+    }
+
+    public HashMap<Type, GlobalValue> getUndefTable() {
+        return undefTable;
+    }
+
+    /**
+     * 函数级 pass 可能并行调用，加锁；占位全局变量按类型命名，使输出与各函数的处理先后无关
+     */
+    public synchronized Constant getUndef(Type type) {
+        if(type.isInt32Ty()) {
+            return Constant.ConstantInt.get(context, 0);
+        }
+        if(type.isFloatTy()) {
+            return Constant.ConstantFloat.get(context, 0);
+        }
+        if(undefTable.containsKey(type)) {
+            return undefTable.get(type);
+        }
+        GlobalValue undef = new GlobalValue(context, type, "undef_" + mangle(type));
+        undefTable.put(type, undef);
+        return undef;
+    }
+
+    /**
+     * 类型写成合法的标识符：[4 x i32]* -> a4xi32ep
+     */
+    private static String mangle(Type type) {
+        return type.toString().replace("[", "a").replace("]", "e").replace("*", "p").replace(" ", "");
     }
 
     public void addFunction(Function function) {
@@ -1,8 +1,11 @@
 package mir;
 
 import java.util.ArrayList;
-import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * 基本类型是单例，数组类型与指针类型经 get 在编译单元的 IRContext 中唯一化，因此同一单元内的类型可以直接用 == 比较
+ */
 public class Type {
 
     public static class BasicType extends Type{
@@ -80,27 +83,15 @@ public class Type {
     public static class ArrayType extends Type {
         private final int size;
         private final Type eleType;
+        // 各维长度，构造后不再修改
         private final ArrayList<Integer> dims = new ArrayList<>();
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            ArrayType arrayType = (ArrayType) o;
-            return size == arrayType.size && Objects.equals(eleType, arrayType.eleType);
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(size, eleType);
-        }
-
         @Override
         public String toString() {
             return String.format("[%d x %s]", size, eleType);
         }
 
-        public ArrayType(final int size, final Type eleType) {
+        private ArrayType(final int size, final Type eleType) {
             this.size = size;
             this.eleType = eleType;
             dims.add(size);
@@ -109,6 +100,11 @@ public class Type {
             }
         }
 
+        public static ArrayType get(IRContext context, int size, Type eleType) {
+            return context.arrayTypes.computeIfAbsent(eleType, k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(size, k -> new ArrayType(size, eleType));
+        }
+
         public int getSize() {
             return this.size;
         }
@@ -135,13 +131,10 @@ public class Type {
             }
         }
 
+        /**
+         * 类型被多个线程共用，返回的列表不能修改
+         */
         public ArrayList<Integer> getDims() {
-            // TODO: 没有用高速缓存, 每次都新建
-            dims.clear();
-            dims.add(size);
-            if(eleType.isArrayTy()){
-                dims.addAll(((ArrayType) eleType).dims);
-            }
             return dims;
         }
 
@@ -165,10 +158,14 @@ public class Type {
     public boolean isVoidTy(){ return this instanceof VoidType;}
     public static class PointerType extends Type {
         private final Type innerType;
-        public PointerType(Type type) {
+        private PointerType(Type type) {
             innerType = type;
         }
 
+        public static PointerType get(IRContext context, Type type) {
+            return context.pointerTypes.computeIfAbsent(type, PointerType::new);
+        }
+
         public Type getInnerType() {
             return this.innerType;
         }
@@ -178,17 +175,6 @@ public class Type {
             return innerType.toString()+"*";
         }
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) {
-                return true;
-            }
-            if (getClass() != o.getClass() || o == null) {
-                return false;
-            }
-            return ((PointerType) o).innerType.equals(innerType);
-        }
-
     }
 
     public boolean isPointerTy() {return this instanceof PointerType;}
@@ -1,17 +1,21 @@
 package mir;
 
 
-import utils.SyncLinkedList;
-
-import java.util.Objects;
-
-public class Use extends SyncLinkedList.SyncLinkNode {
+/**
+ * def-use 边：user 的某个操作数位置使用了 value
+ * 同时是 value 使用链上的一个节点，增删与改指向均为 O(1)
+ */
+public class Use {
     private final User user;
     private Value value;
+    // value 使用链中的前驱、后继，由 Value 维护
+    Use prevUse;
+    Use nextUse;
 
-    public Use(User user, Value value) {
+    Use(User user, Value value) {
         this.user = user;
         this.value = value;
+        value.use_add(this);
     }
 
     public User getUser() {
@@ -21,20 +25,27 @@ public class Use extends SyncLinkedList.SyncLinkNode {
     public Value get() {
         return value;
     }
-    public void set(Value value) {
-        this.value = value;
+
+    /**
+     * 改为使用 v，同时把自己从原值的使用链移到 v 的使用链
+     */
+    public void set(Value v) {
+        if (v == value) {
+            return;
+        }
+        value.use_remove(this);
+        value = v;
+        v.use_add(this);
     }
 
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        Use use = (Use) o;
-        return user.equals(use.user) && value.equals(use.value);
+    /**
+     * 从 value 的使用链中摘除，之后该 Use 不再有效
+     */
+    void drop() {
+        value.use_remove(this);
     }
 
-    @Override
-    public int hashCode() {
-        return Objects.hash(user, value);
+    public Use getNextUse() {
+        return nextUse;
     }
 }
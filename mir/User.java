@@ -1,59 +1,119 @@
 package mir;
 
-import java.util.LinkedList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
 
 public class User extends Value {
+    private static final Use[] NO_OPERANDS = new Use[0];
     /**
-     * 维护操作数的唯一性
+     * 按位置存放的操作数，允许同一个值出现多次，如 add %x, %x
+     * 数组按指令种类的操作数个数分配（reserveOperands），没有操作数的值（常量、函数）共用空数组
      */
-    private final LinkedList<Value> operands;
+    private Use[] operands = NO_OPERANDS;
+    private int numOperands = 0;
 
     protected User(String name, Type type) {
         super(name, type);
-        operands = new LinkedList<>();
     }
 
     protected User(Type type) {
         super(type);
-        operands = new LinkedList<>();
+    }
+
+    /**
+     * 预留 n 个操作数的空间，操作数个数已知时一次分配到位
+     */
+    protected void reserveOperands(int n) {
+        if (operands.length < n) {
+            operands = Arrays.copyOf(operands, n);
+        }
     }
 
     public int getNumOperands() {
-        return operands.size();
+        return numOperands;
     }
 
-    public LinkedList<Value> getOperands() {
-        return operands;
+    /**
+     * 操作数的只读视图，随操作数的修改而变化
+     */
+    public List<Value> getOperands() {
+        return new AbstractList<>() {
+            @Override
+            public Value get(int index) {
+                return getOperand(index);
+            }
+
+            @Override
+            public int size() {
+                return numOperands;
+            }
+        };
     }
 
     /**
      * 维护了双向边关系
      */
     public void addOperand(Value operand) {
-        // 如果已包含直接返回
-        if (operands.contains(operand)) {
-            return;
+        if (numOperands == operands.length) {
+            // 操作数个数不定的指令（phi 增加入边等）按倍数扩容
+            operands = Arrays.copyOf(operands, Math.max(2, numOperands * 2));
         }
-        operands.add(operand);
-        Use use = new Use(this, operand);
-        operand.use_add(use);
+        operands[numOperands++] = new Use(this, operand);
     }
 
     public Value getOperand(int idx) {
-        return operands.get(idx);
+        return getOperandUse(idx).get();
+    }
+
+    public Use getOperandUse(int idx) {
+        Objects.checkIndex(idx, numOperands);
+        return operands[idx];
     }
 
     /**
-     * 同时删除双向边关系
+     * 替换第 idx 个操作数，同时维护双向边关系
+     */
+    public void setOperand(int idx, Value v) {
+        getOperandUse(idx).set(v);
+    }
+
+    /**
+     * 删除第 idx 个操作数，其后的操作数前移
+     */
+    public void removeOperand(int idx) {
+        Use use = getOperandUse(idx);
+        System.arraycopy(operands, idx + 1, operands, idx, numOperands - idx - 1);
+        operands[--numOperands] = null;
+        use.drop();
+    }
+
+    /**
+     * 删除全部操作数及对应的使用边
+     */
+    public void dropAllOperands() {
+        for (int i = 0; i < numOperands; i++) {
+            operands[i].drop();
+        }
+        operands = NO_OPERANDS;
+        numOperands = 0;
+    }
+
+    /**
+     * 将所有等于 value 的操作数替换为 v，同时维护双向边关系
      *
      * @param value
      * @param v
      */
     public void replaceUseOfWith(Value value, Value v) {
-        // replace all operands that equals value with v
-        value.use_remove(new Use(this, value));
-        operands.remove(value);
-        addOperand(v);
-        //operands.set(operands.indexOf(value), v);
+        if (value == v) {
+            return;
+        }
+        for (int i = 0; i < numOperands; i++) {
+            if (operands[i].get() == value) {
+                operands[i].set(v);
+            }
+        }
     }
 }
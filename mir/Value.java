@@ -2,26 +2,27 @@ package mir;
 
 import utils.SyncLinkedList;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 
 public class Value extends SyncLinkedList.SyncLinkNode {
 
     protected String name;
     protected final Type type;
     /**
-     * 维护使用者的唯一性
+     * 使用链：以该值为操作数的所有 Use 按加入顺序串成的侵入式双向链表
+     * 同一个 User 多次使用该值时对应多个 Use
      */
-    private final LinkedList<Use> uses;
+    private Use firstUse = null;
+    private Use lastUse = null;
+    private int useCount = 0;
 
     public Value(String name, Type type) {
         this.name = name;
         this.type = type;
-        uses = new LinkedList<>();
     }
 
     public Value(Type type) {
         this.type = type;
-        uses = new LinkedList<>();
         name = "";
     }
 
@@ -37,45 +38,124 @@ public class Value extends SyncLinkedList.SyncLinkNode {
         return name;
     }
 
-    public LinkedList<Use> getUses() {
+    /**
+     * 是否可能被多个函数同时使用（常量、全局变量、函数）
+     * 函数级 pass 并行运行时，这类值的使用链加锁修改；其余值只属于一个函数，由处理该函数的线程独占
+     */
+    protected boolean isShared() {
+        return false;
+    }
+
+    /**
+     * 是否记录使用链；唯一化的常量被大量指令共用且不会被替换，不记录，其使用链始终为空
+     */
+    protected boolean tracksUses() {
+        return true;
+    }
+
+    /**
+     * 使用链的快照，遍历期间修改使用关系是安全的
+     */
+    public ArrayList<Use> getUses() {
+        if (isShared()) {
+            synchronized (this) {
+                return collectUses();
+            }
+        }
+        return collectUses();
+    }
+
+    private ArrayList<Use> collectUses() {
+        ArrayList<Use> uses = new ArrayList<>(useCount);
+        for (Use use = firstUse; use != null; use = use.getNextUse()) {
+            uses.add(use);
+        }
         return uses;
     }
 
     public boolean use_empty() {
-        return uses.isEmpty();
+        return firstUse == null;
     }
 
     public int use_size() {
-        return uses.size();
+        return useCount;
     }
 
     public Use use_begin() {
-        return uses.getFirst();
+        return firstUse;
     }
 
     public Use use_back() {
-        return uses.getLast();
+        return lastUse;
     }
 
-    public void use_add(Use use) {
-        if(!uses.contains(use)){
-            uses.add(use);
+    void use_add(Use use) {
+        if (!tracksUses()) {
+            return;
+        }
+        if (isShared()) {
+            synchronized (this) {
+                link(use);
+            }
+        } else {
+            link(use);
+        }
+    }
+
+    void use_remove(Use use) {
+        if (!tracksUses()) {
+            return;
+        }
+        if (isShared()) {
+            synchronized (this) {
+                unlink(use);
+            }
+        } else {
+            unlink(use);
+        }
+    }
+
+    private void link(Use use) {
+        use.prevUse = lastUse;
+        use.nextUse = null;
+        if (lastUse == null) {
+            firstUse = use;
+        } else {
+            lastUse.nextUse = use;
         }
+        lastUse = use;
+        useCount++;
     }
 
-    public void use_remove(Use use) {
-        uses.remove(use);
+    private void unlink(Use use) {
+        if (use.prevUse == null) {
+            firstUse = use.nextUse;
+        } else {
+            use.prevUse.nextUse = use.nextUse;
+        }
+        if (use.nextUse == null) {
+            lastUse = use.prevUse;
+        } else {
+            use.nextUse.prevUse = use.prevUse;
+        }
+        use.prevUse = null;
+        use.nextUse = null;
+        useCount--;
     }
 
     public Type getType() {
         return type;
     }
 
+    /**
+     * 每次把链首的 Use 改指向 v，该 Use 随即移入 v 的使用链，总代价与使用数成正比
+     */
     public void replaceAllUsesWith(Value v) {
-        while (!use_empty()) {
-            Use use = use_begin();
-            // 每次必然删该条边
-            use.getUser().replaceUseOfWith(this, v);
+        if (v == this) {
+            return;
+        }
+        while (firstUse != null) {
+            firstUse.set(v);
         }
     }
 
@@ -1,11 +1,18 @@
 package utils;
 
 import java.util.Iterator;
-import java.util.Objects;
 
+/**
+ * 侵入式双向链表，BasicBlock 的指令表与 Function 的基本块表都使用它
+ * 节点记录所在链表，链表缓存元素个数，getSize / isEmpty 均为 O(1)；
+ * comesBefore 使用按需重建的位置编号，插入后首次查询 O(n)，之后 O(1)
+ */
 public class SyncLinkedList<Type extends SyncLinkedList.SyncLinkNode> implements Iterable<Type> {
     private final SyncLinkNode head;
     private final SyncLinkNode tail;
+    private int size = 0;
+    // 节点的位置编号是否与当前顺序一致，插入会使其失效，删除不影响相对顺序
+    private boolean orderValid = false;
 
     public SyncLinkedList() {
         head = new SyncLinkNode();
@@ -24,50 +31,37 @@ public class SyncLinkedList<Type extends SyncLinkedList.SyncLinkNode> implements
         return (Type) (tail.getPrev());
     }
 
+    private void link(SyncLinkNode newNode, SyncLinkNode prev, SyncLinkNode next) {
+        newNode.parent = this;
+        newNode.setPrev(prev);
+        newNode.setNext(next);
+        prev.setNext(newNode);
+        next.setPrev(newNode);
+        size++;
+        orderValid = false;
+    }
+
     public void insertBefore(Type newNode, Type node) {
-        newNode.setHasParent(true);
-        newNode.setPrev(node.getPrev());
-        newNode.setNext(node);
-        node.getPrev().setNext(newNode);
-        node.setPrev(newNode);
+        link(newNode, node.getPrev(), node);
     }
 
     public void insertAfter(Type newNode, Type node) {
-        newNode.setHasParent(true);
-        newNode.setNext(node.getNext());
-        newNode.setPrev(node);
-        node.getNext().setPrev(newNode);
-        node.setNext(newNode);
+        link(newNode, node, node.getNext());
     }
 
     public void addFirst(Type newNode) {
-        newNode.setHasParent(true);
-        newNode.setPrev(head);
-        newNode.setNext(head.getNext());
-        head.getNext().setPrev(newNode);
-        head.setNext(newNode);
+        link(newNode, head, head.getNext());
     }
 
     public void addLast(Type newNode) {
-        newNode.setHasParent(true);
-        newNode.setPrev(tail.getPrev());
-        newNode.setNext(tail);
-        tail.getPrev().setNext(newNode);
-        tail.setPrev(newNode);
+        link(newNode, tail.getPrev(), tail);
     }
 
     public int getSize() {
-        Iterator<Type> iterator = iterator();
-        int size = 0;
-        while(iterator.hasNext()) {
-            iterator.next();
-            size++;
-        }
         return size;
     }
 
     public Type get(int idx) {
-        int size = getSize();
         assert idx < size;
         int cur = 0;
         SyncLinkNode ret = getFirst();
@@ -78,20 +72,52 @@ public class SyncLinkedList<Type extends SyncLinkedList.SyncLinkNode> implements
         return (Type) ret;
     }
 
+    /**
+     * 清空链表，原有节点不再属于任何链表
+     */
     public void clear() {
+        for (SyncLinkNode node = head.getNext(); node != tail; node = node.getNext()) {
+            node.parent = null;
+        }
+        reset();
+    }
+
+    private void reset() {
         head.setNext(tail);
         tail.setPrev(head);
+        size = 0;
+        orderValid = false;
     }
 
     public int find(Type node) {
-        for (int i = 0; i < getSize(); i++) {
-            if (get(i)==node) {
-                return i;
+        if (node.parent != this) {
+            return -1;
+        }
+        int idx = 0;
+        for (SyncLinkNode cur = head.getNext(); cur != tail; cur = cur.getNext()) {
+            if (cur == node) {
+                return idx;
             }
+            idx++;
         }
         return -1;
     }
 
+    /**
+     * a 是否位于 b 之前，两者必须都在当前链表中
+     */
+    public boolean comesBefore(Type a, Type b) {
+        assert a.parent == this && b.parent == this;
+        if (!orderValid) {
+            int order = 0;
+            for (SyncLinkNode node = head.getNext(); node != tail; node = node.getNext()) {
+                node.order = order++;
+            }
+            orderValid = true;
+        }
+        return a.order < b.order;
+    }
+
     /**
      * 将参数列表中的节点插入到当前链表尾部
      * 考虑到节点实体的唯一性，该操作会使得that链表为空
@@ -100,28 +126,34 @@ public class SyncLinkedList<Type extends SyncLinkedList.SyncLinkNode> implements
      */
     public void concat(SyncLinkedList<Type> that) {
         if (that.isEmpty()) {
-            that.clear();
             return;
         }
+        for (SyncLinkNode node = that.head.getNext(); node != that.tail; node = node.getNext()) {
+            node.parent = this;
+        }
         that.head.getNext().setPrev(this.getLast());
         that.getLast().setNext(this.tail);
         this.tail.getPrev().setNext(that.getFirst());
         this.tail.setPrev(that.getLast());
+        this.size += that.size;
+        this.orderValid = false;
         // 销毁
-        that.clear();
+        that.reset();
     }
 
     public boolean isEmpty() {
-        if (getSize() != 0) {
-            return false;
-        } else {
-            assert head.getNext() == tail;
-            assert tail.getPrev() == head;
-            return true;
-        }
+        assert (size == 0) == (head.getNext() == tail);
+        return size == 0;
     }
 
+    /**
+     * 截断链表，node 之后的节点全部移出
+     */
     public void setEnd(SyncLinkNode node) {
+        for (SyncLinkNode cur = node.getNext(); cur != tail; cur = cur.getNext()) {
+            cur.parent = null;
+            size--;
+        }
         node.setNext(tail);
         tail.setPrev(node);
     }
@@ -155,8 +187,7 @@ public class SyncLinkedList<Type extends SyncLinkedList.SyncLinkNode> implements
          */
         @Override
         public void remove() {
-            cur.getPrev().setNext(cur.getNext());
-            cur.getNext().setPrev(cur.getPrev());
+            cur.remove();
         }
 
 
@@ -166,9 +197,11 @@ public class SyncLinkedList<Type extends SyncLinkedList.SyncLinkNode> implements
         private SyncLinkNode prev;
         private SyncLinkNode next;
         /**
-         * 用于标记该节点是否存在于某个链表中
+         * 所在的链表，不在任何链表中时为 null
          */
-        private boolean hasParent = false;
+        SyncLinkedList<?> parent = null;
+        // 位置编号，仅在 parent.orderValid 时有意义
+        int order;
 
         public SyncLinkNode() {
             prev = null;
@@ -192,8 +225,8 @@ public class SyncLinkedList<Type extends SyncLinkedList.SyncLinkNode> implements
             return next.next != null;
         }
 
-        public void setHasParent(boolean hasParent) {
-            this.hasParent = hasParent;
+        public boolean hasParent() {
+            return parent != null;
         }
 
         public SyncLinkNode getPrev() {
@@ -206,16 +239,18 @@ public class SyncLinkedList<Type extends SyncLinkedList.SyncLinkNode> implements
 
         /**
          * 仅当存在父链表的时候才允许删除
+         * 删除后保留 prev / next，使遍历中删除当前节点的迭代器仍能继续前进
          */
         public void remove() {
-            if(!hasParent) {
+            if (parent == null) {
                 return;
             }
             assert prev != null;
             assert next != null;
             prev.setNext(next);
             next.setPrev(prev);
-            hasParent = false;
+            parent.size--;
+            parent = null;
         }
 
     }